@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.util.ConcurrentBufferPool;
+import com.cinnober.msgcodec.util.LockFreeBufferPool;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks a get and release of a buffer in {@link LockFreeBufferPool} against {@link ConcurrentBufferPool}.
+ * Run with several threads (e.g. -t 4) to see the lock contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkBufferPool {
+
+    private ConcurrentBufferPool concurrentPool;
+    private LockFreeBufferPool lockFreePool;
+    private LockFreeBufferPool threadCachePool;
+
+    @Setup
+    public void setup() {
+        concurrentPool = new ConcurrentBufferPool(8192, 10);
+        lockFreePool = new LockFreeBufferPool(8192, 10);
+        threadCachePool = new LockFreeBufferPool(8192, 10, 2);
+    }
+
+    @Benchmark
+    public byte[] getReleaseConcurrent() {
+        byte[] buf = concurrentPool.get();
+        concurrentPool.release(buf);
+        return buf;
+    }
+
+    @Benchmark
+    public byte[] getReleaseLockFree() {
+        byte[] buf = lockFreePool.get();
+        lockFreePool.release(buf);
+        return buf;
+    }
+
+    @Benchmark
+    public byte[] getReleaseThreadCache() {
+        byte[] buf = threadCachePool.get();
+        threadCachePool.release(buf);
+        return buf;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the startup cost of creating codecs for many schemas, where each codec class is generated.
+ * With <code>parallel</code> the codecs are created from a parallel stream, i.e. on the common fork-join pool,
+ * which should scale with the number of cores.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkCodecCreation {
+
+    @Param({"32"})
+    public int numSchemas;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private List<Schema> schemas;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        // new schema instances, so that the codec classes are generated again
+        schemas = new ArrayList<>(numSchemas);
+        for (int i = 0; i < numSchemas; i++) {
+            schemas.add(new SchemaBuilder(true)
+                    .build(DynamicMessage.class, TheMessage.class, TheRealMessage.class, TheRealBigMessage.class,
+                            ManyDynamicMessage.class, TheRealMessage2.class, TheRealMessage3.class,
+                            TheRealMessage4.class)
+                    .assignGroupIds());
+        }
+    }
+
+    @Benchmark
+    public Object createCodecs() {
+        Stream<Schema> stream = parallel ? schemas.parallelStream() : schemas.stream();
+        return stream.map(schema -> new BlinkCodecFactory(schema).createCodec()).toArray();
+    }
+}
@@ -41,6 +41,7 @@ import com.cinnober.msgcodec.SchemaBuilder;
 import com.cinnober.msgcodec.io.ByteArrayBuf;
 import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteBufferBuf;
+import com.cinnober.msgcodec.io.OffHeapByteBuf;
 
 /**
  * @author roland.lidstrom, Cinnober Financial Technology North AB
@@ -55,10 +56,10 @@ import com.cinnober.msgcodec.io.ByteBufferBuf;
 public class BenchmarkDynamic {
 
 	public static enum BufferType {
-		ARRAY, BUFFER, DIRECT_BUFFER,
+		ARRAY, BUFFER, DIRECT_BUFFER, OFF_HEAP,
 	}
 
-	@Param({ "ARRAY", "BUFFER", "DIRECT_BUFFER" })
+	@Param({ "ARRAY", "BUFFER", "DIRECT_BUFFER", "OFF_HEAP" })
 //	 @Param({"ARRAY"})
 //	 @Param({"BUFFER"})
 //	 @Param({"DIRECT_BUFFER"})
@@ -140,6 +141,16 @@ public class BenchmarkDynamic {
 			buf_fourTypes3 = new ByteBufferBuf(ByteBuffer.allocateDirect(bufferSize));
 			buf_fourTypes4 = new ByteBufferBuf(ByteBuffer.allocateDirect(bufferSize));
 			break;
+		case OFF_HEAP:
+			buf1 = new OffHeapByteBuf(bufferSize);
+			buf2 = new OffHeapByteBuf(bufferSize);
+			buf3 = new OffHeapByteBuf(bufferSize);
+
+			buf_fourTypes1 = new OffHeapByteBuf(bufferSize);
+			buf_fourTypes2 = new OffHeapByteBuf(bufferSize);
+			buf_fourTypes3 = new OffHeapByteBuf(bufferSize);
+			buf_fourTypes4 = new OffHeapByteBuf(bufferSize);
+			break;
 		default:
 			throw new RuntimeException("Unhandled case: " + bufType);
 		}
@@ -111,6 +111,8 @@ public class BenchmarkIntegerCoding {
         System.out.println("  VLC Size: " + sizeOfVlcLongs);
         int sizeOfNioLongs = writePutUInt64();
         System.out.println("  NIO Size: " + sizeOfNioLongs);
+        int sizeOfVlcSignedLongs = writeVlcInt64();
+        System.out.println("  VLC Size (signed): " + sizeOfVlcSignedLongs);
     }
 
     @Benchmark
@@ -169,6 +171,24 @@ public class BenchmarkIntegerCoding {
         return sum;
     }
     @Benchmark
+    public int writeVlcInt64() throws IOException {
+        vlcBuf.clear();
+        for (int i=0; i<longValues.length; i++) {
+            BlinkOutput.writeInt64(vlcBuf, (i & 1) == 0 ? longValues[i] : -longValues[i]);
+        }
+        return vlcBuf.position();
+    }
+    @Benchmark
+    public long readVlcInt64() throws IOException {
+        vlcBuf.clear();
+        long sum = 0;
+        for (int i=0; i<longValues.length; i++) {
+            long value = BlinkInput.readInt64(vlcBuf);
+            sum += value;
+        }
+        return sum;
+    }
+    @Benchmark
     public int writePutUInt64() throws IOException {
         nioBuf.clear();
         for (int i=0; i<longValues.length; i++) {
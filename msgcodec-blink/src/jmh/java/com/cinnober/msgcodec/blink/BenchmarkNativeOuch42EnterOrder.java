@@ -31,6 +31,7 @@ import com.cinnober.msgcodec.io.ByteArrayBuf;
 import com.cinnober.msgcodec.io.ByteArrays;
 import com.cinnober.msgcodec.io.ByteBufferBuf;
 import com.cinnober.msgcodec.io.ByteBuffers;
+import com.cinnober.msgcodec.io.OffHeapByteBuf;
 import com.cinnober.msgcodec.io.ReallocatingByteBuf;
 import com.cinnober.msgcodec.io.ReallocatingArray;
 
@@ -55,9 +56,11 @@ public class BenchmarkNativeOuch42EnterOrder {
         REALLOCATING_BUFFER,
         REALLOCATING_DIRECT_BUFFER,
         REALLOCATING_ARRAY,
+        OFF_HEAP,
     }
 
-    @Param({"ARRAY", "BUFFER", "DIRECT_BUFFER", "REALLOCATING_ARRAY", "REALLOCATING_BUFFER", "REALLOCATING_DIRECT_BUFFER"})
+    @Param({"ARRAY", "BUFFER", "DIRECT_BUFFER", "REALLOCATING_ARRAY", "REALLOCATING_BUFFER", "REALLOCATING_DIRECT_BUFFER",
+        "OFF_HEAP"})
     public BufferType bufType;
 
     private Ouch42EnterOrder msg;
@@ -93,6 +96,9 @@ public class BenchmarkNativeOuch42EnterOrder {
             case REALLOCATING_ARRAY:
                 buf = new ReallocatingArray(bufferSize, bufferSize);
                 break;
+            case OFF_HEAP:
+                buf = new OffHeapByteBuf(bufferSize);
+                break;
             default:
                 throw new RuntimeException("Unhandled case: " + bufType);
         }
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.util.ObjectDispatcher;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link ObjectDispatcher} against reflective dispatch with a synchronized target cache,
+ * which is how the dispatcher used to work. Run with several threads (e.g. -t 4) to see the lock contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkObjectDispatcher {
+
+    private ObjectDispatcher dispatcher;
+    private ReflectiveDispatcher reflectiveDispatcher;
+    private Object[] messages;
+
+    @State(Scope.Thread)
+    public static class Counter {
+        int next;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        Service service = new Service();
+        dispatcher = new ObjectDispatcher(Arrays.asList(service));
+        reflectiveDispatcher = new ReflectiveDispatcher(service);
+        messages = new Object[] { "text", 1, 2L, 3.0 };
+        for (Object message : messages) {
+            dispatcher.dispatch(message);
+            reflectiveDispatcher.dispatch(message);
+        }
+    }
+
+    @Benchmark
+    public Object dispatch(Counter counter) throws Exception {
+        return dispatcher.dispatch(messages[counter.next++ & 3]);
+    }
+
+    @Benchmark
+    public Object dispatchReflective(Counter counter) throws Exception {
+        return reflectiveDispatcher.dispatch(messages[counter.next++ & 3]);
+    }
+
+    public static class Service {
+        public Object onText(String s) {
+            return s;
+        }
+        public Object onInteger(Integer i) {
+            return i;
+        }
+        public Object onNumber(Number n) {
+            return n;
+        }
+    }
+
+    /** Reflective dispatch with a synchronized cache. */
+    private static class ReflectiveDispatcher {
+        private final Object delegate;
+        private final Map<Class<?>, Method> methods = new HashMap<>();
+
+        ReflectiveDispatcher(Object delegate) {
+            this.delegate = delegate;
+            for (Method method : delegate.getClass().getDeclaredMethods()) {
+                methods.put(method.getParameterTypes()[0], method);
+            }
+        }
+
+        Object dispatch(Object... params) throws Exception {
+            Method method;
+            synchronized (methods) {
+                method = methods.get(params[0].getClass());
+                if (method == null) {
+                    method = methods.get(params[0] instanceof String ? String.class : Number.class);
+                    methods.put(params[0].getClass(), method);
+                }
+            }
+            return method.invoke(delegate, params);
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.cinnober.msgcodec.io.ByteArrays;
 import com.cinnober.msgcodec.io.ByteBufferInputStream;
 import com.cinnober.msgcodec.io.ByteBufferOutputStream;
 import com.cinnober.msgcodec.io.ByteBuffers;
+import com.cinnober.msgcodec.io.BufferedInputStreamSource;
+import com.cinnober.msgcodec.io.BufferedOutputStreamSink;
 import com.cinnober.msgcodec.io.InputStreamSource;
 import com.cinnober.msgcodec.io.OutputStreamSink;
 import java.io.IOException;
@@ -56,6 +58,9 @@ public class BenchmarkOuch42EnterOrderStream {
     private ByteBuffer buf;
     private ByteSink sink;
     private ByteSource source;
+    private ByteBufferInputStream in;
+    private ByteBufferOutputStream out;
+    private byte[] streamBuffer;
 
     public BenchmarkOuch42EnterOrderStream() {
     }
@@ -68,6 +73,9 @@ public class BenchmarkOuch42EnterOrderStream {
         buf = ByteBuffer.allocate(1024);
         sink = new OutputStreamSink(new ByteBufferOutputStream(buf));
         source = new InputStreamSource(new ByteBufferInputStream(buf));
+        in = new ByteBufferInputStream(buf);
+        out = new ByteBufferOutputStream(buf);
+        streamBuffer = new byte[8192];
 
         msg = BenchmarkOuch42EnterOrder.createOuch42EnterOrder();
 
@@ -87,4 +95,31 @@ public class BenchmarkOuch42EnterOrderStream {
         codec.encode(msg, sink);
         return buf.position();
     }
+
+    /** Decode from an InputStream, which reads the whole group in bulk. */
+    @Benchmark
+    public Object benchmarkDecodeInputStream() throws IOException {
+        buf.position(0).limit(encodedSize);
+        return codec.decode(in);
+    }
+    @Benchmark
+    public Object benchmarkDecodeBuffered() throws IOException {
+        buf.position(0).limit(encodedSize);
+        return codec.decode(new BufferedInputStreamSource(in, streamBuffer));
+    }
+    /** Encode to an OutputStream, which writes the whole group in bulk. */
+    @Benchmark
+    public int benchmarkEncodeOutputStream() throws IOException {
+        buf.clear();
+        codec.encode(msg, out);
+        return buf.position();
+    }
+    @Benchmark
+    public int benchmarkEncodeBuffered() throws IOException {
+        buf.clear();
+        BufferedOutputStreamSink bufferedSink = new BufferedOutputStreamSink(out, streamBuffer);
+        codec.encode(msg, bufferedSink);
+        bufferedSink.flush();
+        return buf.position();
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBufferBuf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares full decoding of a POJO with the flyweight group view, see {@link BlinkGroupView}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkOuch42EnterOrderView {
+
+    public static enum BufferType {
+        ARRAY,
+        BUFFER,
+        DIRECT_BUFFER,
+    }
+
+    @Param({"ARRAY", "BUFFER", "DIRECT_BUFFER"})
+    public BufferType bufType;
+
+    private BlinkCodec codec;
+    private BlinkGroupView view;
+    private int encodedSize;
+    private int sharesIndex;
+    private int priceIndex;
+    private int minimumQuantityIndex;
+
+    private ByteBuf buf;
+
+    public BenchmarkOuch42EnterOrderView() {
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Schema dict = new SchemaBuilder(true).build(Ouch42EnterOrder.class);
+        BlinkCodecFactory factory = new BlinkCodecFactory(dict);
+        codec = factory.createCodec();
+        view = codec.createGroupView();
+        final int bufferSize = 1024;
+        switch (bufType) {
+            case ARRAY:
+                buf = new ByteArrayBuf(new byte[bufferSize]);
+                break;
+            case BUFFER:
+                buf = new ByteBufferBuf(ByteBuffer.allocate(bufferSize));
+                break;
+            case DIRECT_BUFFER:
+                buf = new ByteBufferBuf(ByteBuffer.allocateDirect(bufferSize));
+                break;
+            default:
+                throw new RuntimeException("Unhandled case: " + bufType);
+        }
+
+        codec.encode(BenchmarkOuch42EnterOrder.createOuch42EnterOrder(), buf);
+        encodedSize = buf.position();
+        view.wrap(buf, 0);
+        sharesIndex = view.getFieldIndex("shares");
+        priceIndex = view.getFieldIndex("price");
+        minimumQuantityIndex = view.getFieldIndex("minimumQuantity");
+    }
+
+    @Benchmark
+    public long benchmarkDecode() throws IOException {
+        buf.position(0).limit(encodedSize);
+        Ouch42EnterOrder msg = (Ouch42EnterOrder) codec.decode(buf);
+        return msg.shares + msg.price + msg.minimumQuantity;
+    }
+
+    @Benchmark
+    public long benchmarkView() throws IOException {
+        buf.limit(encodedSize);
+        view.wrap(buf, 0);
+        return view.getInt32(sharesIndex) + view.getInt32(priceIndex) + view.getInt32(minimumQuantityIndex);
+    }
+
+    @Benchmark
+    public long benchmarkViewSingleField() throws IOException {
+        buf.limit(encodedSize);
+        view.wrap(buf, 0);
+        return view.getInt32(priceIndex);
+    }
+}
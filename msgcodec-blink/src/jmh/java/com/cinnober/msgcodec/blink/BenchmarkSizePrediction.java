@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.MsgObject;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.anot.Id;
+import com.cinnober.msgcodec.anot.Required;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks encoding of dynamic groups with and without prediction of the size preamble.
+ * The number of bytes moved (shifted) per message is printed at tear down.
+ *
+ * @see BlinkCodecFactory#setSizePrediction(boolean)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkSizePrediction {
+
+    public static enum MessageType {
+        /** Ouch42EnterOrder, which is bounded in size by the schema. */
+        OUCH,
+        /** Text message of 100 chars. */
+        TEXT_100,
+        /** Text message of 1000 chars. */
+        TEXT_1000,
+        /** Text message of 20000 chars. */
+        TEXT_20000,
+        /** Alternating text messages of 100 and 1000 chars. */
+        TEXT_MIXED,
+    }
+
+    @Param({"true", "false"})
+    public boolean sizePrediction;
+
+    @Param({"OUCH", "TEXT_100", "TEXT_1000", "TEXT_20000", "TEXT_MIXED"})
+    public MessageType msgType;
+
+    private BlinkCodec codec;
+    private Object[] msgs;
+    private int msgIndex;
+    private ShiftCountingByteBuf buf;
+    private long encodeCount;
+
+    @Setup
+    public void setup() throws IOException {
+        Schema schema = new SchemaBuilder(true).build(Ouch42EnterOrder.class, TextMessage.class);
+        codec = new BlinkCodecFactory(schema).setSizePrediction(sizePrediction).createCodec();
+        buf = new ShiftCountingByteBuf(new byte[32 * 1024]);
+        switch (msgType) {
+            case OUCH:
+                msgs = new Object[] { BenchmarkOuch42EnterOrder.createOuch42EnterOrder() };
+                break;
+            case TEXT_100:
+                msgs = new Object[] { new TextMessage(100) };
+                break;
+            case TEXT_1000:
+                msgs = new Object[] { new TextMessage(1000) };
+                break;
+            case TEXT_20000:
+                msgs = new Object[] { new TextMessage(20000) };
+                break;
+            case TEXT_MIXED:
+                msgs = new Object[] { new TextMessage(100), new TextMessage(1000) };
+                break;
+            default:
+                throw new RuntimeException("Unhandled case: " + msgType);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("Bytes moved per message: " + (encodeCount == 0 ? 0 : buf.shiftedBytes / encodeCount));
+    }
+
+    @Benchmark
+    public int benchmarkEncode() throws IOException {
+        buf.clear();
+        Object msg = msgs[msgIndex];
+        msgIndex = (msgIndex + 1) % msgs.length;
+        codec.encode(msg, buf);
+        encodeCount++;
+        return buf.position();
+    }
+
+    private static class ShiftCountingByteBuf extends ByteArrayBuf {
+        long shiftedBytes;
+
+        ShiftCountingByteBuf(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public void shift(int position, int length, int distance) {
+            shiftedBytes += length;
+            super.shift(position, length, distance);
+        }
+    }
+
+    @Id('T')
+    public static class TextMessage extends MsgObject {
+        @Required
+        public String text;
+
+        public TextMessage() {
+        }
+
+        TextMessage(int length) {
+            StringBuilder str = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                str.append((char) ('a' + i % 26));
+            }
+            text = str.toString();
+        }
+    }
+}
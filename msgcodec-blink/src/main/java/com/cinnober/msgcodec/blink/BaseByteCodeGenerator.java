@@ -54,10 +54,13 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.Objects;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -96,11 +99,14 @@ import static org.objectweb.asm.Opcodes.IASTORE;
 import static org.objectweb.asm.Opcodes.ICONST_0;
 import static org.objectweb.asm.Opcodes.ICONST_1;
 import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.IFLE;
 import static org.objectweb.asm.Opcodes.IFNE;
 import static org.objectweb.asm.Opcodes.IFNONNULL;
 import static org.objectweb.asm.Opcodes.IFNULL;
 import static org.objectweb.asm.Opcodes.IF_ACMPEQ;
+import static org.objectweb.asm.Opcodes.IF_ACMPNE;
 import static org.objectweb.asm.Opcodes.IF_ICMPGE;
+import static org.objectweb.asm.Opcodes.IF_ICMPNE;
 import static org.objectweb.asm.Opcodes.ILOAD;
 import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
 import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
@@ -175,6 +181,32 @@ class BaseByteCodeGenerator {
     }
 
     public byte[] generateClass(Schema schema, int suffix) {
+        return generateClass(schema, Collections.emptyMap(), suffix);
+    }
+
+    /**
+     * Generate a codec class that only decodes the specified fields of some groups.
+     *
+     * @param schema the schema, not null.
+     * @param projection the names of the fields to be decoded, keyed by group name, not null.
+     * Fields of groups in the map that are not in the set of names are skipped while decoding.
+     * All fields of groups not in the map are decoded.
+     * @param suffix the class name suffix.
+     * @return the class bytes, not null.
+     */
+    public byte[] generateClass(Schema schema, Map<String, Set<String>> projection, int suffix) {
+        return generateClass(schema, projection, getGeneratedClassName(suffix));
+    }
+
+    /**
+     * Generate a codec class with the specified name.
+     *
+     * @param schema the schema, not null.
+     * @param projection the names of the fields to be decoded, keyed by group name, not null.
+     * @param className the binary name of the generated class, e.g. "com.example.MyCodec", not null.
+     * @return the class bytes, not null.
+     */
+    public byte[] generateClass(Schema schema, Map<String, Set<String>> projection, String className) {
         if (!schema.isBound()) {
             throw new IllegalArgumentException("Schema is not bound");
         }
@@ -187,20 +219,21 @@ class BaseByteCodeGenerator {
             cv = new TraceClassVisitor(cv, new PrintWriter(traceString));
         }
         cv = new CheckClassAdapter(cv);
+        final String genClassInternalName = className.replace('.', '/');
         if (schema.getBinding().getGroupTypeAccessor() == JavaClassGroupTypeAccessor.INSTANCE) {
-            generateCodecJ(cv, schema, suffix);
+            generateCodecJ(cv, schema, projection, genClassInternalName);
         } else {
-            generateCodecG(cv, schema, suffix);
+            generateCodecG(cv, schema, projection, genClassInternalName);
         }
         byte[] bytes = classWriter.toByteArray();
 
         if (log.isLoggable(Level.FINE)) {
-            log.log(Level.FINE, "Generated codec class " + GENERATED_CLASS_INAME + suffix + " for schema UID: " + schema.getUID());
+            log.log(Level.FINE, "Generated codec class " + className + " for schema UID: " + schema.getUID());
             if (log.isLoggable(Level.FINER)) {
-                log.finer("Generated code (#"+suffix+"):\n" + traceString.toString());
+                log.finer("Generated code ("+className+"):\n" + traceString.toString());
             }
             if (log.isLoggable(Level.FINEST)) {
-                log.finest("Generated bytecode (#"+suffix+"):\n" + ByteArrays.toHex(bytes, 0, bytes.length, 1, 8, 32));
+                log.finest("Generated bytecode ("+className+"):\n" + ByteArrays.toHex(bytes, 0, bytes.length, 1, 8, 32));
             }
         }
         return bytes;
@@ -227,6 +260,8 @@ class BaseByteCodeGenerator {
      * void readStaticGroup_MessageType1(ByteSource, MessageType1);
      * void readStaticGroup_MessageType2(ByteSource, MessageType2);
      * ...
+     * void skipStaticGroup_MessageType1(ByteSource); // only with a projection
+     * ...
      * void writeStaticGroup(ByteSink, Object); // switch on class
      * ...
      * void writeStaticGroupWithId_MessageType1(ByteSink, MessageType1);
@@ -239,10 +274,12 @@ class BaseByteCodeGenerator {
      *
      * @param cv
      * @param schema
-     * @param suffix
+     * @param projection
+     * @param genClassInternalName
      */
-    protected void generateCodecJ(ClassVisitor cv, Schema schema, int suffix) {
-        generateCodec(cv, schema, suffix, true);
+    protected void generateCodecJ(ClassVisitor cv, Schema schema, Map<String, Set<String>> projection,
+            String genClassInternalName) {
+        generateCodec(cv, schema, projection, genClassInternalName, true);
     }
 
     /**
@@ -268,6 +305,8 @@ class BaseByteCodeGenerator {
      * void readStaticGroup_MessageType1(ByteSource, Object);
      * void readStaticGroup_MessageType2(ByteSource, Object);
      * ...
+     * void skipStaticGroup_MessageType1(ByteSource); // only with a projection
+     * ...
      * void writeStaticGroup(ByteSink, Object); // switch on group type
      * ...
      * void writeStaticGroupWithId_MessageType1(ByteSink, Object);
@@ -280,25 +319,33 @@ class BaseByteCodeGenerator {
      *
      * @param cv
      * @param schema
-     * @param suffix
+     * @param projection
+     * @param genClassInternalName
      */
-    protected void generateCodecG(ClassVisitor cv, Schema schema, int suffix) {
-        generateCodec(cv, schema, suffix, false);
+    protected void generateCodecG(ClassVisitor cv, Schema schema, Map<String, Set<String>> projection,
+            String genClassInternalName) {
+        generateCodec(cv, schema, projection, genClassInternalName, false);
     }
 
-    private void generateCodec(ClassVisitor cv, Schema schema, int suffix, boolean javaClassCodec) {
-        final String genClassInternalName = GENERATED_CLASS_INAME + suffix;
+    private void generateCodec(ClassVisitor cv, Schema schema, Map<String, Set<String>> projection,
+            String genClassInternalName, boolean javaClassCodec) {
         cv.visit(V1_7, ACC_PUBLIC + ACC_FINAL, genClassInternalName, null, baseclassIName, null);
 
         generateConstructorAndFields(schema, cv, genClassInternalName, javaClassCodec);
 
         generateReadStaticGroup(schema, cv, genClassInternalName, javaClassCodec);
         generateReadStaticGroupForTypeAndCreate(schema, cv, genClassInternalName, javaClassCodec);
-        generateReadStaticGroupForType(schema, cv, genClassInternalName, javaClassCodec);
+        generateReadStaticGroupForType(schema, cv, genClassInternalName, javaClassCodec, projection);
+        generateReadStaticGroupInto(schema, cv, genClassInternalName, javaClassCodec);
+        generateReadStaticGroupForTypeInto(schema, cv, genClassInternalName, javaClassCodec, projection);
+        if (!projection.isEmpty()) {
+            generateSkipStaticGroupForType(schema, cv, genClassInternalName);
+        }
 
         generateWriteStaticGroup(schema, cv, genClassInternalName, javaClassCodec);
         generateWriteStaticGroupForTypeWithId(schema, cv, genClassInternalName, javaClassCodec);
         generateWriteStaticGroupForType(schema, cv, genClassInternalName, javaClassCodec);
+        generateWriteDynamicGroup(schema, cv, genClassInternalName, javaClassCodec);
 
         cv.visitEnd();
     }
@@ -325,7 +372,21 @@ class BaseByteCodeGenerator {
         ctormv.visitFieldInsn(PUTFIELD, genClassInternalName, "schema",
                 "Lcom/cinnober/msgcodec/Schema;");
 
-        if (!javaClassCodec) {
+        if (javaClassCodec) {
+            // group ordinals by class, used when writing static groups
+
+            // field
+            fv = cv.visitField(ACC_PRIVATE + ACC_FINAL, "groupOrdinals", "Ljava/lang/ClassValue;",
+                    "Ljava/lang/ClassValue<Ljava/lang/Integer;>;", null);
+            fv.visitEnd();
+
+            // ctor, init field
+            ctormv.visitVarInsn(ALOAD, 0); // this
+            ctormv.visitVarInsn(ALOAD, 2); // schema
+            ctormv.visitMethodInsn(INVOKESTATIC, baseclassIName, "createGroupOrdinals",
+                    "(Lcom/cinnober/msgcodec/Schema;)Ljava/lang/ClassValue;", false);
+            ctormv.visitFieldInsn(PUTFIELD, genClassInternalName, "groupOrdinals", "Ljava/lang/ClassValue;");
+        } else {
             // store the group type accessor
 
             // field
@@ -454,21 +515,69 @@ class BaseByteCodeGenerator {
                     ctormv.visitFieldInsn(PUTFIELD, genClassInternalName,
                             symbolMappingFieldName, "Lcom/cinnober/msgcodec/SymbolMapping;");
                 }
+
+                generateFieldMembers(schema, group, field, cv, ctormv, genClassInternalName);
             }
         }
 
         ctormv.visitInsn(RETURN);
-        ctormv.visitMaxs(3, nextCtorVar);
+        ctormv.visitMaxs(4, nextCtorVar);
         ctormv.visitEnd();
     }
     
+    /**
+     * Generate any additional members for a field, e.g. fields that are initialized by the constructor.
+     *
+     * <p>Defaults to no members.
+     *
+     * @param schema the schema, not null.
+     * @param group the group that declares the field, not null.
+     * @param field the field, not null.
+     * @param cv the class visitor, not null.
+     * @param ctormv the method visitor of the constructor, open for code instructions. The constructor arguments
+     * are the blink codec (var 1) and the schema (var 2).
+     * @param genClassInternalName the internal name of the generated class.
+     */
+    protected void generateFieldMembers(Schema schema, GroupDef group, FieldDef field, ClassVisitor cv,
+            MethodVisitor ctormv, String genClassInternalName) {
+    }
+
     // --- GENERATE WRITE ----------------------------------------------------------------------------------------------
 
     protected void generateWriteStaticGroup(Schema schema, ClassVisitor cv,
             String genClassInternalName, boolean javaClassCodec) {
         // method writeStaticGroupWithId - switch
-        MethodVisitor mv = cv.visitMethod(ACC_PROTECTED, "writeStaticGroupWithId",
-                "(Lcom/cinnober/msgcodec/io/ByteSink;Ljava/lang/Object;)V", null, new String[] { "java/io/IOException" });
+        generateWriteGroupTypeSwitch(schema, cv, genClassInternalName, javaClassCodec,
+                "writeStaticGroupWithId", "Lcom/cinnober/msgcodec/io/ByteSink;");
+    }
+
+    /**
+     * Generates a method that switches on the group type, and then calls the group specific method.
+     *
+     * <p>Generated method:
+     * <pre>
+     * void methodName(Out, Object); // switch on group type, calls methodName_MessageType1(Out, MessageType1) etc
+     * </pre>
+     *
+     * <p>When the group type is the java class, the switch is a tableswitch on the group ordinal, which is looked up
+     * in a ClassValue, see {@link GeneratedCodec#createGroupOrdinals(Schema)}. Otherwise the switch is on the hash
+     * code of the group type, followed by equals checks.
+     *
+     * @param schema the schema
+     * @param cv the class visitor
+     * @param genClassInternalName the internal name of the generated class
+     * @param javaClassCodec true if the group type is the java class
+     * @param methodName the name of the generated method, and the prefix of the group specific methods
+     * @param outDescriptor the type descriptor of the first argument
+     */
+    protected void generateWriteGroupTypeSwitch(Schema schema, ClassVisitor cv,
+            String genClassInternalName, boolean javaClassCodec, String methodName, String outDescriptor) {
+        if (javaClassCodec) {
+            generateWriteGroupOrdinalSwitch(schema, cv, genClassInternalName, methodName, outDescriptor);
+            return;
+        }
+        MethodVisitor mv = cv.visitMethod(ACC_PROTECTED, methodName,
+                "(" + outDescriptor + "Ljava/lang/Object;)V", null, new String[] { "java/io/IOException" });
         int nextVar = 3;
         mv.visitCode();
 
@@ -514,7 +623,7 @@ class BaseByteCodeGenerator {
             for (ObjectHashCodeSwitchCase<Object> hashCase : casesByHashCode.values()) {
                 caseLabels[i++] = hashCase.label;
             }
-            mv.visitLookupSwitchInsn(unknownHashLabel, caseValues, caseLabels);
+            generateSwitch(mv, unknownHashLabel, caseValues, caseLabels);
         }
         for (ObjectHashCodeSwitchCase<Object> hashCase : casesByHashCode.values()) {
             mv.visitLabel(hashCase.label);
@@ -574,7 +683,7 @@ class BaseByteCodeGenerator {
                     "()I", false);
             
             // Switch on the group id
-            mv.visitLookupSwitchInsn(unknownHashLabel, groupIds, groupIdLabels);
+            generateSwitch(mv, unknownGroupIdLabel, groupIds, groupIdLabels);
             
             // Cases for the group ids
             for (int i = 0; i < groupIds.length; i++) {
@@ -611,8 +720,8 @@ class BaseByteCodeGenerator {
                 if (javaClassCodec) {
                     mv.visitTypeInsn(CHECKCAST, getTypeInternalName(groupType, javaClassCodec));
                 }
-                mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "writeStaticGroupWithId_" + group.getName(),
-                        "(Lcom/cinnober/msgcodec/io/ByteSink;" + groupDescriptor + ")V", false);
+                mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, methodName + "_" + group.getName(),
+                        "(" + outDescriptor + groupDescriptor + ")V", false);
                 mv.visitInsn(RETURN);
             }
         }
@@ -621,6 +730,104 @@ class BaseByteCodeGenerator {
         mv.visitEnd();
     }
     
+    /**
+     * Generates a method that switches on the ordinal of the group class, and then calls the group specific method.
+     *
+     * @see #generateWriteGroupTypeSwitch(Schema, ClassVisitor, String, boolean, String, String)
+     */
+    private void generateWriteGroupOrdinalSwitch(Schema schema, ClassVisitor cv, String genClassInternalName,
+            String methodName, String outDescriptor) {
+        MethodVisitor mv = cv.visitMethod(ACC_PROTECTED, methodName,
+                "(" + outDescriptor + "Ljava/lang/Object;)V", null, new String[] { "java/io/IOException" });
+        mv.visitCode();
+
+        List<GroupDef> groups = new ArrayList<>(schema.getGroups());
+        int[] ordinals = new int[groups.size()];
+        Label[] labels = new Label[groups.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = i;
+            labels[i] = new Label();
+        }
+
+        // switch on groupOrdinals.get(group.getClass())
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, genClassInternalName, "groupOrdinals", "Ljava/lang/ClassValue;");
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/ClassValue", "get", "(Ljava/lang/Class;)Ljava/lang/Object;",
+                false);
+        mv.visitTypeInsn(CHECKCAST, "java/lang/Integer");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Integer", "intValue", "()I", false);
+        Label unknownGroupTypeLabel = new Label();
+        generateSwitch(mv, unknownGroupTypeLabel, ordinals, labels);
+
+        for (int i = 0; i < ordinals.length; i++) {
+            Object groupType = groups.get(i).getGroupType();
+            mv.visitLabel(labels[i]);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitVarInsn(ALOAD, 0); // this
+            mv.visitVarInsn(ALOAD, 1); // out
+            mv.visitVarInsn(ALOAD, 2); // obj
+            mv.visitTypeInsn(CHECKCAST, getTypeInternalName(groupType, true));
+            mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, methodName + "_" + groups.get(i).getName(),
+                    "(" + outDescriptor + getTypeDescriptor(groupType, true) + ")V", false);
+            mv.visitInsn(RETURN);
+        }
+
+        // default case
+        mv.visitLabel(unknownGroupTypeLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false);
+        mv.visitMethodInsn(INVOKESTATIC, baseclassIName, "unknownGroupType",
+                "(Ljava/lang/Object;)Ljava/lang/IllegalArgumentException;", false);
+        mv.visitInsn(ATHROW);
+
+        mv.visitMaxs(3, 3);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates a tableswitch if the keys are dense, otherwise a lookupswitch.
+     * The choice is made with the same cost estimate as javac uses.
+     *
+     * @param mv the method visitor, with the int key on the stack.
+     * @param defaultLabel the default label, not null.
+     * @param keys the keys in ascending order, not null.
+     * @param labels the labels of the keys, not null.
+     */
+    protected static void generateSwitch(MethodVisitor mv, Label defaultLabel, int[] keys, Label[] labels) {
+        if (keys.length > 0) {
+            long lo = keys[0];
+            long hi = keys[keys.length - 1];
+            long tableCost = 4 + (hi - lo + 1) + 3 * 3; // space + 3 * time
+            long lookupCost = 3 + 2 * (long) keys.length + 3 * (long) keys.length;
+            if (tableCost <= lookupCost) {
+                Label[] table = new Label[(int) (hi - lo + 1)];
+                Arrays.fill(table, defaultLabel);
+                for (int i = 0; i < keys.length; i++) {
+                    table[(int) (keys[i] - lo)] = labels[i];
+                }
+                mv.visitTableSwitchInsn((int) lo, (int) hi, defaultLabel, table);
+                return;
+            }
+        }
+        mv.visitLookupSwitchInsn(defaultLabel, keys, labels);
+    }
+
+    /**
+     * Generates any methods for writing dynamic groups, needed by the generated super class.
+     * The default implementation generates nothing.
+     *
+     * @param schema the schema
+     * @param cv the class visitor
+     * @param genClassInternalName the internal name of the generated class
+     * @param javaClassCodec true if the group type is the java class
+     */
+    protected void generateWriteDynamicGroup(Schema schema, ClassVisitor cv,
+            String genClassInternalName, boolean javaClassCodec) {
+    }
+
     protected void generateWriteStaticGroupForTypeWithId(Schema schema, ClassVisitor cv,
             String genClassInternalName, boolean javaClassCodec) {
         for (GroupDef group : schema.getGroups()) {
@@ -776,7 +983,7 @@ class BaseByteCodeGenerator {
                 caseValues[i++] = groupId;
             }
             Label[] caseLabels = labelsByGroupId.values().toArray(new Label[labelsByGroupId.size()]);
-            mv.visitLookupSwitchInsn(unknownGroupIdLabel, caseValues, caseLabels);
+            generateSwitch(mv, unknownGroupIdLabel, caseValues, caseLabels);
         }
 
         for (Map.Entry<Integer, Label> caseEntry : labelsByGroupId.entrySet()) {
@@ -803,6 +1010,90 @@ class BaseByteCodeGenerator {
         mv.visitEnd();
     }
     
+    protected void generateReadStaticGroupInto(Schema schema, ClassVisitor cv, String genClassInternalName,
+            boolean javaClassCodec) {
+        MethodVisitor mv = cv.visitMethod(ACC_PROTECTED, "readStaticGroupInto",
+                "(ILcom/cinnober/msgcodec/io/ByteSource;Ljava/lang/Object;)V", null,
+                new String[] { "java/io/IOException" });
+        int nextVar = 4;
+        mv.visitCode();
+
+        Map<Integer,Label> labelsByGroupId = new TreeMap<>();
+        for (GroupDef group : schema.getGroups()) {
+            if (group.getId() != -1) {
+                labelsByGroupId.put(group.getId(), new Label());
+            }
+        }
+        mv.visitVarInsn(ILOAD, 1); // group id
+        Label unknownGroupIdLabel = new Label();
+        Label incompatibleGroupLabel = new Label();
+        {
+            int[] caseValues = new int[labelsByGroupId.size()];
+            int i = 0;
+            for (int groupId : labelsByGroupId.keySet()) {
+                caseValues[i++] = groupId;
+            }
+            Label[] caseLabels = labelsByGroupId.values().toArray(new Label[labelsByGroupId.size()]);
+            generateSwitch(mv, unknownGroupIdLabel, caseValues, caseLabels);
+        }
+
+        for (Map.Entry<Integer, Label> caseEntry : labelsByGroupId.entrySet()) {
+            GroupDef group = schema.getGroup(caseEntry.getKey().intValue());
+            Object groupType = group.getGroupType();
+            String groupDescriptor = getTypeDescriptor(groupType, javaClassCodec);
+            String groupInternalName = getTypeInternalName(groupType, javaClassCodec);
+
+            mv.visitLabel(caseEntry.getValue());
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            // check that the target group is of the exact group type
+            if (javaClassCodec) {
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false);
+                mv.visitLdcInsn(getJavaType(groupType));
+                mv.visitJumpInsn(IF_ACMPNE, incompatibleGroupLabel);
+            } else {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, genClassInternalName, "groupTypeAccessor",
+                        "Lcom/cinnober/msgcodec/GroupTypeAccessor;");
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitMethodInsn(INVOKEINTERFACE, "com/cinnober/msgcodec/GroupTypeAccessor",
+                        "getGroupType", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, genClassInternalName, "groupType_" + group.getName(),
+                        "Ljava/lang/Object;");
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object",
+                        "equals", "(Ljava/lang/Object;)Z", false);
+                mv.visitJumpInsn(IFEQ, incompatibleGroupLabel);
+            }
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ALOAD, 3);
+            if (javaClassCodec) {
+                mv.visitTypeInsn(CHECKCAST, groupInternalName);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "readStaticGroupInto_" + group.getName(),
+                    "(Lcom/cinnober/msgcodec/io/ByteSource;" + groupDescriptor + ")V", false);
+            mv.visitInsn(RETURN);
+        }
+        // incompatible target group
+        mv.visitLabel(incompatibleGroupLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKESTATIC, baseclassIName, "incompatibleTargetGroup",
+                "(ILjava/lang/Object;)Ljava/lang/IllegalArgumentException;", false);
+        mv.visitInsn(ATHROW);
+        // default case
+        mv.visitLabel(unknownGroupIdLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitMethodInsn(INVOKESTATIC, baseclassIName, "unknownGroupId",
+                "(I)Lcom/cinnober/msgcodec/DecodeException;", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(3, nextVar);
+        mv.visitEnd();
+    }
+
     protected void generateReadStaticGroupForTypeAndCreate(Schema schema, ClassVisitor cv,
             String genClassInternalName, boolean javaClassCodec) {
         for (GroupDef group : schema.getGroups()) {
@@ -853,13 +1144,32 @@ class BaseByteCodeGenerator {
         }
     }
     protected void generateReadStaticGroupForType(final Schema schema, ClassVisitor cv,
-            final String genClassInternalName, final boolean javaClassCodec) {
+            final String genClassInternalName, final boolean javaClassCodec,
+            final Map<String, Set<String>> projection) {
+        generateReadStaticGroupForType(schema, cv, genClassInternalName, javaClassCodec, projection, false);
+    }
+
+    /**
+     * Generate the <code>readStaticGroupInto_[group]</code> methods, which are similar to the
+     * <code>readStaticGroup_[group]</code> methods, except that any existing sequence and static group field values
+     * of the target group are reused (filled in) when possible.
+     */
+    protected void generateReadStaticGroupForTypeInto(final Schema schema, ClassVisitor cv,
+            final String genClassInternalName, final boolean javaClassCodec,
+            final Map<String, Set<String>> projection) {
+        generateReadStaticGroupForType(schema, cv, genClassInternalName, javaClassCodec, projection, true);
+    }
+
+    private void generateReadStaticGroupForType(final Schema schema, ClassVisitor cv,
+            final String genClassInternalName, final boolean javaClassCodec,
+            final Map<String, Set<String>> projection, final boolean into) {
+        final String methodPrefix = into ? "readStaticGroupInto_" : "readStaticGroup_";
         for (final GroupDef group : schema.getGroups()) {
             Object groupType = group.getGroupType();
             String groupDescriptor = getTypeDescriptor(groupType, javaClassCodec);
             final MethodVisitor mv = cv.visitMethod(
                     ACC_PRIVATE,
-                    "readStaticGroup_" + group.getName(),
+                    methodPrefix + group.getName(),
                     "(Lcom/cinnober/msgcodec/io/ByteSource;"+groupDescriptor+")V",
                     null,
                     new String[] { "java/io/IOException" });
@@ -876,13 +1186,20 @@ class BaseByteCodeGenerator {
                 mv.visitVarInsn(ALOAD, 2);
                 mv.visitMethodInsn(INVOKEVIRTUAL,
                         genClassInternalName,
-                        "readStaticGroup_" + superGroup.getName(),
+                        methodPrefix + superGroup.getName(),
                         "(Lcom/cinnober/msgcodec/io/ByteSource;"+superGroupDescriptor+")V", false);
             }
 
             // fields
+            final Set<String> projectedFields = projection.get(group.getName());
             for (final FieldDef field : group.getFields()) {
+                if (projectedFields != null && !projectedFields.contains(field.getName())) {
+                    generateSkipField(mv, schema, field, genClassInternalName, nextVar);
+                    continue;
+                }
                 final Class<?> javaClass = field.getJavaClass();
+                final int reuseVar = into ?
+                        generateLoadReusableValue(mv, schema, group, field, genClassInternalName, nextVar) : -1;
 
                 Runnable readValue = () -> {
                     Label tryStart = new Label();
@@ -896,7 +1213,7 @@ class BaseByteCodeGenerator {
                     generateDecodeValue(mv, 1, nextVar, field.isRequired(), field.getType(), javaClass, 
                             field.getComponentJavaClass(), schema, genClassInternalName,
                             group.getName() + "_" + field.getName(),
-                            group.getName() + "." + field.getName(), javaClassCodec);
+                            group.getName() + "." + field.getName(), javaClassCodec, reuseVar);
                     mv.visitLabel(tryEnd);
                     mv.visitJumpInsn(GOTO, tryAfter);
                     mv.visitLabel(tryCatch);
@@ -979,6 +1296,111 @@ class BaseByteCodeGenerator {
         }
     }
 
+    /**
+     * Generate the <code>skipStaticGroup_[group]</code> methods, which skip all fields of a static group,
+     * including any inherited fields. Used for static group fields that are not part of a projection.
+     */
+    protected void generateSkipStaticGroupForType(final Schema schema, ClassVisitor cv,
+            final String genClassInternalName) {
+        for (final GroupDef group : schema.getGroups()) {
+            final MethodVisitor mv = cv.visitMethod(
+                    ACC_PRIVATE,
+                    "skipStaticGroup_" + group.getName(),
+                    "(Lcom/cinnober/msgcodec/io/ByteSource;)V",
+                    null,
+                    new String[] { "java/io/IOException" });
+            mv.visitCode();
+            final LocalVariable nextVar = new LocalVariable(2);
+
+            // skip fields of super group
+            if (group.getSuperGroup() != null) {
+                GroupDef superGroup = schema.getGroup(group.getSuperGroup());
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKEVIRTUAL,
+                        genClassInternalName,
+                        "skipStaticGroup_" + superGroup.getName(),
+                        "(Lcom/cinnober/msgcodec/io/ByteSource;)V", false);
+            }
+
+            for (final FieldDef field : group.getFields()) {
+                mv.visitVarInsn(ALOAD, 1);
+                generateSkipValue(mv, 1, nextVar, field.isRequired(), field.getType(), schema, genClassInternalName);
+            }
+
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(3, nextVar.get());
+            mv.visitEnd();
+        }
+    }
+
+    /**
+     * Generate instructions to skip a field that is not part of the projection.
+     * Any decode exception is wrapped in a FieldDecodeException.
+     */
+    private void generateSkipField(MethodVisitor mv, Schema schema, FieldDef field,
+            String genClassInternalName, LocalVariable nextVar) {
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label tryCatch = new Label();
+        Label tryAfter = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, tryCatch, "java/lang/Exception");
+
+        mv.visitLabel(tryStart);
+        mv.visitVarInsn(ALOAD, 1); // input stream
+        generateSkipValue(mv, 1, nextVar, field.isRequired(), field.getType(), schema, genClassInternalName);
+        mv.visitLabel(tryEnd);
+        mv.visitJumpInsn(GOTO, tryAfter);
+        mv.visitLabel(tryCatch);
+        int caughtExVar = nextVar.next();
+        mv.visitVarInsn(ASTORE, caughtExVar);
+        mv.visitTypeInsn(NEW, "com/cinnober/msgcodec/blink/FieldDecodeException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(field.getName());
+        mv.visitVarInsn(ALOAD, caughtExVar);
+        mv.visitMethodInsn(INVOKESPECIAL, "com/cinnober/msgcodec/blink/FieldDecodeException",
+                "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(tryAfter);
+    }
+
+    /**
+     * Generate instructions to load the current value of a sequence or static group field into a new variable,
+     * to be reused when decoding into an existing group.
+     *
+     * @return the variable, or -1 if the field value cannot be reused.
+     */
+    private int generateLoadReusableValue(MethodVisitor mv, Schema schema, GroupDef group, FieldDef field,
+            String genClassInternalName, LocalVariable nextVar) {
+        TypeDef type = schema.resolveToType(field.getType(), false);
+        if (type.getType() != TypeDef.Type.REFERENCE && type.getType() != TypeDef.Type.SEQUENCE) {
+            return -1;
+        }
+        Accessor<?,?> accessor = field.getAccessor();
+        if (isPublicFieldAccessor(accessor)) {
+            Field f = ((FieldAccessor)accessor).getField();
+            mv.visitVarInsn(ALOAD, 2); // instance
+            mv.visitFieldInsn(GETFIELD, Type.getInternalName(f.getDeclaringClass()), f.getName(),
+                    Type.getDescriptor(f.getType()));
+        } else if (accessor.getClass() == CreateAccessor.class) {
+            return -1;
+        } else {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, genClassInternalName,
+                    "accessor_" + group.getName() + "_" + field.getName(),
+                    "Lcom/cinnober/msgcodec/Accessor;");
+            mv.visitVarInsn(ALOAD, 2); // instance
+            mv.visitMethodInsn(INVOKEINTERFACE, "com/cinnober/msgcodec/Accessor", "getValue",
+                    "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+            if (type.getType() == TypeDef.Type.SEQUENCE) {
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(field.getJavaClass()));
+            }
+        }
+        int reuseVar = nextVar.next();
+        mv.visitVarInsn(ASTORE, reuseVar);
+        return reuseVar;
+    }
+
     // --- GENERATE ENCODE VALUE ---------------------------------------------------------------------------------------
 
     /**
@@ -1806,6 +2228,24 @@ class BaseByteCodeGenerator {
     protected void generateDecodeValue(MethodVisitor mv, int byteSourceVar, LocalVariable nextVar,
             boolean required, TypeDef type, Class<?> javaClass, Class<?> componentJavaClass, Schema schema,
             String genClassInternalName, String fieldIdentifier, String debugValueLabel, boolean javaClassCodec) {
+        generateDecodeValue(mv, byteSourceVar, nextVar, required, type, javaClass, componentJavaClass, schema,
+                genClassInternalName, fieldIdentifier, debugValueLabel, javaClassCodec, -1);
+    }
+
+    /**
+     * Generate instructions to decode the specified value type, possibly reusing an existing value.
+     * The value on the stack is the input stream.
+     * After this call the input stream is expected to be consumed, and the decoded value be placed on the stack.
+     *
+     * <p>Existing values are reused for sequences and static groups only. For any other type the reuse variable
+     * is ignored.
+     *
+     * @param reuseVar the variable that contains the existing value (possibly null) to be reused, or -1 if none.
+     */
+    protected void generateDecodeValue(MethodVisitor mv, int byteSourceVar, LocalVariable nextVar,
+            boolean required, TypeDef type, Class<?> javaClass, Class<?> componentJavaClass, Schema schema,
+            String genClassInternalName, String fieldIdentifier, String debugValueLabel, boolean javaClassCodec,
+            int reuseVar) {
         type = schema.resolveToType(type, false);
         GroupDef refGroup = schema.resolveToGroup(type);
 
@@ -1853,7 +2293,8 @@ class BaseByteCodeGenerator {
                 generateDecodeBigDecimalValue(required, mv);
                 break;
             case STRING:
-                generateDecodeStringValue((TypeDef.StringUnicode) type, mv, required);
+                generateDecodeStringValue((TypeDef.StringUnicode) type, mv, required, genClassInternalName,
+                        fieldIdentifier);
                 break;
             case BINARY:
                 generateDecodeBinaryValue((TypeDef.Binary) type, mv, required);
@@ -1868,12 +2309,24 @@ class BaseByteCodeGenerator {
                 generateDecodeTimeValue((TypeDef.Time) type, javaClass, required, mv, nextVar);
                 break;
             case SEQUENCE:
-                generateDecodeSequenceValue(javaClass, nextVar, required, mv, componentJavaClass,
-                        byteSourceVar, type, schema, genClassInternalName, fieldIdentifier, debugValueLabel, javaClassCodec);
+                if (reuseVar != -1) {
+                    generateDecodeSequenceValue(javaClass, nextVar, required, mv, componentJavaClass,
+                            byteSourceVar, type, schema, genClassInternalName, fieldIdentifier, debugValueLabel,
+                            javaClassCodec, reuseVar);
+                } else {
+                    generateDecodeSequenceValue(javaClass, nextVar, required, mv, componentJavaClass,
+                            byteSourceVar, type, schema, genClassInternalName, fieldIdentifier, debugValueLabel,
+                            javaClassCodec);
+                }
                 break;
             case REFERENCE:
-                generateDecodeRefValue(refGroup, required, mv, byteSourceVar, genClassInternalName, javaClass,
-                        type, javaClassCodec);
+                if (reuseVar != -1) {
+                    generateDecodeRefValue(refGroup, required, mv, byteSourceVar, genClassInternalName, javaClass,
+                            type, javaClassCodec, reuseVar);
+                } else {
+                    generateDecodeRefValue(refGroup, required, mv, byteSourceVar, genClassInternalName, javaClass,
+                            type, javaClassCodec);
+                }
                 break;
             case DYNAMIC_REFERENCE:
                 generateDecodeDynRefValue(mv, required, refGroup, javaClass);
@@ -1912,6 +2365,161 @@ class BaseByteCodeGenerator {
         }
     }
     
+    /**
+     * Generate instructions to skip the specified value type, without decoding it.
+     * The value on the stack is the input stream.
+     * After this call the input stream is expected to be consumed.
+     *
+     * <p>Defaults to the <code>skip*</code> methods of the blink input, and <code>skipStaticGroup_[group]</code>
+     * for static groups.
+     *
+     * @param mv the method visitor, open for code instructions.
+     * @param byteSourceVar the variable instance that contains the input stream.
+     * @param nextVar the next variable
+     * @param required true if the field is required, otherwise false.
+     * @param type the field type
+     * @param schema the protocol schema, not null
+     * @param genClassInternalName the internal name of the generated class
+     */
+    protected void generateSkipValue(MethodVisitor mv, int byteSourceVar, LocalVariable nextVar,
+            boolean required, TypeDef type, Schema schema, String genClassInternalName) {
+        type = schema.resolveToType(type, false);
+        final String nullSuffix = required ? "" : "Null";
+        final String skipDescriptor = "(Lcom/cinnober/msgcodec/io/ByteSource;)V";
+
+        switch (type.getType()) {
+            case INT8:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipInt8" + nullSuffix, skipDescriptor, false);
+                break;
+            case UINT8:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipUInt8" + nullSuffix, skipDescriptor, false);
+                break;
+            case CHAR:
+            case UINT16:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipUInt16" + nullSuffix, skipDescriptor, false);
+                break;
+            case INT16:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipInt16" + nullSuffix, skipDescriptor, false);
+                break;
+            case INT32:
+            case ENUM:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipInt32" + nullSuffix, skipDescriptor, false);
+                break;
+            case UINT32:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipUInt32" + nullSuffix, skipDescriptor, false);
+                break;
+            case INT64:
+            case TIME:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipInt64" + nullSuffix, skipDescriptor, false);
+                break;
+            case UINT64:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipUInt64" + nullSuffix, skipDescriptor, false);
+                break;
+            case FLOAT32:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipFloat32" + nullSuffix, skipDescriptor, false);
+                break;
+            case FLOAT64:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipFloat64" + nullSuffix, skipDescriptor, false);
+                break;
+            case BIGINT:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipBigInt" + nullSuffix, skipDescriptor, false);
+                break;
+            case DECIMAL:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipDecimal" + nullSuffix, skipDescriptor, false);
+                break;
+            case BIGDECIMAL:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipBigDecimal" + nullSuffix, skipDescriptor,
+                        false);
+                break;
+            case STRING:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipStringUTF8" + nullSuffix, skipDescriptor,
+                        false);
+                break;
+            case BINARY:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipBinary" + nullSuffix, skipDescriptor, false);
+                break;
+            case BOOLEAN:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipBoolean" + nullSuffix, skipDescriptor, false);
+                break;
+            case SEQUENCE:
+                generateSkipSequenceValue(mv, byteSourceVar, nextVar, required, (TypeDef.Sequence) type, schema,
+                        genClassInternalName);
+                break;
+            case REFERENCE: {
+                GroupDef refGroup = schema.resolveToGroup(type);
+                if (refGroup == null) {
+                    throw new IllegalArgumentException("Illegal reference: " + type);
+                }
+                Label endLabel = new Label();
+                if (required) {
+                    mv.visitInsn(POP); // input stream
+                } else {
+                    mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readPresenceByte",
+                            "(Lcom/cinnober/msgcodec/io/ByteSource;)Z", false);
+                    mv.visitJumpInsn(IFEQ, endLabel); // false, i.e. null
+                }
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, byteSourceVar);
+                mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "skipStaticGroup_" + refGroup.getName(),
+                        skipDescriptor, false);
+                mv.visitLabel(endLabel);
+                mv.visitFrame(F_SAME, 0, null, 0, null);
+                break;
+            }
+            case DYNAMIC_REFERENCE:
+                mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "skipDynamicGroup" + nullSuffix, skipDescriptor,
+                        false);
+                break;
+            default:
+                throw new RuntimeException("Unhandled case: " + type.getType());
+        }
+    }
+
+    /**
+     * Generate instructions to skip a sequence, element by element.
+     *
+     * @see #generateSkipValue(MethodVisitor, int, LocalVariable, boolean, TypeDef, Schema, String)
+     */
+    protected void generateSkipSequenceValue(MethodVisitor mv, int byteSourceVar, LocalVariable nextVar,
+            boolean required, TypeDef.Sequence type, Schema schema, String genClassInternalName) {
+        int lengthVar = nextVar.next();
+        Label nullLabel = new Label();
+        Label finalEndLabel = new Label();
+        if (required) {
+            mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readUInt32", "(Lcom/cinnober/msgcodec/io/ByteSource;)I", false);
+            mv.visitVarInsn(ISTORE, lengthVar);
+        } else {
+            mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readUInt32Null",
+                    "(Lcom/cinnober/msgcodec/io/ByteSource;)Ljava/lang/Integer;", false);
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNULL, nullLabel);
+            unbox(mv, Integer.class);
+            mv.visitVarInsn(ISTORE, lengthVar);
+        }
+
+        // for loop, counting down
+        Label endLabel = new Label();
+        Label loopLabel = new Label();
+        mv.visitLabel(loopLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ILOAD, lengthVar);
+        mv.visitJumpInsn(IFLE, endLabel);
+        mv.visitIincInsn(lengthVar, -1);
+        mv.visitVarInsn(ALOAD, byteSourceVar);
+        generateSkipValue(mv, byteSourceVar, nextVar, true, type.getComponentType(), schema, genClassInternalName);
+        mv.visitJumpInsn(GOTO, loopLabel);
+        mv.visitLabel(endLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        if (!required) {
+            mv.visitJumpInsn(GOTO, finalEndLabel);
+            mv.visitLabel(nullLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitInsn(POP); // null length
+            mv.visitLabel(finalEndLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+        }
+    }
+
     /**
      * Generate value decoding using the blink input.
      *
@@ -1951,6 +2559,22 @@ class BaseByteCodeGenerator {
         }
     }
 
+    /**
+     * Generate value decoding of a string field, or a string in a sequence field.
+     *
+     * <p>Defaults to {@link #generateDecodeStringValue(TypeDef.StringUnicode, MethodVisitor, boolean)}.
+     *
+     * @param required true if the field is required, otherwise false.
+     * @param mv the method visitor, not null.
+     * @param genClassInternalName the internal name of the generated class.
+     * @param fieldIdentifier the field identifier ("group_field"), or null if not decoded into a field.
+     * @see #generateDecodeValue
+     */
+    protected void generateDecodeStringValue(TypeDef.StringUnicode type, MethodVisitor mv, boolean required,
+            String genClassInternalName, String fieldIdentifier) {
+        generateDecodeStringValue(type, mv, required);
+    }
+
     /**
      * Generate value decoding using the blink input.
      *
@@ -2486,6 +3110,65 @@ class BaseByteCodeGenerator {
         }
     }
 
+    /**
+     * Generate instructions to decode a static group, reusing an existing group if present.
+     *
+     * @param reuseVar the variable that contains the existing group, or null.
+     * @see #generateDecodeRefValue(GroupDef, boolean, MethodVisitor, int, String, Class, TypeDef, boolean)
+     */
+    protected void generateDecodeRefValue(GroupDef refGroup, boolean required, MethodVisitor mv, int byteSourceVar,
+            String genClassInternalName,
+            Class<?> javaClass, TypeDef type, boolean javaClassCodec, int reuseVar) throws IllegalArgumentException {
+        if (refGroup == null) {
+            throw new IllegalArgumentException("Illegal reference: " + type);
+        }
+        String groupDescriptor = getTypeDescriptor(javaClass,javaClassCodec);
+        String groupInternalName = getTypeInternalName(javaClass, javaClassCodec);
+        Label endLabel = new Label();
+        if (required) {
+            mv.visitInsn(POP); // input stream
+        } else {
+            mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readPresenceByte", "(Lcom/cinnober/msgcodec/io/ByteSource;)Z", false);
+            Label nonNullLabel = new Label();
+            mv.visitJumpInsn(IFNE, nonNullLabel); // not false, i.e. true
+            // null
+            mv.visitInsn(ACONST_NULL);
+            mv.visitJumpInsn(GOTO, endLabel);
+            // not null
+            mv.visitLabel(nonNullLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+        }
+
+        Label createLabel = new Label();
+        mv.visitVarInsn(ALOAD, reuseVar);
+        mv.visitJumpInsn(IFNULL, createLabel);
+        // reuse
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, byteSourceVar);
+        mv.visitVarInsn(ALOAD, reuseVar);
+        if (groupInternalName != null) {
+            mv.visitTypeInsn(CHECKCAST, groupInternalName);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "readStaticGroupInto_" + refGroup.getName(),
+                "(Lcom/cinnober/msgcodec/io/ByteSource;" + groupDescriptor + ")V", false);
+        mv.visitVarInsn(ALOAD, reuseVar);
+        if (groupInternalName != null) {
+            mv.visitTypeInsn(CHECKCAST, groupInternalName);
+        }
+        mv.visitJumpInsn(GOTO, endLabel);
+        // create
+        mv.visitLabel(createLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, byteSourceVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "readStaticGroup_" + refGroup.getName(),
+                "(Lcom/cinnober/msgcodec/io/ByteSource;)" + groupDescriptor,
+                false);
+
+        mv.visitLabel(endLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+    }
+
     protected void generateDecodeSequenceValue(
             Class<?> javaClass, LocalVariable nextVar, boolean required, MethodVisitor mv,
             Class<?> componentJavaClass, int byteSourceVar, TypeDef type, Schema schema,
@@ -2563,6 +3246,138 @@ class BaseByteCodeGenerator {
         }
     }
     
+    /**
+     * Generate instructions to decode a sequence, reusing an existing sequence if present.
+     *
+     * <p>An existing array is reused if it has the same length as the decoded sequence, and any static group
+     * elements of a reused array are reused as well. An existing list is always reused (cleared).
+     *
+     * @param reuseVar the variable that contains the existing sequence, or null.
+     * @see #generateDecodeSequenceValue(Class, LocalVariable, boolean, MethodVisitor, Class, int, TypeDef, Schema,
+     * String, String, String, boolean)
+     */
+    protected void generateDecodeSequenceValue(
+            Class<?> javaClass, LocalVariable nextVar, boolean required, MethodVisitor mv,
+            Class<?> componentJavaClass, int byteSourceVar, TypeDef type, Schema schema,
+            String genClassInternalName, String fieldIdentifier, String debugValueLabel, boolean javaClassCodec,
+            int reuseVar)
+            throws IllegalArgumentException {
+        if (!javaClass.isArray() && javaClass != List.class) {
+            throw new IllegalArgumentException("Illegal sequence javaClass: " + javaClass);
+        }
+
+        int lengthVar = nextVar.next();
+        int sequenceVar = nextVar.next();
+        Label finalEndLabel = new Label();
+        if (required) {
+            mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readUInt32", "(Lcom/cinnober/msgcodec/io/ByteSource;)I", false);
+            mv.visitVarInsn(ISTORE, lengthVar);
+        } else {
+            mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, "readUInt32Null",
+                    "(Lcom/cinnober/msgcodec/io/ByteSource;)Ljava/lang/Integer;", false);
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNULL, finalEndLabel);
+            unbox(mv, Integer.class);
+            mv.visitVarInsn(ISTORE, lengthVar);
+        }
+
+        Label newLabel = new Label();
+        Label storeLabel = new Label();
+        mv.visitVarInsn(ALOAD, reuseVar);
+        mv.visitJumpInsn(IFNULL, newLabel);
+        if (javaClass.isArray()) {
+            String arrayInternalName = Type.getInternalName(javaClass);
+            mv.visitVarInsn(ALOAD, reuseVar);
+            mv.visitTypeInsn(CHECKCAST, arrayInternalName);
+            mv.visitInsn(ARRAYLENGTH);
+            mv.visitVarInsn(ILOAD, lengthVar);
+            mv.visitJumpInsn(IF_ICMPNE, newLabel);
+            // reuse
+            mv.visitVarInsn(ALOAD, reuseVar);
+            mv.visitTypeInsn(CHECKCAST, arrayInternalName);
+            mv.visitJumpInsn(GOTO, storeLabel);
+            // new
+            mv.visitLabel(newLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitVarInsn(ILOAD, lengthVar);
+            generateNewArray(mv, componentJavaClass);
+            mv.visitLabel(storeLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+        } else {
+            // reuse
+            mv.visitVarInsn(ALOAD, reuseVar);
+            mv.visitTypeInsn(CHECKCAST, "java/util/List");
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "clear", "()V", true);
+            mv.visitJumpInsn(GOTO, storeLabel);
+            // new
+            mv.visitLabel(newLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitTypeInsn(NEW, "java/util/ArrayList");
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ILOAD, lengthVar);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/util/ArrayList", "<init>", "(I)V", false);
+            mv.visitLabel(storeLabel);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitTypeInsn(CHECKCAST, "java/util/List");
+        }
+        mv.visitVarInsn(ASTORE, sequenceVar);
+
+        // reuse static group elements of arrays
+        TypeDef.Sequence seqType = (TypeDef.Sequence) type;
+        int elementVar = -1;
+        if (javaClass.isArray() &&
+                schema.resolveToType(seqType.getComponentType(), false).getType() == TypeDef.Type.REFERENCE) {
+            elementVar = nextVar.next();
+        }
+
+        // for loop
+        Label endLabel = new Label();
+        int loopVar = nextVar.next();
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, loopVar);
+        Label loopLabel = new Label();
+        mv.visitLabel(loopLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ILOAD, loopVar);
+        mv.visitVarInsn(ILOAD, lengthVar);
+        mv.visitJumpInsn(IF_ICMPGE, endLabel);
+
+        if (elementVar != -1) {
+            mv.visitVarInsn(ALOAD, sequenceVar);
+            mv.visitVarInsn(ILOAD, loopVar);
+            mv.visitInsn(AALOAD);
+            mv.visitVarInsn(ASTORE, elementVar);
+        }
+
+        mv.visitVarInsn(ALOAD, sequenceVar);
+        mv.visitVarInsn(ILOAD, loopVar);
+        mv.visitVarInsn(ALOAD, byteSourceVar);
+
+        // decode the element
+        generateDecodeValue(mv, byteSourceVar, nextVar, true, seqType.getComponentType(), componentJavaClass, null,
+                schema, genClassInternalName, fieldIdentifier, debugValueLabel + ".component", javaClassCodec,
+                elementVar);
+
+        // store the value
+        if (javaClass.isArray()) {
+            generateArrayStore(mv, componentJavaClass);
+        } else {
+            mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "add", "(ILjava/lang/Object;)V", true);
+        }
+
+        mv.visitIincInsn(loopVar, 1);
+        mv.visitJumpInsn(GOTO, loopLabel);
+        mv.visitLabel(endLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ALOAD, sequenceVar);
+        mv.visitLabel(finalEndLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        if (javaClass.isArray()) {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(javaClass));
+        }
+    }
+
     // --- UTILITIES ---------------------------------------------------------------------------------------------------
 
     public static boolean isPublicFieldAccessor(Accessor<?,?> accessor) {
@@ -30,13 +30,15 @@ import com.cinnober.msgcodec.Schema;
 import com.cinnober.msgcodec.MsgCodec;
 import com.cinnober.msgcodec.MsgCodecInstantiationException;
 import com.cinnober.msgcodec.ObjectInstantiationException;
-import com.cinnober.msgcodec.io.InputStreamSource;
-import com.cinnober.msgcodec.io.OutputStreamSink;
+import com.cinnober.msgcodec.util.ObjectDispatcher;
 import com.cinnober.msgcodec.util.Pool;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * The Blink codec can serialize and deserialize Java objects according to
@@ -60,13 +62,27 @@ import java.lang.reflect.Constructor;
  *
  */
 public class BlinkCodec implements MsgCodec {
-    private final GeneratedCodec generatedCodec;
+    private final GeneratedCompactCodec generatedCodec;
     private final Schema schema;
 
     private final Pool<byte[]> bufferPool;
 
     private final int maxBinarySize;
     private final int maxSequenceLength;
+    private final boolean sizePrediction;
+    private final Map<String, Integer> stringCacheSizes;
+    private final ClassValue<GeneratedGroupDispatcher> groupDispatchers = new ClassValue<GeneratedGroupDispatcher>() {
+        @Override
+        protected GeneratedGroupDispatcher computeValue(Class<?> handlerType) {
+            Class<GeneratedGroupDispatcher> dispatcherClass =
+                    GeneratedCodecClassLoader.getInstance().getGeneratedGroupDispatcherClass(schema, handlerType);
+            try {
+                return dispatcherClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e); // should not happen
+            }
+        }
+    };
 
     /**
      * Create a Blink codec.
@@ -75,21 +91,30 @@ public class BlinkCodec implements MsgCodec {
      * @param bufferPool the buffer pool, needed for temporary storage while <em>encoding</em>.
      * @param maxBinarySize the maximum binary size (including strings) allowed while decoding, or -1 for no limit.
      * @param maxSequenceLength the maximum sequence length allowed while decoding, or -1 for no limit.
+     * @param sizePrediction true if the size preamble of dynamic groups should be predicted while encoding.
+     * @param projection the names of the fields to be decoded, keyed by group name, not null.
+     * Empty if all fields should be decoded.
+     * @param stringCacheSizes the size of the string cache of each field, keyed by "group.field", not null.
+     * Empty if no strings should be cached.
      */
     BlinkCodec(Schema schema, Pool<byte[]> bufferPool,
-            int maxBinarySize, int maxSequenceLength) throws MsgCodecInstantiationException {
+            int maxBinarySize, int maxSequenceLength, boolean sizePrediction,
+            Map<String, Set<String>> projection, Map<String, Integer> stringCacheSizes)
+            throws MsgCodecInstantiationException {
         if (!schema.isBound()) {
             throw new IllegalArgumentException("Schema not bound");
         }
         this.bufferPool = bufferPool;
+        this.stringCacheSizes = stringCacheSizes;
 
         this.maxBinarySize = maxBinarySize;
         this.maxSequenceLength = maxSequenceLength;
+        this.sizePrediction = sizePrediction;
         this.schema = schema;
 
         try {
             Class<GeneratedCompactCodec> generatedCodecClass =
-                    GeneratedCodecClassLoader.getInstance().getGeneratedCodecClass(schema);
+                    GeneratedCodecClassLoader.getInstance().getGeneratedCodecClass(schema, projection);
             Constructor<GeneratedCompactCodec> constructor =
                     generatedCodecClass.getConstructor(new Class<?>[]{ BlinkCodec.class, Schema.class });
             generatedCodec = constructor.newInstance(this, schema);
@@ -110,22 +135,142 @@ public class BlinkCodec implements MsgCodec {
         return maxSequenceLength;
     }
 
+    boolean isSizePrediction() {
+        return sizePrediction;
+    }
+
     Schema getSchema() {
         return schema;
     }
 
+    /**
+     * Create the string cache of a field.
+     *
+     * @param groupName the name of the group that declares the field, not null.
+     * @param fieldName the name of the field, not null.
+     * @return a new string cache, or null if strings of the field should not be cached.
+     */
+    StringCache createStringCache(String groupName, String fieldName) {
+        Integer size = stringCacheSizes.get(groupName + "." + fieldName);
+        return size != null ? new StringCache(size) : null;
+    }
+
+    /**
+     * Create a new flyweight group view, which reads field values directly from an encoded buffer
+     * without creating any group objects.
+     *
+     * @return a new group view, not null.
+     */
+    public BlinkGroupView createGroupView() {
+        return new BlinkGroupView(schema, maxBinarySize);
+    }
+
+    /**
+     * Create a new scanner, which indexes streams of encoded groups without creating any group objects.
+     *
+     * @return a new scanner, not null.
+     */
+    public BlinkScanner createScanner() {
+        return new BlinkScanner(schema, maxBinarySize);
+    }
+
+    /**
+     * Create a new event parser, which reports the values of encoded groups as events without creating any
+     * group objects.
+     *
+     * @return a new event parser, not null.
+     */
+    public BlinkEventParser createEventParser() {
+        return new BlinkEventParser(schema, maxBinarySize, maxSequenceLength);
+    }
+
+    /**
+     * Create a new non-blocking frame reader, with an initial buffer capacity of 8 kB and no frame size limit.
+     *
+     * @return a new frame reader, not null.
+     * @see #createFrameReader(int, int)
+     */
+    public BlinkFrameReader createFrameReader() {
+        return new BlinkFrameReader(this, 8192, -1);
+    }
+
+    /**
+     * Create a new non-blocking frame reader, which decodes groups from partial reads of e.g. a socket channel.
+     *
+     * @param initialCapacity the initial capacity of the internal buffer in bytes.
+     * @param maxFrameSize the maximum frame size (including the size preamble) in bytes, or -1 for no limit.
+     * @return a new frame reader, not null.
+     */
+    public BlinkFrameReader createFrameReader(int initialCapacity, int maxFrameSize) {
+        return new BlinkFrameReader(this, initialCapacity, maxFrameSize);
+    }
+
+    /**
+     * Create a new off-heap ring buffer, which hands over encoded groups from producer threads to consumer threads.
+     *
+     * @param capacity the capacity in bytes, a power of two, at least 64.
+     * @return a new ring buffer, not null.
+     */
+    public BlinkRingBuffer createRingBuffer(int capacity) {
+        return new BlinkRingBuffer(this, capacity);
+    }
+
+    /**
+     * Create a new off-heap ring buffer, which hands over encoded groups from producer threads to consumer threads.
+     *
+     * @param capacity the capacity in bytes, a power of two, at least 64.
+     * @param slotSize the number of bytes claimed before a group is encoded, at least 16 and at most the capacity.
+     * Larger groups are encoded into a scratch buffer first, and then copied into the ring.
+     * @return a new ring buffer, not null.
+     */
+    public BlinkRingBuffer createRingBuffer(int capacity, int slotSize) {
+        return new BlinkRingBuffer(this, capacity, slotSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The group is written to the stream in bulk.
+     */
     @Override
     public void encode(Object group, OutputStream out) throws IOException {
-        encode(group, new OutputStreamSink(out));
+        generatedCodec.writeDynamicGroup(out, group);
     }
     @Override
     public void encode(Object group, ByteSink out) throws IOException {
         generatedCodec.writeDynamicGroup(out, group);
     }
 
+    /**
+     * Returns the exact encoded size of the specified group, as written by {@link #encode(Object, ByteSink)}.
+     * The group is not encoded anywhere, which makes this suitable for allocating exact-fit buffers
+     * or to reject oversize groups before encoding them.
+     *
+     * @param group the group, not null.
+     * @return the encoded size in bytes.
+     * @throws IllegalArgumentException if the group is not correct or complete, e.g. a required field is missing.
+     */
+    public int sizeOf(Object group) throws IllegalArgumentException {
+        return generatedCodec.sizeOf(group);
+    }
+
+    @Override
+    public void encodeBatch(Object[] groups, int off, int len, ByteSink out) throws IOException {
+        generatedCodec.writeDynamicGroups(out, groups, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The group is read from the stream in bulk, without reading beyond the end of the group.
+     */
     @Override
     public Object decode(InputStream in) throws IOException {
-        return decode(new InputStreamSource(in));
+        try {
+            return generatedCodec.readDynamicGroupNull(in);
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
     }
 
     @Override
@@ -133,20 +278,139 @@ public class BlinkCodec implements MsgCodec {
         try {
             return generatedCodec.readDynamicGroupNull(in);
         } catch(GroupDecodeException|FieldDecodeException e) {
-            Throwable t = e;
-            StringBuilder str = new StringBuilder();
-            for (;;) {
-                if (t instanceof GroupDecodeException) {
-                    str.append('(').append(((GroupDecodeException)t).getGroupName()).append(')');
-                    t = t.getCause();
-                } else if(t instanceof FieldDecodeException) {
-                    str.append('.').append(((FieldDecodeException)t).getFieldName());
-                    t = t.getCause();
-                } else if(t instanceof ObjectInstantiationException) {
-                    throw new DecodeException("Could not create group "+str.toString(), t);
-                } else {
-                    throw new DecodeException("Could not decode field "+str.toString(), t);
-                }
+            throw decodeException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The end of input is also detected for other byte sources, when the end of stream is reached
+     * between two groups.
+     */
+    @Override
+    public int decodeBatch(ByteSource in, Consumer<Object> consumer, int max) throws IOException {
+        try {
+            return generatedCodec.readDynamicGroupsNull(in, consumer, max);
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
+    }
+
+    /**
+     * Decode a group from the specified input stream and call the handler method of the group.
+     *
+     * <p>The handler method of a group is a public, non-static method of the handler class with a single parameter,
+     * where the parameter type is the group class, or the closest super type of it (e.g. <code>Object</code>
+     * for a catch-all method). The method name must match {@link ObjectDispatcher#DEFAULT_PATTERN}, i.e. start with
+     * "on", "process", "handle" or "do", e.g. "onHello". Any return value is ignored.
+     * A dispatcher class that calls the handler methods directly is generated for each handler class,
+     * so no reflection is involved when dispatching.
+     *
+     * <p>Example:
+     * <pre>
+     * public class Handler {
+     *     public void onHello(Hello hello) { ... }
+     *     public void onAny(Object group) { ... }
+     * }
+     *
+     * while (codec.decodeAndDispatch(in, handler)) {
+     * }
+     * </pre>
+     *
+     * @param in the input stream to read from, not null.
+     * @param handler the handler, not null. The class of the handler must be public.
+     * @return true if a group was dispatched, or false if the decoded group is null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws DecodeException if the group could not be decoded.
+     * @throws IllegalArgumentException if the handler class is not public or does not have a handler method
+     * for every group in the schema (that has a group id), or if the schema is not bound to java classes.
+     */
+    public boolean decodeAndDispatch(ByteSource in, Object handler) throws IOException {
+        return decodeAndDispatch(in, groupDispatchers.get(handler.getClass()), handler);
+    }
+
+    /**
+     * Decode a group from the specified input stream and call the handler method of the group, as declared by
+     * the specified handler type.
+     *
+     * <p>This is the same as {@link #decodeAndDispatch(ByteSource, Object)}, except that the handler methods are
+     * looked up in the handler type instead of the class of the handler. This allows the handler to be a lambda,
+     * or an instance of any other class that is not public, as long as the handler type is public.
+     *
+     * <p>Example:
+     * <pre>
+     * public interface HelloHandler {
+     *     void onHello(Hello hello);
+     * }
+     *
+     * while (codec.decodeAndDispatch(in, HelloHandler.class, hello -&gt; ...)) {
+     * }
+     * </pre>
+     *
+     * @param <H> the handler type
+     * @param in the input stream to read from, not null.
+     * @param handlerType the handler type, e.g. an interface, not null. The handler type must be public.
+     * @param handler the handler, not null.
+     * @return true if a group was dispatched, or false if the decoded group is null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws DecodeException if the group could not be decoded.
+     * @throws IllegalArgumentException if the handler type is not public or does not have a handler method
+     * for every group in the schema (that has a group id), or if the schema is not bound to java classes.
+     */
+    public <H> boolean decodeAndDispatch(ByteSource in, Class<H> handlerType, H handler) throws IOException {
+        if (!handlerType.isInstance(handler)) {
+            throw new IllegalArgumentException("Handler is not an instance of " + handlerType.getName());
+        }
+        return decodeAndDispatch(in, groupDispatchers.get(handlerType), handler);
+    }
+
+    private boolean decodeAndDispatch(ByteSource in, GeneratedGroupDispatcher dispatcher, Object handler)
+            throws IOException {
+        try {
+            return generatedCodec.readDynamicGroupNull(in, dispatcher, handler);
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
+    }
+
+    /**
+     * Decode a group from the specified input stream into an existing group instance.
+     * No new group instance is created, and any existing sequences and static groups of the target group
+     * are reused (filled in) when possible. This allows group instances to be recycled.
+     *
+     * <p>An existing array is only reused if it has the same length as the decoded sequence.
+     * An existing list is always reused. Static groups in reused arrays are reused as well.
+     *
+     * @param in the input stream to read from, not null.
+     * @param group the group instance to decode into, not null.
+     * The group must be of the exact same group type as the decoded group.
+     * @return the group instance, or null if the decoded group is null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws DecodeException if the group could not be decoded, or if the group is of another group type.
+     */
+    public Object decodeInto(ByteSource in, Object group) throws IOException {
+        try {
+            return generatedCodec.readDynamicGroupNullInto(in, group) ? group : null;
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
+    }
+
+    private static DecodeException decodeException(Exception e) {
+        Throwable t = e;
+        StringBuilder str = new StringBuilder();
+        for (;;) {
+            if (t instanceof GroupDecodeException) {
+                str.append('(').append(((GroupDecodeException)t).getGroupName()).append(')');
+                t = t.getCause();
+            } else if(t instanceof FieldDecodeException) {
+                str.append('.').append(((FieldDecodeException)t).getFieldName());
+                t = t.getCause();
+            } else if(t instanceof ObjectInstantiationException) {
+                return new DecodeException("Could not create group "+str.toString(), t);
+            } else {
+                return new DecodeException("Could not decode field "+str.toString(), t);
             }
         }
     }
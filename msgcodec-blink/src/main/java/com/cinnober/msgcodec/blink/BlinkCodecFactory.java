@@ -24,12 +24,21 @@
 
 package com.cinnober.msgcodec.blink;
 
+import com.cinnober.msgcodec.FieldDef;
 import com.cinnober.msgcodec.MsgCodecInstantiationException;
 import com.cinnober.msgcodec.Schema;
 import com.cinnober.msgcodec.MsgCodecFactory;
-import com.cinnober.msgcodec.util.ConcurrentBufferPool;
+import com.cinnober.msgcodec.util.LockFreeBufferPool;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.TypeDef;
 import com.cinnober.msgcodec.util.Pool;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Factory for BlinkCodec.
@@ -42,6 +51,9 @@ public class BlinkCodecFactory implements MsgCodecFactory {
     private Pool<byte[]> bufferPool;
     private int maxBinarySize = 10 * 1_048_576; // 10 MB
     private int maxSequenceLength = 1_000_000;
+    private boolean sizePrediction = true;
+    private final Map<String, Set<String>> projection = new HashMap<>();
+    private final Map<String, Integer> stringCacheSizes = new HashMap<>();
 
     /**
      * Create a Blink codec factory.
@@ -53,7 +65,7 @@ public class BlinkCodecFactory implements MsgCodecFactory {
             throw new IllegalArgumentException("Schema must be bound");
         }
         this.schema = schema;
-        this.bufferPool = new ConcurrentBufferPool(1048576, 10);
+        this.bufferPool = new LockFreeBufferPool(1048576, 10, 0); // at most 10 buffers per size, no thread cache
     }
 
     /**
@@ -89,9 +101,122 @@ public class BlinkCodecFactory implements MsgCodecFactory {
         return this;
     }
 
+    /**
+     * Set if the size of the size preamble of dynamic groups should be predicted while encoding.
+     *
+     * <p>The encoded size of a dynamic group is written before the group, as a variable length integer.
+     * When encoding into a {@link com.cinnober.msgcodec.io.ByteBuf} the size is not known in advance,
+     * and the encoded group must be moved when the size preamble turns out to be larger or smaller than
+     * the room reserved for it. With size prediction enabled (default) the reserved room is estimated
+     * from the schema, and then adapted per group type to the size of the last encoded group.
+     * With size prediction disabled two bytes are always reserved.
+     *
+     * @param sizePrediction true if the size preamble should be predicted, otherwise false.
+     * @return this factory.
+     */
+    public BlinkCodecFactory setSizePrediction(boolean sizePrediction) {
+        this.sizePrediction = sizePrediction;
+        return this;
+    }
+
+    /**
+     * Restrict decoding of a group to the specified fields.
+     *
+     * <p>Any other field declared by the group is skipped while decoding, without creating any value object
+     * such as strings or big decimals. Skipped fields are left untouched in the decoded group,
+     * i.e. they keep their default value, or their existing value when decoding into an existing group.
+     * The projection applies wherever the group is decoded, e.g. as a dynamic group, as a static group field,
+     * and as the super group of other groups. Inherited fields are controlled by the projection of the super group.
+     * Encoding is not affected.
+     *
+     * <p>Codecs with the same schema and projection share the same generated code.
+     *
+     * @param groupName the name of the group, not null.
+     * @param fieldNames the names of the fields (declared by the group) to be decoded, not null.
+     * @return this factory.
+     * @throws IllegalArgumentException if the group or any field does not exist.
+     */
+    public BlinkCodecFactory setFieldProjection(String groupName, String... fieldNames) {
+        GroupDef group = schema.getGroup(groupName);
+        if (group == null) {
+            throw new IllegalArgumentException("No such group: " + groupName);
+        }
+        for (String fieldName : fieldNames) {
+            if (group.getField(fieldName) == null) {
+                throw new IllegalArgumentException("No such field: " + groupName + "." + fieldName);
+            }
+        }
+        projection.put(groupName, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(fieldNames))));
+        return this;
+    }
+
+    /**
+     * Remove any field projections, i.e. all fields will be decoded.
+     *
+     * @return this factory.
+     * @see #setFieldProjection(String, String...)
+     */
+    public BlinkCodecFactory clearFieldProjection() {
+        projection.clear();
+        return this;
+    }
+
+    /**
+     * Deduplicate the decoded strings of the specified field, using a bounded cache of previously decoded strings.
+     *
+     * <p>A decoded string that is equal to a cached string is returned as the same string instance,
+     * without creating a new one. This saves allocation and retained heap for fields where the same values
+     * repeat a lot, e.g. symbols and identifiers. Strings larger than {@link StringCache#MAX_CACHED_SIZE} bytes
+     * are never cached. Each codec instance has its own cache per field.
+     * Sequences of strings share the cache of the field. Encoding is not affected.
+     *
+     * @param groupName the name of the group, not null.
+     * @param fieldName the name of the string field declared by the group, not null.
+     * @param size the maximum number of cached strings, rounded up to the nearest power of two.
+     * At least 1 and at most {@link StringCache#MAX_SIZE}.
+     * @return this factory.
+     * @throws IllegalArgumentException if the group or field does not exist, if the field is not a string field,
+     * or if the size is out of range.
+     */
+    public BlinkCodecFactory setStringCache(String groupName, String fieldName, int size) {
+        GroupDef group = schema.getGroup(groupName);
+        if (group == null) {
+            throw new IllegalArgumentException("No such group: " + groupName);
+        }
+        FieldDef field = group.getField(fieldName);
+        if (field == null) {
+            throw new IllegalArgumentException("No such field: " + groupName + "." + fieldName);
+        }
+        TypeDef type = schema.resolveToType(field.getType(), true);
+        if (type.getType() == TypeDef.Type.SEQUENCE) {
+            type = schema.resolveToType(((TypeDef.Sequence) type).getComponentType(), true);
+        }
+        if (type.getType() != TypeDef.Type.STRING) {
+            throw new IllegalArgumentException("Not a string field: " + groupName + "." + fieldName);
+        }
+        if (size < 1 || size > StringCache.MAX_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + StringCache.MAX_SIZE + ": " + size);
+        }
+        stringCacheSizes.put(groupName + "." + fieldName, size);
+        return this;
+    }
+
+    /**
+     * Remove any string caches, i.e. no decoded strings will be deduplicated.
+     *
+     * @return this factory.
+     * @see #setStringCache(String, String, int)
+     */
+    public BlinkCodecFactory clearStringCaches() {
+        stringCacheSizes.clear();
+        return this;
+    }
+
     @Override
     public BlinkCodec createCodec() throws MsgCodecInstantiationException {
-        return new BlinkCodec(schema, bufferPool, maxBinarySize, maxSequenceLength);
+        return new BlinkCodec(schema, bufferPool, maxBinarySize, maxSequenceLength, sizePrediction,
+                Collections.unmodifiableMap(new HashMap<>(projection)),
+                Collections.unmodifiableMap(new HashMap<>(stringCacheSizes)));
     }
     
 }
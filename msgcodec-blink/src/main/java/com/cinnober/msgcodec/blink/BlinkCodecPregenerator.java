@@ -0,0 +1,209 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.FieldAccessor;
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Pre-generates the codec classes of {@link BlinkCodec} and {@link NativeBlinkCodec} into a jar file.
+ *
+ * <p>Normally the codec classes are generated with ASM the first time a codec is created for a schema,
+ * in every JVM. If a jar written by this class is on the class path, the codec classes are instead loaded
+ * from the jar, which saves the generation time at startup and makes the classes visible to
+ * ahead-of-time compilers.
+ *
+ * <p>The classes are named from a {@link #getSchemaKey(Schema) schema key}, which is a digest of the schema
+ * and its Java binding. {@link Schema#getUID()} cannot be used here since it is only unique within a JVM.
+ * A class that does not match the schema is simply not found, and the codec class is generated as usual.
+ * Projected codecs, see {@link BlinkCodecFactory#setFieldProjection(String, String...)}, are always generated.
+ *
+ * <p>The jar can be created from the build with the main method, e.g. with Gradle:
+ * <pre>
+ * task pregenerateCodecs(type: JavaExec) {
+ *     classpath = sourceSets.main.runtimeClasspath
+ *     main = 'com.cinnober.msgcodec.blink.BlinkCodecPregenerator'
+ *     args = ["$buildDir/libs/codecs.jar", 'com.example.Hello', 'com.example.Bye']
+ * }
+ * </pre>
+ *
+ * <p>The jar must be re-generated when the schema, the message classes or msgcodec itself is changed.
+ *
+ * @author agent
+ */
+public final class BlinkCodecPregenerator {
+    static final String PACKAGE_NAME = "com.cinnober.msgcodec.blink.pregenerated";
+
+    private BlinkCodecPregenerator() {
+    }
+
+    /**
+     * Write the pre-generated codec classes of the schemas to a jar file.
+     *
+     * <p>Usage: <code>BlinkCodecPregenerator &lt;jar file&gt; &lt;message class&gt;...</code>.
+     * The schema is built from the message classes with a {@link SchemaBuilder}.
+     *
+     * @param args the jar file name, followed by the names of the message classes.
+     * @throws Exception if the classes could not be generated.
+     */
+    public static void main(String... args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BlinkCodecPregenerator <jar file> <message class>...");
+            System.exit(1);
+        }
+        List<Class<?>> messageClasses = new ArrayList<>(args.length - 1);
+        for (int i = 1; i < args.length; i++) {
+            messageClasses.add(Class.forName(args[i]));
+        }
+        Schema schema = new SchemaBuilder().build(messageClasses);
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            writeJar(out, schema);
+        }
+    }
+
+    /**
+     * Write the pre-generated codec classes of the schemas to a jar.
+     * Both the compact and the native codec classes are written. The native codec class is left out for schemas
+     * that are not supported by {@link NativeBlinkCodec}.
+     *
+     * @param out the output stream to write the jar to, not null. The stream is not closed.
+     * @param schemas the bound schemas, not null.
+     * @throws IOException if the jar could not be written.
+     * @throws IllegalArgumentException if a schema is not bound.
+     */
+    public static void writeJar(OutputStream out, Schema... schemas) throws IOException {
+        CompactByteCodeGenerator compactCodeGenerator = new CompactByteCodeGenerator();
+        NativeByteCodeGenerator nativeCodeGenerator = new NativeByteCodeGenerator();
+        JarOutputStream jar = new JarOutputStream(out);
+        Set<String> keys = new HashSet<>();
+        for (Schema schema : schemas) {
+            String key = getSchemaKey(schema);
+            if (!keys.add(key)) {
+                continue;
+            }
+            String compactClassName = getCompactCodecClassName(key);
+            writeJarEntry(jar, compactClassName,
+                    compactCodeGenerator.generateClass(schema, Collections.emptyMap(), compactClassName));
+            String nativeClassName = getNativeCodecClassName(key);
+            byte[] nativeClassBytes;
+            try {
+                nativeClassBytes = nativeCodeGenerator.generateClass(schema, Collections.emptyMap(), nativeClassName);
+            } catch (UnsupportedOperationException e) {
+                continue; // e.g. strings in the data area
+            }
+            writeJarEntry(jar, nativeClassName, nativeClassBytes);
+        }
+        jar.finish();
+    }
+
+    private static void writeJarEntry(JarOutputStream jar, String className, byte[] classBytes)
+            throws IOException {
+        jar.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+        jar.write(classBytes);
+        jar.closeEntry();
+    }
+
+    /**
+     * Returns the key of the pre-generated codec classes for the specified schema.
+     *
+     * <p>The key is a digest of the schema, how the schema is bound to Java classes, and the version of msgcodec.
+     * Two schemas built the same way from the same classes have the same key, also in different JVMs.
+     *
+     * @param schema the bound schema, not null.
+     * @return the key as a hex string, not null.
+     */
+    public static String getSchemaKey(Schema schema) {
+        if (!schema.isBound()) {
+            throw new IllegalArgumentException("Schema is not bound");
+        }
+        StringBuilder str = new StringBuilder();
+        str.append(BlinkCodecPregenerator.class.getPackage().getImplementationVersion()).append('\n');
+        str.append(schema.toString()).append('\n');
+        str.append(describe(schema.getBinding().getGroupTypeAccessor())).append('\n');
+        for (GroupDef group : schema.getGroups()) {
+            str.append(group.getName())
+                    .append(' ').append(describe(group.getGroupType()))
+                    .append(' ').append(describe(group.getFactory()))
+                    .append('\n');
+            for (FieldDef field : group.getFields()) {
+                str.append(' ').append(field.getName())
+                        .append(' ').append(describe(field.getAccessor()))
+                        .append(' ').append(describe(field.getJavaClass()))
+                        .append(' ').append(describe(field.getComponentJavaClass()))
+                        .append(' ').append(describe(field.getBinding().getSymbolMapping()))
+                        .append('\n');
+            }
+        }
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(str.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // SHA-1 is required by the JRE
+        }
+        StringBuilder key = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private static String describe(Object obj) {
+        if (obj == null) {
+            return "null";
+        } else if (obj instanceof Class) {
+            return ((Class<?>) obj).getName();
+        } else if (obj instanceof FieldAccessor) {
+            FieldAccessor accessor = (FieldAccessor) obj;
+            return accessor.getField().getDeclaringClass().getName() + "#" + accessor.getField().getName();
+        } else {
+            return obj.getClass().getName();
+        }
+    }
+
+    static String getCompactCodecClassName(String schemaKey) {
+        return PACKAGE_NAME + ".CompactCodec_" + schemaKey;
+    }
+
+    static String getNativeCodecClassName(String schemaKey) {
+        return PACKAGE_NAME + ".NativeCodec_" + schemaKey;
+    }
+}
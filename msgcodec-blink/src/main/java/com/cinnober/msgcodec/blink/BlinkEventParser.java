@@ -0,0 +1,491 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.TypeDef;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.ByteSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Event based (push) parser of Blink compact encoded dynamic groups, which does not create any group objects.
+ *
+ * <p>The parser walks the encoded data guided by the schema, and reports each field value as a typed
+ * event to a {@link Listener}. Primitive values are reported using primitive types, and strings and binaries
+ * are reported as a slice of a {@link ByteBuf}, which means that parsing does not allocate anything, except
+ * for big integers and big decimals.
+ *
+ * <p>Example usage:
+ * <pre>
+ * BlinkEventParser parser = codec.createEventParser();
+ * parser.parse(in, new BlinkEventParser.Listener() {
+ *     public void int64(FieldDef field, long value) {
+ *         if (field.getName().equals("price")) {
+ *             total += value;
+ *         }
+ *     }
+ * });
+ * </pre>
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author agent
+ * @see BlinkCodec#createEventParser()
+ */
+public class BlinkEventParser {
+
+    /**
+     * Listener of parse events. All methods have empty default implementations.
+     *
+     * <p>Values are reported together with the field they belong to. Elements of a sequence are reported
+     * using the sequence field, between {@link #startSequence(FieldDef, int)} and {@link #endSequence(FieldDef)}.
+     * The type of the value is the resolved type of the field (or the component type of a sequence),
+     * see {@link Schema#resolveToType(TypeDef, boolean)}.
+     */
+    public interface Listener {
+        /**
+         * Called at the start of a group.
+         *
+         * @param field the field of the group, or null for the outermost dynamic group.
+         * @param group the group, not null. For dynamic groups this is the actual group.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void startGroup(FieldDef field, GroupDef group) throws IOException {}
+        /**
+         * Called at the end of a group, after all fields of the group (including inherited fields).
+         *
+         * @param field the field of the group, or null for the outermost dynamic group.
+         * @param group the group, not null.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void endGroup(FieldDef field, GroupDef group) throws IOException {}
+        /**
+         * Called at the start of a sequence.
+         *
+         * @param field the sequence field, not null.
+         * @param length the number of elements in the sequence.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void startSequence(FieldDef field, int length) throws IOException {}
+        /**
+         * Called at the end of a sequence.
+         *
+         * @param field the sequence field, not null.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void endSequence(FieldDef field) throws IOException {}
+        /**
+         * Called for an optional value that is absent (null), of any type.
+         *
+         * @param field the field, not null.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void nullValue(FieldDef field) throws IOException {}
+        /**
+         * Called for a boolean value.
+         *
+         * @param field the field, not null.
+         * @param value the value
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void bool(FieldDef field, boolean value) throws IOException {}
+        /**
+         * Called for an int8, int16, int32, uint8, uint16, uint32, char or enum value.
+         * Unsigned 32-bit values are reported as the signed int with the same bits.
+         * Enum values are reported as the symbol id.
+         *
+         * @param field the field, not null.
+         * @param value the value
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void int32(FieldDef field, int value) throws IOException {}
+        /**
+         * Called for an int64, uint64 or time value.
+         * Unsigned 64-bit values are reported as the signed long with the same bits.
+         *
+         * @param field the field, not null.
+         * @param value the value
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void int64(FieldDef field, long value) throws IOException {}
+        /**
+         * Called for a float32 value.
+         *
+         * @param field the field, not null.
+         * @param value the value
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void float32(FieldDef field, float value) throws IOException {}
+        /**
+         * Called for a float64 value.
+         *
+         * @param field the field, not null.
+         * @param value the value
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void float64(FieldDef field, double value) throws IOException {}
+        /**
+         * Called for a decimal value, which is <code>mantissa * 10^exponent</code>.
+         *
+         * @param field the field, not null.
+         * @param exponent the exponent
+         * @param mantissa the mantissa
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void decimal(FieldDef field, int exponent, long mantissa) throws IOException {}
+        /**
+         * Called for a bigint value.
+         *
+         * @param field the field, not null.
+         * @param value the value, not null.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void bigInt(FieldDef field, BigInteger value) throws IOException {}
+        /**
+         * Called for a bigdecimal value.
+         *
+         * @param field the field, not null.
+         * @param value the value, not null.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void bigDecimal(FieldDef field, BigDecimal value) throws IOException {}
+        /**
+         * Called for a string value. The string is UTF-8 encoded.
+         *
+         * <p>The buffer is only valid during this call. The listener may move the position of the buffer,
+         * e.g. to read the bytes; the parser restores it afterwards.
+         *
+         * @param field the field, not null.
+         * @param buf the buffer that contains the string, not null.
+         * @param offset the position in the buffer where the string starts.
+         * @param length the length of the string in bytes.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void string(FieldDef field, ByteBuf buf, int offset, int length) throws IOException {}
+        /**
+         * Called for a binary value.
+         *
+         * <p>The buffer is only valid during this call. The listener may move the position of the buffer,
+         * e.g. to read the bytes; the parser restores it afterwards.
+         *
+         * @param field the field, not null.
+         * @param buf the buffer that contains the binary, not null.
+         * @param offset the position in the buffer where the binary starts.
+         * @param length the length of the binary in bytes.
+         * @throws IOException if the listener cannot handle the event.
+         */
+        default void binary(FieldDef field, ByteBuf buf, int offset, int length) throws IOException {}
+    }
+
+    private final Schema schema;
+    private final int maxBinarySize;
+    private final int maxSequenceLength;
+    /** Scratch buffer, for strings and binaries from a byte source that is not a ByteBuf. */
+    private ByteArrayBuf scratch = new ByteArrayBuf(256);
+
+    /**
+     * Create a parser.
+     *
+     * @param schema the schema, not null.
+     * @param maxBinarySize the maximum binary size (including strings) allowed while decoding, or -1 for no limit.
+     * @param maxSequenceLength the maximum sequence length allowed while decoding, or -1 for no limit.
+     */
+    BlinkEventParser(Schema schema, int maxBinarySize, int maxSequenceLength) {
+        this.schema = schema;
+        this.maxBinarySize = maxBinarySize;
+        this.maxSequenceLength = maxSequenceLength;
+    }
+
+    /**
+     * Parse a dynamic group and report the values to the specified listener.
+     *
+     * <p>If the byte source is a {@link ByteBuf}, strings and binaries are reported as slices of it.
+     *
+     * @param in the byte source to read from, not null.
+     * @param listener the listener of parse events, not null.
+     * @return true if a group was parsed, or false if the group was null.
+     * @throws IOException if the byte source or the listener throws an exception.
+     * @throws DecodeException if the group could not be parsed.
+     */
+    public boolean parse(ByteSource in, Listener listener) throws IOException {
+        ByteBuf inbuf;
+        boolean direct;
+        if (in instanceof ByteBuf) {
+            inbuf = (ByteBuf) in;
+            direct = true;
+        } else {
+            inbuf = new PositionByteSource(in);
+            direct = false;
+        }
+        return parseDynamicGroup(null, inbuf, direct, listener);
+    }
+
+    private boolean parseDynamicGroup(FieldDef field, ByteBuf in, boolean direct, Listener listener)
+            throws IOException {
+        int size = BlinkSkipper.readSizeNull(in);
+        if (size == -1) {
+            if (field != null) {
+                listener.nullValue(field);
+            }
+            return false;
+        }
+        int expectedEndPos = in.position() + size;
+        int groupId = BlinkInput.readUInt32(in);
+        GroupDef group = schema.getGroup(groupId);
+        if (group == null) {
+            throw new DecodeException("Unknown group id: " + groupId);
+        }
+        try {
+            parseStaticGroup(field, group, in, direct, listener);
+            int skip = expectedEndPos - in.position();
+            if (skip < 0) {
+                throw new DecodeException("Malformed dynamic group. Read " + (-skip) + " bytes beyond group size.");
+            } else if (skip > 0) {
+                in.skip(skip);
+            }
+        } catch (DecodeException e) {
+            throw new GroupDecodeException(group.getName(), e);
+        }
+        return true;
+    }
+
+    private void parseStaticGroup(FieldDef field, GroupDef group, ByteBuf in, boolean direct, Listener listener)
+            throws IOException {
+        listener.startGroup(field, group);
+        parseFields(group, in, direct, listener);
+        listener.endGroup(field, group);
+    }
+
+    private void parseFields(GroupDef group, ByteBuf in, boolean direct, Listener listener) throws IOException {
+        if (group.getSuperGroup() != null) {
+            parseFields(schema.getGroup(group.getSuperGroup()), in, direct, listener);
+        }
+        List<FieldDef> fields = group.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldDef field = fields.get(i);
+            try {
+                parseValue(field, field.getType(), field.isRequired(), in, direct, listener);
+            } catch (DecodeException e) {
+                throw new FieldDecodeException(field.getName(), e);
+            }
+        }
+    }
+
+    private void parseValue(FieldDef field, TypeDef type, boolean required, ByteBuf in, boolean direct,
+            Listener listener) throws IOException {
+        type = schema.resolveToType(type, false);
+        switch (type.getType()) {
+            case INT8:
+            case INT16:
+            case INT32:
+            case ENUM: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.int32(field, (int) BlinkInput.readSignedVLC(in, b1));
+                }
+                break;
+            }
+            case UINT8:
+            case UINT16:
+            case UINT32:
+            case CHAR: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.int32(field, (int) BlinkInput.readUnsignedVLC(in, b1));
+                }
+                break;
+            }
+            case INT64:
+            case TIME: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.int64(field, BlinkInput.readSignedVLC(in, b1));
+                }
+                break;
+            }
+            case UINT64: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.int64(field, BlinkInput.readUnsignedVLC(in, b1));
+                }
+                break;
+            }
+            case FLOAT32: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.float32(field, (float) Double.longBitsToDouble(BlinkInput.readUnsignedVLC(in, b1)));
+                }
+                break;
+            }
+            case FLOAT64: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.float64(field, Double.longBitsToDouble(BlinkInput.readUnsignedVLC(in, b1)));
+                }
+                break;
+            }
+            case BOOLEAN: {
+                int b1 = in.read();
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    listener.bool(field, BlinkInput.readUnsignedVLC(in, b1) != 0);
+                }
+                break;
+            }
+            case DECIMAL: {
+                int b1 = in.read(); // exponent
+                if (!required && b1 == 0xc0) {
+                    listener.nullValue(field);
+                } else {
+                    long exponent = BlinkInput.readSignedVLC(in, b1);
+                    if (exponent < Byte.MIN_VALUE || exponent > Byte.MAX_VALUE) {
+                        throw new DecodeException("Decimal exponent (" + exponent + ") out of range");
+                    }
+                    listener.decimal(field, (int) exponent, BlinkInput.readInt64(in));
+                }
+                break;
+            }
+            case BIGINT: {
+                BigInteger value = required ? BlinkInput.readBigInt(in) : BlinkInput.readBigIntNull(in);
+                if (value == null) {
+                    listener.nullValue(field);
+                } else {
+                    listener.bigInt(field, value);
+                }
+                break;
+            }
+            case BIGDECIMAL: {
+                BigDecimal value = required ? BlinkInput.readBigDecimal(in) : BlinkInput.readBigDecimalNull(in);
+                if (value == null) {
+                    listener.nullValue(field);
+                } else {
+                    listener.bigDecimal(field, value);
+                }
+                break;
+            }
+            case STRING:
+            case BINARY: {
+                int size = BlinkSkipper.readSizeNull(in);
+                if (size == -1) {
+                    if (required) {
+                        throw new DecodeException("Found null (0xc0) while parsing a non-nullable value");
+                    }
+                    listener.nullValue(field);
+                } else {
+                    parseBytes(field, type.getType() == TypeDef.Type.STRING, size, in, direct, listener);
+                }
+                break;
+            }
+            case SEQUENCE: {
+                int length = BlinkSkipper.readSizeNull(in);
+                if (length == -1) {
+                    if (required) {
+                        throw new DecodeException("Found null (0xc0) while parsing a non-nullable value");
+                    }
+                    listener.nullValue(field);
+                } else {
+                    if (length > maxSequenceLength && maxSequenceLength >= 0) {
+                        throw new DecodeException(
+                                "Sequence length (" + length + ") exceeds limit (" + maxSequenceLength + ")");
+                    }
+                    TypeDef componentType = ((TypeDef.Sequence) type).getComponentType();
+                    listener.startSequence(field, length);
+                    for (int i = 0; i < length; i++) {
+                        parseValue(field, componentType, true, in, direct, listener);
+                    }
+                    listener.endSequence(field);
+                }
+                break;
+            }
+            case REFERENCE:
+                if (required || BlinkInput.readPresenceByte(in)) {
+                    parseStaticGroup(field, schema.resolveToGroup(type), in, direct, listener);
+                } else {
+                    listener.nullValue(field);
+                }
+                break;
+            case DYNAMIC_REFERENCE:
+                if (!parseDynamicGroup(field, in, direct, listener) && required) {
+                    throw new DecodeException("Found null (0xc0) while parsing a non-nullable value");
+                }
+                break;
+            default:
+                throw new RuntimeException("Unhandled case: " + type.getType());
+        }
+    }
+
+    private void parseBytes(FieldDef field, boolean string, int size, ByteBuf in, boolean direct, Listener listener)
+            throws IOException {
+        if (size > maxBinarySize && maxBinarySize >= 0) {
+            throw new DecodeException("Binary length (" + size + ") exceeds limit (" + maxBinarySize + ")");
+        }
+        ByteBuf buf;
+        int offset;
+        if (direct) {
+            if (size > in.remaining()) {
+                throw new IOException("Buffer underflow");
+            }
+            buf = in;
+            offset = in.position();
+        } else {
+            if (size > scratch.capacity()) {
+                scratch = new ByteArrayBuf(Math.max(size, scratch.capacity() * 2));
+            }
+            in.read(scratch.array(), 0, size);
+            buf = scratch;
+            offset = 0;
+            scratch.clear();
+        }
+        if (string) {
+            listener.string(field, buf, offset, size);
+        } else {
+            listener.binary(field, buf, offset, size);
+        }
+        if (direct) {
+            in.position(offset + size);
+        }
+    }
+}
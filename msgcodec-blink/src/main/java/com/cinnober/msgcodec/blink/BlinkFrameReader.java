@@ -0,0 +1,278 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.io.ByteBufferBuf;
+import com.cinnober.msgcodec.io.ByteBuffers;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking reader of Blink compact encoded frames (dynamic groups), e.g. from a non-blocking socket channel.
+ *
+ * <p>Data is read (or appended) into an internal direct buffer, which may contain any number of complete
+ * and partial frames. The size preamble of each dynamic group is used to find complete frames, which are
+ * decoded in place from the internal buffer. A partial frame is kept in the buffer until the rest of it has been
+ * read. It is moved to the start of the buffer at most once, when there is no more room after it.
+ * The buffer grows if a frame is larger than the buffer.
+ *
+ * <p>Example usage:
+ * <pre>
+ * BlinkFrameReader reader = codec.createFrameReader();
+ * // when the channel is readable
+ * if (reader.read(channel) == -1) {
+ *     // end of stream
+ * }
+ * reader.decodeAll(group -&gt; handle(group));
+ * </pre>
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author agent
+ * @see BlinkCodec#createFrameReader()
+ */
+public class BlinkFrameReader {
+
+    private final BlinkCodec codec;
+    private final int maxFrameSize;
+    /** The internal buffer. The limit is always the capacity, except while decoding. */
+    private ByteBuffer buffer;
+    private ByteBufferBuf bufferBuf;
+    /** The start of the buffered data, i.e. the start of the next frame. */
+    private int start;
+    /** The end of the buffered data. */
+    private int end;
+
+    /**
+     * Create a frame reader.
+     *
+     * @param codec the codec used to decode the frames, not null.
+     * @param initialCapacity the initial capacity of the internal buffer in bytes.
+     * @param maxFrameSize the maximum frame size (including the size preamble) in bytes, or -1 for no limit.
+     */
+    BlinkFrameReader(BlinkCodec codec, int initialCapacity, int maxFrameSize) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        }
+        this.codec = codec;
+        this.maxFrameSize = maxFrameSize;
+        setBuffer(ByteBuffer.allocateDirect(initialCapacity));
+    }
+
+    private void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.bufferBuf = new ByteBufferBuf(buffer);
+    }
+
+    /**
+     * Returns the number of buffered bytes that have not been decoded yet.
+     *
+     * @return the number of buffered bytes.
+     */
+    public int available() {
+        return end - start;
+    }
+
+    /**
+     * Read available bytes from the specified channel into the internal buffer.
+     *
+     * <p>In non-blocking mode this reads at most what is available in the channel,
+     * and it may read nothing.
+     *
+     * @param channel the channel to read from, not null.
+     * @return the number of bytes read, possibly zero, or -1 if the channel has reached end-of-stream.
+     * @throws IOException if the channel throws an exception.
+     * @throws DecodeException if the size preamble of the next frame could not be parsed,
+     * or if the frame is larger than the maximum frame size.
+     */
+    public int read(ReadableByteChannel channel) throws IOException {
+        ensureFree(requiredBytes());
+        buffer.limit(buffer.capacity()).position(end);
+        int n = channel.read(buffer);
+        if (n > 0) {
+            end += n;
+        }
+        return n;
+    }
+
+    /**
+     * Append the remaining bytes of the specified buffer to the internal buffer.
+     *
+     * @param src the buffer to read from, not null. All remaining bytes are read.
+     * @throws DecodeException if the size preamble of the next frame could not be parsed,
+     * or if the frame is larger than the maximum frame size.
+     */
+    public void append(ByteBuffer src) throws DecodeException {
+        int length = src.remaining();
+        ensureFree(Math.max(length, requiredBytes()));
+        buffer.limit(buffer.capacity()).position(end);
+        buffer.put(src);
+        end += length;
+    }
+
+    /**
+     * Returns true if there is a complete frame available to decode.
+     *
+     * @return true if a frame can be decoded, otherwise false.
+     * @throws DecodeException if the size preamble of the next frame could not be parsed,
+     * or if the frame is larger than the maximum frame size.
+     */
+    public boolean hasFrame() throws DecodeException {
+        int frameSize = frameSize();
+        return frameSize != -1 && frameSize <= end - start;
+    }
+
+    /**
+     * Decode the next complete frame, in place from the internal buffer.
+     *
+     * @return the decoded group, or null if the group was null.
+     * @throws IOException if the frame could not be decoded.
+     * @throws DecodeException if the frame could not be parsed.
+     * @throws IllegalStateException if there is no complete frame available, see {@link #hasFrame()}.
+     */
+    public Object decode() throws IOException {
+        if (!hasFrame()) {
+            throw new IllegalStateException("No complete frame available");
+        }
+        int frameEnd = start + frameSize();
+        buffer.limit(frameEnd).position(start);
+        // the frame is consumed even if decoding fails, so that the next frame can be decoded
+        start = frameEnd;
+        try {
+            return codec.decode(bufferBuf);
+        } finally {
+            buffer.limit(buffer.capacity());
+        }
+    }
+
+    /**
+     * Decode all complete frames in the internal buffer. Null groups are skipped.
+     *
+     * @param consumer the consumer of decoded groups, not null.
+     * @return the number of decoded groups, excluding any skipped null groups.
+     * @throws IOException if a frame could not be decoded.
+     * @throws DecodeException if a frame could not be parsed.
+     */
+    public int decodeAll(Consumer<Object> consumer) throws IOException {
+        int count = 0;
+        while (hasFrame()) {
+            Object group = decode();
+            if (group != null) {
+                consumer.accept(group);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of additional bytes required to complete the next frame, or its size preamble.
+     */
+    private int requiredBytes() throws DecodeException {
+        int frameSize = frameSize();
+        if (frameSize == -1) {
+            return end == start ? 1 : preambleSize(0xff & buffer.get(start)) - (end - start);
+        }
+        return Math.max(1, frameSize - (end - start));
+    }
+
+    /**
+     * Make room for at least the specified number of bytes after the buffered data,
+     * by moving the buffered data to the start of the buffer or by growing the buffer.
+     */
+    private void ensureFree(int required) {
+        int length = end - start;
+        if (length == 0) {
+            start = end = 0;
+        }
+        if (buffer.capacity() - end >= required) {
+            return;
+        }
+        if (length + required > buffer.capacity()) {
+            int capacity = Math.max(buffer.capacity() * 2, length + required);
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(capacity);
+            ByteBuffers.copy(buffer, start, newBuffer, 0, length);
+            setBuffer(newBuffer);
+        } else {
+            ByteBuffers.copy(buffer, start, buffer, 0, length);
+        }
+        buffer.limit(buffer.capacity());
+        start = 0;
+        end = length;
+    }
+
+    /**
+     * Returns the size of the next frame including the size preamble,
+     * or -1 if the size preamble is not completely buffered.
+     */
+    private int frameSize() throws DecodeException {
+        if (end == start) {
+            return -1;
+        }
+        int b1 = 0xff & buffer.get(start);
+        int preambleSize = preambleSize(b1);
+        if (preambleSize > 5) {
+            // more than four bytes of size, i.e. b1 is 0xc5..0xff
+            throw new DecodeException("Frame larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+        if (end - start < preambleSize) {
+            return -1;
+        }
+        long size;
+        if ((0x80 & b1) == 0) {
+            size = b1;
+        } else if ((0xc0 & b1) == 0x80) {
+            size = (0x3f & b1) | ((0xff & buffer.get(start + 1)) << 6);
+        } else if (b1 == 0xc0) {
+            size = 0; // null
+        } else {
+            size = 0;
+            for (int i = 1; i < preambleSize; i++) {
+                size |= (0xffL & buffer.get(start + i)) << ((i - 1) * 8);
+            }
+        }
+        size += preambleSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new DecodeException("Frame larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+        if (size > maxFrameSize && maxFrameSize >= 0) {
+            throw new DecodeException("Frame size (" + size + ") exceeds limit (" + maxFrameSize + ")");
+        }
+        return (int) size;
+    }
+
+    private static int preambleSize(int b1) {
+        if ((0x80 & b1) == 0) {
+            return 1;
+        } else if ((0xc0 & b1) == 0x80) {
+            return 2;
+        } else {
+            return 1 + (0x3f & b1);
+        }
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.TypeDef;
+import com.cinnober.msgcodec.io.ByteBuf;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flyweight view of a dynamic group encoded in the Blink compact binary encoding format.
+ *
+ * <p>The view wraps a {@link ByteBuf} and an offset, and decodes field values lazily directly from the buffer
+ * when they are requested. No group object is created. A view instance can be reused for any number of groups,
+ * see {@link #wrap(ByteBuf, int)}. Primitive field values are read without any allocation.
+ *
+ * <p>Fields are accessed by index, in encoding order (inherited fields first).
+ * The index of a field can be looked up once using {@link #getFieldIndex(String)}.
+ * Field offsets are computed on demand and cached until the next call to wrap,
+ * which means that fields are most efficiently read in increasing index order.
+ *
+ * <p>Example usage:
+ * <pre>
+ * BlinkGroupView view = codec.createGroupView();
+ * int price = -1;
+ * while (buf.hasRemaining()) {
+ *     int offset = buf.position();
+ *     if (view.wrap(buf, offset)) {
+ *         if (view.getGroupDef() == orderGroupDef) {
+ *             if (price == -1) {
+ *                 price = view.getFieldIndex("price");
+ *             }
+ *             handlePrice(view.getInt64(price));
+ *         }
+ *     }
+ *     buf.position(offset + view.getEncodedSize());
+ * }
+ * </pre>
+ *
+ * <p>Values inside static groups and sequences cannot be read by the view. Only the presence of a static group
+ * and the length of a sequence are available, see {@link #isNull(int)} and {@link #getSequenceLength(int)}.
+ * A nested dynamic group can be read by wrapping another view at {@link #getFieldOffset(int)} of the field.
+ *
+ * <p><b>Note:</b> the position of the wrapped buffer is moved when fields are read.
+ * Instances of this class are not thread safe.
+ *
+ * @author agent
+ * @see BlinkCodec#createGroupView()
+ */
+public class BlinkGroupView {
+
+    private static final byte KIND_SIGNED = 1;
+    private static final byte KIND_UNSIGNED = 2;
+    private static final byte KIND_FLOAT = 3;
+    private static final byte KIND_BOOLEAN = 4;
+    private static final byte KIND_DECIMAL = 5;
+    private static final byte KIND_STRING = 6;
+    private static final byte KIND_BINARY = 7;
+    private static final byte KIND_SEQUENCE = 8;
+    private static final byte KIND_GROUP = 9;
+    private static final byte KIND_DYNAMIC_GROUP = 10;
+    private static final byte KIND_BIGINT = 11;
+
+    private final Schema schema;
+    private final int maxBinarySize;
+    /** Sorted group ids. */
+    private final int[] groupIds;
+    /** Layouts, in the same order as groupIds. */
+    private final Layout[] layouts;
+
+    /** Field offsets, valid for field indices below knownOffsets. */
+    private final int[] offsets;
+    private int knownOffsets;
+
+    private ByteBuf buf;
+    private int start;
+    private int end;
+    private Layout layout;
+
+    /**
+     * Create a group view.
+     *
+     * @param schema the schema, not null.
+     * @param maxBinarySize the maximum binary size (including strings) allowed while decoding, or -1 for no limit.
+     */
+    BlinkGroupView(Schema schema, int maxBinarySize) {
+        this.schema = schema;
+        this.maxBinarySize = maxBinarySize;
+
+        int numGroups = 0;
+        for (GroupDef group : schema.getGroups()) {
+            if (group.getId() != -1) {
+                numGroups++;
+            }
+        }
+        Layout[] sortedLayouts = new Layout[numGroups];
+        int maxFields = 1;
+        int i = 0;
+        for (GroupDef group : schema.getGroups()) {
+            if (group.getId() != -1) {
+                Layout l = new Layout(schema, group);
+                sortedLayouts[i++] = l;
+                maxFields = Math.max(maxFields, l.fields.length);
+            }
+        }
+        Arrays.sort(sortedLayouts, (l1, l2) -> Integer.compare(l1.group.getId(), l2.group.getId()));
+        this.layouts = sortedLayouts;
+        this.groupIds = new int[numGroups];
+        for (i = 0; i < numGroups; i++) {
+            groupIds[i] = sortedLayouts[i].group.getId();
+        }
+        this.offsets = new int[maxFields];
+    }
+
+    /**
+     * Wrap the dynamic group at the specified offset of a buffer.
+     * The size preamble and the group id are read immediately, all fields are read lazily.
+     *
+     * @param buf the buffer to read from, not null.
+     * @param offset the offset of the dynamic group (size preamble) in the buffer.
+     * @return true if a group was wrapped, or false if the encoded group is null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the group could not be parsed, or if the group id is unknown.
+     */
+    public boolean wrap(ByteBuf buf, int offset) throws IOException {
+        this.buf = buf;
+        this.start = offset;
+        this.layout = null;
+        this.knownOffsets = 0;
+        buf.position(offset);
+        int size = BlinkSkipper.readSizeNull(buf);
+        if (size == -1) {
+            end = buf.position();
+            return false;
+        }
+        end = buf.position() + size;
+        int groupId = BlinkInput.readUInt32(buf);
+        int layoutIndex = Arrays.binarySearch(groupIds, groupId);
+        if (layoutIndex < 0) {
+            throw GeneratedCodec.unknownGroupId(groupId);
+        }
+        layout = layouts[layoutIndex];
+        offsets[0] = buf.position();
+        knownOffsets = 1;
+        return true;
+    }
+
+    /**
+     * Returns the total number of bytes of the wrapped group, including the size preamble.
+     * This can be used to find the offset of the next group.
+     *
+     * @return the encoded size in bytes.
+     */
+    public int getEncodedSize() {
+        return end - start;
+    }
+
+    /**
+     * Returns the group definition of the wrapped group.
+     *
+     * @return the group definition, or null if the wrapped group is null.
+     */
+    public GroupDef getGroupDef() {
+        return layout != null ? layout.group : null;
+    }
+
+    /**
+     * Returns the number of fields of the wrapped group, including inherited fields.
+     *
+     * @return the number of fields.
+     */
+    public int getFieldCount() {
+        return layout().fields.length;
+    }
+
+    /**
+     * Returns the field definition at the specified index.
+     *
+     * @param index the field index.
+     * @return the field definition, not null.
+     */
+    public FieldDef getField(int index) {
+        return layout().fields[index];
+    }
+
+    /**
+     * Returns the index of the field with the specified name in the wrapped group.
+     *
+     * @param name the field name, not null.
+     * @return the field index, or -1 if the group has no such field.
+     */
+    public int getFieldIndex(String name) {
+        Integer index = layout().indexByName.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the offset in the buffer of the encoded field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the offset.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if any preceding field could not be parsed.
+     */
+    public int getFieldOffset(int index) throws IOException {
+        Layout l = layout();
+        if (index < 0 || index >= l.fields.length) {
+            throw new IndexOutOfBoundsException("Field index: " + index);
+        }
+        while (knownOffsets <= index) {
+            int i = knownOffsets - 1;
+            buf.position(offsets[i]);
+            BlinkSkipper.skipValue(schema, l.types[i], l.fields[i].isRequired(), buf);
+            offsets[knownOffsets++] = buf.position();
+        }
+        return offsets[index];
+    }
+
+    /**
+     * Returns true if the field value at the specified index is null (absent).
+     *
+     * @param index the field index.
+     * @return true if the value is null, otherwise false.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    public boolean isNull(int index) throws IOException {
+        buf.position(getFieldOffset(index));
+        if (layout.kinds[index] == KIND_GROUP) {
+            return !layout.fields[index].isRequired() && !BlinkInput.readPresenceByte(buf);
+        } else {
+            return buf.read() == 0xc0;
+        }
+    }
+
+    /**
+     * Returns the boolean field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not a boolean.
+     */
+    public boolean getBoolean(int index) throws IOException {
+        return readVLC(index, KIND_BOOLEAN) != 0;
+    }
+
+    /**
+     * Returns the 8-bit integer field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not an integer.
+     */
+    public byte getInt8(int index) throws IOException {
+        return (byte) readInteger(index);
+    }
+
+    /**
+     * Returns the 16-bit integer field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not an integer.
+     */
+    public short getInt16(int index) throws IOException {
+        return (short) readInteger(index);
+    }
+
+    /**
+     * Returns the character field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not an integer.
+     */
+    public char getChar(int index) throws IOException {
+        return (char) readInteger(index);
+    }
+
+    /**
+     * Returns the 32-bit integer field value at the specified index.
+     * Enum fields are returned as the symbol id and time fields as the raw wire value.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not an integer.
+     */
+    public int getInt32(int index) throws IOException {
+        return (int) readInteger(index);
+    }
+
+    /**
+     * Returns the 64-bit integer field value at the specified index.
+     * Time fields are returned as the raw wire value.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not an integer.
+     */
+    public long getInt64(int index) throws IOException {
+        return readInteger(index);
+    }
+
+    /**
+     * Returns the 32-bit floating point field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not a floating point number.
+     */
+    public float getFloat32(int index) throws IOException {
+        return (float) getFloat64(index);
+    }
+
+    /**
+     * Returns the 64-bit floating point field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the field is not a floating point number.
+     */
+    public double getFloat64(int index) throws IOException {
+        return Double.longBitsToDouble(readVLC(index, KIND_FLOAT));
+    }
+
+    /**
+     * Returns the big integer field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value, or null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws IllegalArgumentException if the field is not a big integer.
+     */
+    public BigInteger getBigInt(int index) throws IOException {
+        seek(index, KIND_BIGINT);
+        return BlinkInput.readBigIntNull(buf);
+    }
+
+    /**
+     * Returns the decimal field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value, or null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws IllegalArgumentException if the field is not a decimal.
+     */
+    public BigDecimal getDecimal(int index) throws IOException {
+        seek(index, KIND_DECIMAL);
+        return layout.types[index].getType() == TypeDef.Type.DECIMAL ?
+                BlinkInput.readDecimalNull(buf) : BlinkInput.readBigDecimalNull(buf);
+    }
+
+    /**
+     * Returns the string field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value, or null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws IllegalArgumentException if the field is not a string.
+     */
+    public String getString(int index) throws IOException {
+        seek(index, KIND_STRING);
+        return BlinkInput.readStringUTF8Null(buf, maxBinarySize);
+    }
+
+    /**
+     * Returns the binary field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the value, or null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws IllegalArgumentException if the field is not binary.
+     */
+    public byte[] getBinary(int index) throws IOException {
+        seek(index, KIND_BINARY);
+        return BlinkInput.readBinaryNull(buf, maxBinarySize);
+    }
+
+    /**
+     * Returns the length of the sequence field value at the specified index.
+     *
+     * @param index the field index.
+     * @return the number of elements, or -1 if the sequence is null.
+     * @throws IOException if the buffer throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     * @throws IllegalArgumentException if the field is not a sequence.
+     */
+    public int getSequenceLength(int index) throws IOException {
+        seek(index, KIND_SEQUENCE);
+        return BlinkSkipper.readSizeNull(buf);
+    }
+
+    private Layout layout() {
+        if (layout == null) {
+            throw new IllegalStateException("No group wrapped");
+        }
+        return layout;
+    }
+
+    private void seek(int index, byte kind) throws IOException {
+        buf.position(getFieldOffset(index));
+        if (layout.kinds[index] != kind) {
+            throw new IllegalArgumentException("Illegal type of field " + layout.fields[index].getName() + ": " +
+                    layout.types[index]);
+        }
+    }
+
+    private long readInteger(int index) throws IOException {
+        byte kind = layout().kinds[index];
+        return readVLC(index, kind == KIND_UNSIGNED ? KIND_UNSIGNED : KIND_SIGNED);
+    }
+
+    private long readVLC(int index, byte kind) throws IOException {
+        seek(index, kind);
+        int b1 = buf.read();
+        if (b1 == 0xc0 && !layout.fields[index].isRequired()) {
+            throw new NullPointerException("Field value is null: " + layout.fields[index].getName());
+        }
+        if (kind == KIND_SIGNED) {
+            return BlinkInput.readSignedVLC(buf, b1);
+        } else {
+            return BlinkInput.readUnsignedVLC(buf, b1);
+        }
+    }
+
+    /**
+     * Field layout of a group.
+     */
+    private static class Layout {
+        final GroupDef group;
+        final FieldDef[] fields;
+        final TypeDef[] types;
+        final byte[] kinds;
+        final Map<String, Integer> indexByName;
+
+        Layout(Schema schema, GroupDef group) {
+            this.group = group;
+            List<FieldDef> allFields = BlinkSkipper.getAllFields(schema, group);
+            fields = allFields.toArray(new FieldDef[allFields.size()]);
+            types = new TypeDef[fields.length];
+            kinds = new byte[fields.length];
+            indexByName = new HashMap<>(fields.length * 2);
+            for (int i = 0; i < fields.length; i++) {
+                types[i] = schema.resolveToType(fields[i].getType(), false);
+                kinds[i] = kindOf(types[i]);
+                indexByName.put(fields[i].getName(), i);
+            }
+        }
+
+        private static byte kindOf(TypeDef type) {
+            switch (type.getType()) {
+                case INT8:
+                case INT16:
+                case INT32:
+                case INT64:
+                case ENUM:
+                case TIME:
+                    return KIND_SIGNED;
+                case UINT8:
+                case UINT16:
+                case UINT32:
+                case UINT64:
+                case CHAR:
+                    return KIND_UNSIGNED;
+                case FLOAT32:
+                case FLOAT64:
+                    return KIND_FLOAT;
+                case BOOLEAN:
+                    return KIND_BOOLEAN;
+                case DECIMAL:
+                case BIGDECIMAL:
+                    return KIND_DECIMAL;
+                case STRING:
+                    return KIND_STRING;
+                case BINARY:
+                    return KIND_BINARY;
+                case SEQUENCE:
+                    return KIND_SEQUENCE;
+                case REFERENCE:
+                    return KIND_GROUP;
+                case DYNAMIC_REFERENCE:
+                    return KIND_DYNAMIC_GROUP;
+                case BIGINT:
+                    return KIND_BIGINT;
+                default:
+                    throw new RuntimeException("Unhandled case: " + type.getType());
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import java.util.Arrays;
+
+/**
+ * Index of the dynamic groups in a Blink compact encoded stream.
+ *
+ * <p>Each entry consists of the offset of the group (size preamble) relative to the start of the scan,
+ * the total encoded size of the group (including the size preamble) and the group id.
+ * The offset and size can be used to decode or view a group later, e.g. in a memory mapped file.
+ *
+ * @author agent
+ * @see BlinkScanner#index(com.cinnober.msgcodec.io.ByteSource)
+ */
+public class BlinkIndex {
+
+    private long[] offsets;
+    private int[] encodedSizes;
+    private int[] groupIds;
+    private int size;
+
+    /**
+     * Create an empty index.
+     */
+    public BlinkIndex() {
+        this(64);
+    }
+
+    /**
+     * Create an empty index.
+     *
+     * @param initialCapacity the initial number of entries to allocate room for.
+     */
+    public BlinkIndex(int initialCapacity) {
+        initialCapacity = Math.max(1, initialCapacity);
+        offsets = new long[initialCapacity];
+        encodedSizes = new int[initialCapacity];
+        groupIds = new int[initialCapacity];
+    }
+
+    /**
+     * Add an entry to this index.
+     *
+     * @param offset the offset of the group.
+     * @param encodedSize the encoded size of the group, including the size preamble.
+     * @param groupId the group id.
+     */
+    public void add(long offset, int encodedSize, int groupId) {
+        if (size == offsets.length) {
+            int newCapacity = size * 2;
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            encodedSizes = Arrays.copyOf(encodedSizes, newCapacity);
+            groupIds = Arrays.copyOf(groupIds, newCapacity);
+        }
+        offsets[size] = offset;
+        encodedSizes[size] = encodedSize;
+        groupIds[size] = groupId;
+        size++;
+    }
+
+    /**
+     * Returns the number of entries in this index.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all entries in this index.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the offset of a group, relative to the start of the scan.
+     *
+     * @param index the index of the entry, {@code 0 <= index < size()}.
+     * @return the offset of the group (size preamble).
+     */
+    public long getOffset(int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+
+    /**
+     * Returns the total encoded size of a group, including the size preamble.
+     *
+     * @param index the index of the entry, {@code 0 <= index < size()}.
+     * @return the encoded size in bytes.
+     */
+    public int getEncodedSize(int index) {
+        checkIndex(index);
+        return encodedSizes[index];
+    }
+
+    /**
+     * Returns the group id of a group.
+     *
+     * @param index the index of the entry, {@code 0 <= index < size()}.
+     * @return the group id.
+     */
+    public int getGroupId(int index) {
+        checkIndex(index);
+        return groupIds[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BlinkIndex[size=" + size + "]";
+    }
+}
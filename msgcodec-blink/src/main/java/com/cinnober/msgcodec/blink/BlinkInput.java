@@ -24,6 +24,7 @@
 package com.cinnober.msgcodec.blink;
 
 import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteSource;
 
 import java.io.IOException;
@@ -486,6 +487,50 @@ public class BlinkInput {
         }
         return in.readStringUtf8(size);
     }
+    /**
+     * Read a unicode string, using a cache of previously decoded strings.
+     * @param in the input stream to read from, not null.
+     * @param maxLength the maximum string length (bytes) that is allowed, or -1 for no limit.
+     * @param cache the string cache, or null if no cache should be used.
+     * @return the value, not null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    public static String readStringUTF8(ByteSource in, int maxLength, StringCache cache) throws IOException {
+        if (cache == null) {
+            return readStringUTF8(in, maxLength);
+        }
+        int size = readUInt32(in);
+        if (size < 0) {
+            throw new DecodeException("Cannot read string larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+        if (size > maxLength && maxLength >= 0) {
+            throw new DecodeException("String length (" + size + ") exceeds limit (" + maxLength + ")");
+        }
+        return cache.readStringUtf8(in, size);
+    }
+    /**
+     * Read a nullable unicode string, using a cache of previously decoded strings.
+     * @param in the input stream to read from, not null.
+     * @param maxLength the maximum string length (bytes) that is allowed, or -1 for no limit.
+     * @param cache the string cache, or null if no cache should be used.
+     * @return the value, or null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    public static String readStringUTF8Null(ByteSource in, int maxLength, StringCache cache) throws IOException {
+        if (cache == null) {
+            return readStringUTF8Null(in, maxLength);
+        }
+        int size = BlinkSkipper.readSizeNull(in); // avoid boxing
+        if (size == -1) {
+            return null;
+        }
+        if (size > maxLength && maxLength >= 0) {
+            throw new DecodeException("String length (" + size + ") exceeds limit (" + maxLength + ")");
+        }
+        return cache.readStringUtf8(in, size);
+    }
     /**
      * Read a binary value.
      * @param in the input stream to read from, not null.
@@ -587,7 +632,7 @@ public class BlinkInput {
      * @throws IOException if the input stream throws an exception.
      * @throws DecodeException if the value could not be parsed.
      */
-    private static long readSignedVLC(ByteSource in, int b1) throws IOException {
+    static long readSignedVLC(ByteSource in, int b1) throws IOException {
         if ((0x80 & b1) == 0) {
             // single byte
             if ((0x40 & b1) != 0) {
@@ -612,6 +657,10 @@ public class BlinkInput {
             if (size == 0) {
                 throw new DecodeException("Found null (0xc0) while parsing a non-nullable VLC integer");
             }
+            if (size <= 8 && in instanceof ByteBuf && ((ByteBuf) in).remaining() >= 8) {
+                int shift = 64 - size * 8;
+                return (readVLCWord((ByteBuf) in, size) << shift) >> shift; // sign extend
+            }
             long value = 0;
             for (int i=0; i<size; i++) {
                 value |= (0xffL & in.read()) << (i * 8);
@@ -729,7 +778,7 @@ public class BlinkInput {
      * @throws IOException if the input stream throws an exception.
      * @throws DecodeException if the value could not be parsed.
      */
-    private static long readUnsignedVLC(ByteSource in, int b1) throws IOException {
+    static long readUnsignedVLC(ByteSource in, int b1) throws IOException {
         if ((0x80 & b1) == 0) {
             // single byte
             return 0x7fL & b1;
@@ -743,6 +792,9 @@ public class BlinkInput {
             if (size == 0) {
                 throw new DecodeException("Found null (0xc0) while parsing a non-nullable VLC integer");
             }
+            if (size <= 8 && in instanceof ByteBuf && ((ByteBuf) in).remaining() >= 8) {
+                return readVLCWord((ByteBuf) in, size);
+            }
             long value = 0;
             for (int i=0; i<size; i++) {
                 value |= (0xffL & in.read()) << (i * 8);
@@ -751,6 +803,24 @@ public class BlinkInput {
         }
     }
 
+    /**
+     * Read the data bytes of a VLC as a single little-endian word, instead of one byte at a time.
+     * The buffer must have at least 8 bytes remaining. The position is moved past the data bytes only.
+     *
+     * @param buf the buffer to read from, positioned after the first byte of the VLC, not null.
+     * @param size the number of data bytes, in the range [1, 8].
+     * @return the unsigned value of the data bytes.
+     * @throws IOException if the buffer throws an exception.
+     */
+    private static long readVLCWord(ByteBuf buf, int size) throws IOException {
+        int pos = buf.position();
+        long word = buf.readLongLE();
+        if (size != 8) {
+            buf.position(pos + size);
+        }
+        return word & (-1L >>> (64 - size * 8));
+    }
+
     /**
      * Skip a (nullable) variable-length code value.
      * @param in the input stream to read from, not null.
@@ -1107,5 +1177,28 @@ public class BlinkInput {
         }
         in.skip(size);
     }
-    
+
+    /**
+     * Skip a dynamic group, including the size preamble.
+     * @param in the input stream to read from, not null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    public static void skipDynamicGroup(ByteSource in) throws IOException {
+        int size = readUInt32(in);
+        if (size < 0) {
+            throw new DecodeException("Cannot read group larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+        in.skip(size);
+    }
+    /**
+     * Skip a nullable dynamic group, including the size preamble.
+     * @param in the input stream to read from, not null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    public static void skipDynamicGroupNull(ByteSource in) throws IOException {
+        BlinkSkipper.skipDynamicGroup(in);
+    }
+
 }
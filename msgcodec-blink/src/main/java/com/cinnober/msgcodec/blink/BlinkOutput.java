@@ -38,8 +38,6 @@ import java.nio.charset.Charset;
  */
 public class BlinkOutput {
 
-    private static final Charset UTF8 = Charset.forName("UTF-8");
-
     private BlinkOutput() {
     }
 
@@ -437,26 +435,9 @@ public class BlinkOutput {
      * @throws NullPointerException if value is null
      */
     public static void writeStringUTF8(ByteSink out, String value) throws IOException {
-        int len = value.length();
-        if (len < 128) {
-            boolean ascii = true;
-            for (int i=0; i<len; i++) {
-                if (value.charAt(i) >= 0x80) {
-                    ascii = false;
-                    break;
-                }
-            }
-            if (ascii) {
-                writeUInt32(out, len);
-                for (int i=0; i<len; i++) {
-                    out.write(value.charAt(i));
-                }
-                return;
-            }
-        }
-        byte[] bytes = value.getBytes(UTF8);
-        writeUInt32(out, bytes.length);
-        out.write(bytes);
+        int asciiLength = asciiLength(value);
+        writeUInt32(out, sizeOfUTF8(value, asciiLength));
+        writeUTF8(out, value, asciiLength);
     }
     /**
      * Write a nullable unicode string.
@@ -529,46 +510,14 @@ public class BlinkOutput {
      * @throws IOException if the underlying stream throws an exception
      */
     public static void writeSignedVLC(ByteSink out, long value) throws IOException {
-        if (value < 0) {
-            if (value >= 0xffffffffffffffc0L) {
-                writeVLC7(out, value);
-            } else if (value >= 0xffffffffffffe000L) { 
-                writeVLC14(out, value);
-            } else if (value >= 0xffffffffffff8000L) {
-                writeVLC16(out, value);
-            } else if (value >= 0xffffffffff800000L) {
-                writeVLC24(out, value);
-            } else if (value >= 0xffffffff80000000L) {
-                writeVLC32(out, value);
-            } else if (value >= 0xffffff8000000000L) {
-                writeVLC40(out, value);
-            } else if (value >= 0xffff800000000000L) {
-                writeVLC48(out, value);
-            } else if (value >= 0xff80000000000000L) {
-                writeVLC56(out, value);
-            } else {
-                writeVLC64(out, value);
-            }
+        long magnitude = value ^ (value >> 63); // one's complement of negative values
+        if (magnitude < 0x0000000000000040L) {
+            writeVLC7(out, value);
+        } else if (magnitude < 0x0000000000002000L) {
+            writeVLC14(out, value);
         } else {
-            if (value < 0x0000000000000040L) {
-                writeVLC7(out, value);
-            } else if (value < 0x0000000000002000L) {
-                writeVLC14(out, value);
-            } else if (value < 0x0000000000008000L) {
-                writeVLC16(out, value);
-            } else if (value < 0x0000000000800000L) {
-                writeVLC24(out, value);
-            } else if (value < 0x0000000080000000L) {
-                writeVLC32(out, value);
-            } else if (value < 0x0000008000000000L) {
-                writeVLC40(out, value);
-            } else if (value < 0x0000800000000000L) {
-                writeVLC48(out, value);
-            } else if (value < 0x0080000000000000L) {
-                writeVLC56(out, value);
-            } else {
-                writeVLC64(out, value);
-            }
+            // data bytes needed for the significant bits plus one sign bit
+            writeVLCWord(out, value, (72 - Long.numberOfLeadingZeros(magnitude)) >> 3);
         }
     }
     /**
@@ -583,20 +532,82 @@ public class BlinkOutput {
             writeVLC7(out, value);
         } else if((value & 0xffffffffffffc000L) == 0) {
             writeVLC14(out, value);
-        } else if((value & 0xffffffffffff0000L) == 0) {
-            writeVLC16(out, value);
-        } else if((value & 0xffffffffff000000L) == 0) {
-            writeVLC24(out, value);
-        } else if((value & 0xffffffff00000000L) == 0) {
-            writeVLC32(out, value);
-        } else if((value & 0xffffff0000000000L) == 0) {
-            writeVLC40(out, value);
-        } else if((value & 0xffff000000000000L) == 0) {
-            writeVLC48(out, value);
-        } else if((value & 0xff00000000000000L) == 0) {
-            writeVLC56(out, value);
         } else {
-            writeVLC64(out, value);
+            // data bytes needed for the significant bits
+            writeVLCWord(out, value, (71 - Long.numberOfLeadingZeros(value)) >> 3);
+        }
+    }
+
+    /**
+     * Write the UTF-8 encoding of a string, without any length preamble.
+     * The string is encoded directly into the sink, without allocating a temporary byte array.
+     *
+     * <p>The leading ASCII characters are written eight characters at a time using a single little-endian
+     * word store. The rest of the string is encoded one character at a time.
+     * Unpaired surrogates are encoded as '?', which is the same as {@link String#getBytes(Charset)}.
+     *
+     * @param out the output stream to write to, not null.
+     * @param value the value to be written, not null
+     * @param asciiLength the number of leading ASCII characters, as returned by {@link #asciiLength(String)}.
+     * @throws IOException if the underlying stream throws an exception
+     */
+    static void writeUTF8(ByteSink out, String value, int asciiLength) throws IOException {
+        int i = 0;
+        for (; i + 8 <= asciiLength; i += 8) {
+            out.writeLongLE(value.charAt(i) | value.charAt(i+1) << 8 | value.charAt(i+2) << 16 |
+                    (long) value.charAt(i+3) << 24 | (long) value.charAt(i+4) << 32 |
+                    (long) value.charAt(i+5) << 40 | (long) value.charAt(i+6) << 48 |
+                    (long) value.charAt(i+7) << 56);
+        }
+
+        final int len = value.length();
+        for (; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else if (!Character.isSurrogate(c)) {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out.write(0xf0 | (cp >> 18));
+                out.write(0x80 | ((cp >> 12) & 0x3f));
+                out.write(0x80 | ((cp >> 6) & 0x3f));
+                out.write(0x80 | (cp & 0x3f));
+            } else {
+                out.write('?'); // unpaired surrogate
+            }
+        }
+    }
+
+    /**
+     * Write a multi-byte variable-length code value, i.e. a length byte followed by the data bytes.
+     *
+     * <p>The four low data bytes (or all eight) are written using a single little-endian word store.
+     * Exactly <code>size</code> data bytes are written.
+     *
+     * @param out the output stream to write to, not null.
+     * @param value the value to be written
+     * @param size the number of data bytes, in the range [2, 8].
+     * @throws IOException if the underlying stream throws an exception
+     */
+    private static void writeVLCWord(ByteSink out, long value, int size) throws IOException {
+        out.write(0xc0 | size);
+        if (size == 8) {
+            out.writeLongLE(value);
+            return;
+        }
+        int i = 0;
+        if (size >= 4) {
+            out.writeIntLE((int) value);
+            i = 4;
+        }
+        for (; i < size; i++) {
+            out.write((int) (value >> (i << 3)) & 0xff);
         }
     }
 
@@ -720,42 +731,12 @@ public class BlinkOutput {
      * @return the number of bytes, always in the range [1, 9].
      */
     public static final int sizeOfSignedVLC(long value) {
-        if (value < 0) {
-            if (value >= 0xffffffffffffffc0L) // -64
-                return 1;
-            if (value >= 0xffffffffffffe000L) // -8192
-                return 2;
-            if (value >= 0xffffffffffff8000L)
-                return 3; // 2 data bytes = 16 bits = 15 bits + 1 sign
-            if (value >= 0xffffffffff800000L)
-                return 4; // 3 data bytes = 24 bits = 23 bits + 1 sign
-            if (value >= 0xffffffff80000000L)
-                return 5; // 4 data bytes = 32 bits = 31 bits + 1 sign
-            if (value >= 0xffffff8000000000L)
-                return 6;
-            if (value >= 0xffff800000000000L)
-                return 7;
-            if (value >= 0xff80000000000000L)
-                return 8;
-        } else {
-            if (value < 0x0000000000000040L) // 64
-                return 1;
-            if (value < 0x0000000000002000L) // 8192
-                return 2;
-            if (value < 0x0000000000008000L)
-                return 3; // 2 data bytes = 16 bits = 15 bits + 1 sign
-            if (value < 0x0000000000800000L)
-                return 4; // 3 data bytes = 24 bits = 23 bits + 1 sign
-            if (value < 0x0000000080000000L)
-                return 5; // 4 data bytes = 32 bits = 31 bits + 1 sign
-            if (value < 0x0000008000000000L)
-                return 6;
-            if (value < 0x0000800000000000L)
-                return 7;
-            if (value < 0x0080000000000000L)
-                return 8;
-        }
-        return 9;
+        long magnitude = value ^ (value >> 63); // one's complement of negative values
+        if (magnitude < 0x0000000000000040L) // 64
+            return 1;
+        if (magnitude < 0x0000000000002000L) // 8192
+            return 2;
+        return 1 + ((72 - Long.numberOfLeadingZeros(magnitude)) >> 3); // significant bits + 1 sign
     }
 
     /**
@@ -771,6 +752,46 @@ public class BlinkOutput {
         }
     }
 
+    /**
+     * Returns the number of leading ASCII characters in a string.
+     * @param value the value, not null.
+     * @return the number of leading ASCII characters, in the range [0, value.length()].
+     */
+    static int asciiLength(String value) {
+        final int len = value.length();
+        int i = 0;
+        while (i < len && value.charAt(i) < 0x80) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the size in bytes of the UTF-8 encoding of a string,
+     * as written by {@link #writeUTF8(ByteSink, String, int)}.
+     * @param value the value, not null.
+     * @param asciiLength the number of leading ASCII characters, as returned by {@link #asciiLength(String)}.
+     * @return the number of bytes.
+     */
+    static int sizeOfUTF8(String value, int asciiLength) {
+        final int len = value.length();
+        int size = len;
+        for (int i = asciiLength; i < len; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    size += 1;
+                } else if (!Character.isSurrogate(c)) {
+                    size += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    size += 2; // four bytes for two chars
+                    i++;
+                } // else unpaired surrogate, encoded as '?'
+            }
+        }
+        return size;
+    }
+
     /**
      * Returns the size in bytes of an unsigned variable-length coded value.
      * @param value the value
@@ -781,19 +802,7 @@ public class BlinkOutput {
             return 1;
         if((value & 0xffffffffffffc000L) == 0)
             return 2;
-        if((value & 0xffffffffffff0000L) == 0)
-            return 3; // 2 data bytes
-        if((value & 0xffffffffff000000L) == 0)
-            return 4; // 3 data bytes
-        if((value & 0xffffffff00000000L) == 0)
-            return 5;
-        if((value & 0xffffff0000000000L) == 0)
-            return 6;
-        if((value & 0xffff000000000000L) == 0)
-            return 7;
-        if((value & 0xff00000000000000L) == 0)
-            return 8;
-        return 9;
+        return 1 + ((71 - Long.numberOfLeadingZeros(value)) >> 3);
     }
 
 }
@@ -0,0 +1,463 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.EncodeBufferOverflowException;
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.ByteBufferBuf;
+import com.cinnober.msgcodec.io.ReallocatingArray;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Off-heap ring buffer of Blink compact encoded groups, for handing over groups from producer threads
+ * to consumer threads without locks.
+ *
+ * <p>Each record in the ring is a dynamic group as written by {@link BlinkCodec#encode(Object,
+ * com.cinnober.msgcodec.io.ByteSink)}, i.e. the size preamble of the group is the record header.
+ * Records start at multiples of 8 bytes.
+ *
+ * <p>A producer claims a slot for a record by advancing a claim sequence (compare-and-set), encodes the group
+ * once, directly into the slot, and then commits the record. The unused end of the slot is given back if no other
+ * producer has claimed after it, and is otherwise left as padding that the readers skip. A group that does not fit
+ * in a slot is encoded into a scratch buffer first, and then copied into a claim of the exact size.
+ *
+ * <p>Each record has its own commit flag, so a producer never waits for other producers.
+ * A reader reads the records in claim order, and stops at the first record that is not committed yet.
+ * The commit flags take 8 bytes of heap per 64 bytes of ring capacity.
+ *
+ * <p>Each {@link Reader} reads all committed records independently of the other readers, e.g. one reader
+ * for journaling and one for the network. Producers never overwrite records that a reader has not read yet.
+ * If a record does not fit, {@link #tryEncode(Object)} returns false, and {@link #encode(Object)} waits.
+ * Readers should be created before the producers start.
+ *
+ * <p>Example usage:
+ * <pre>
+ * BlinkRingBuffer ring = codec.createRingBuffer(1 &lt;&lt; 20);
+ * BlinkRingBuffer.Reader journal = ring.newReader();
+ * // producer thread
+ * ring.encode(group);
+ * // consumer thread
+ * journal.poll(group -&gt; write(group));
+ * </pre>
+ *
+ * @author agent
+ * @see BlinkCodec#createRingBuffer(int)
+ * @see BlinkCodec#createRingBuffer(int, int)
+ */
+public class BlinkRingBuffer {
+
+    /**
+     * Handler of raw records.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * Called for each record that is read.
+         *
+         * @param record the record, only valid during this call. The position is at the start of the
+         * size preamble and the limit is at the end of the record. The position may be moved freely.
+         * @throws IOException if the record cannot be handled.
+         */
+        void onRecord(ByteBuf record) throws IOException;
+    }
+
+    /** The alignment of records, and the granularity of the commit flags. */
+    private static final int ALIGNMENT_SHIFT = 3;
+    private static final int ALIGNMENT = 1 << ALIGNMENT_SHIFT;
+    /**
+     * Room kept free at the end of a slot while encoding. The size preamble is written after the group,
+     * and the group is shifted right if the room reserved for the preamble was too small.
+     */
+    private static final int SLACK = 8;
+    private static final int DEFAULT_SLOT_SIZE = 1024;
+    private static final byte NULL = (byte) 0xc0;
+    private static final Reader[] NO_READERS = new Reader[0];
+
+    private final BlinkCodec codec;
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int slotSize;
+
+    /** The end of the last claimed record. */
+    private final AtomicLong claimed = new AtomicLong();
+    /**
+     * The commit flags, per {@link #ALIGNMENT} bytes. When a record is committed, the flag at the start of the
+     * record is set to the end sequence of the record. A flag that is not greater than the start sequence
+     * belongs to an earlier lap, i.e. the record is not committed yet.
+     */
+    private final AtomicLongArray commits;
+    /**
+     * The smallest reader sequence, as last seen by a producer. A producer only replaces the value it read before
+     * it looked at the readers, so a lower value set by {@link #newReader()} in between is never lost.
+     */
+    private final AtomicLong gatingSequence = new AtomicLong();
+    private volatile Reader[] readers = NO_READERS;
+
+    private final ThreadLocal<ByteBufferBuf> producerBuf;
+    private final ThreadLocal<ReallocatingArray> producerScratch;
+
+    /**
+     * Create a ring buffer, with a slot size of a quarter of the capacity, but at most 1024 bytes.
+     *
+     * @param codec the codec used to encode and decode the groups, not null.
+     * @param capacity the capacity in bytes, a power of two, at least 64.
+     */
+    BlinkRingBuffer(BlinkCodec codec, int capacity) {
+        this(codec, capacity, Math.min(DEFAULT_SLOT_SIZE, capacity / 4));
+    }
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param codec the codec used to encode and decode the groups, not null.
+     * @param capacity the capacity in bytes, a power of two, at least 64.
+     * @param slotSize the number of bytes claimed before a group is encoded, at least 16 and at most the capacity.
+     * Larger groups are encoded into a scratch buffer first, and then copied into the ring.
+     */
+    BlinkRingBuffer(BlinkCodec codec, int capacity, int slotSize) {
+        if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, at least 64: " + capacity);
+        }
+        if (slotSize < SLACK + ALIGNMENT || slotSize > capacity) {
+            throw new IllegalArgumentException("Illegal slot size: " + slotSize);
+        }
+        this.codec = codec;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slotSize = align(slotSize);
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.commits = new AtomicLongArray(capacity >>> ALIGNMENT_SHIFT);
+        this.producerBuf = ThreadLocal.withInitial(() -> new ByteBufferBuf(buffer.duplicate()));
+        this.producerScratch = ThreadLocal.withInitial(() -> new ReallocatingArray(256, capacity));
+    }
+
+    /**
+     * Returns the capacity of the ring.
+     *
+     * @return the capacity in bytes.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Create a new reader, which starts reading after the last claimed record.
+     * The reader holds back the producers until it is closed.
+     *
+     * @return a new reader, not null.
+     */
+    public synchronized Reader newReader() {
+        // hold back the producers, from a sequence that is not after the start of the reader.
+        // The reader is published before the gating sequence is lowered, so a producer that has not seen
+        // the reader fails to replace the gating sequence after it has been lowered.
+        Reader reader = new Reader(claimed.get());
+        Reader[] newReaders = Arrays.copyOf(readers, readers.length + 1);
+        newReaders[readers.length] = reader;
+        readers = newReaders;
+        long readerStart = reader.sequence.get();
+        for (;;) {
+            long gating = gatingSequence.get();
+            if (gating <= readerStart || gatingSequence.compareAndSet(gating, readerStart)) {
+                break;
+            }
+        }
+
+        // claim a padding record to start at, since a producer may give back the end of its slot
+        ByteBuffer bb = producerBuf.get().getByteBuffer();
+        long start = claim(ALIGNMENT, bb, true, reader);
+        bb.put((int) (start & mask), NULL);
+        commit(start, start + ALIGNMENT);
+        reader.sequence.set(start);
+        return reader;
+    }
+
+    private synchronized void removeReader(Reader reader) {
+        Reader[] oldReaders = readers;
+        for (int i = 0; i < oldReaders.length; i++) {
+            if (oldReaders[i] == reader) {
+                Reader[] newReaders = new Reader[oldReaders.length - 1];
+                System.arraycopy(oldReaders, 0, newReaders, 0, i);
+                System.arraycopy(oldReaders, i + 1, newReaders, i, newReaders.length - i);
+                readers = newReaders;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encode a group into the ring, and wait if there is not enough room.
+     *
+     * @param group the group to encode, not null.
+     * @throws IOException if the group could not be encoded.
+     * @throws IllegalArgumentException if the group is not correct or complete,
+     * or if it is larger than the capacity of the ring.
+     */
+    public void encode(Object group) throws IOException {
+        encode(group, true);
+    }
+
+    /**
+     * Encode a group into the ring, if there is room.
+     *
+     * @param group the group to encode, not null.
+     * @return true if the group was encoded, or false if there was not enough room in the ring.
+     * @throws IOException if the group could not be encoded.
+     * @throws IllegalArgumentException if the group is not correct or complete,
+     * or if it is larger than the capacity of the ring.
+     */
+    public boolean tryEncode(Object group) throws IOException {
+        return encode(group, false);
+    }
+
+    private boolean encode(Object group, boolean wait) throws IOException {
+        ByteBufferBuf buf = producerBuf.get();
+        ByteBuffer bb = buf.getByteBuffer();
+
+        // encode directly into a slot
+        long start = claim(slotSize, bb, wait, null);
+        if (start >= 0) {
+            int index = (int) (start & mask);
+            bb.limit(index + slotSize - SLACK).position(index);
+            try {
+                codec.encode(group, buf);
+                int length = align(bb.position() - index);
+                bb.limit(capacity);
+                release(start, slotSize, length, bb);
+                return true;
+            } catch (IOException e) {
+                // larger than the slot, give it back and use the scratch buffer
+                bb.limit(capacity);
+                release(start, slotSize, 0, bb);
+            } catch (RuntimeException e) {
+                bb.limit(capacity);
+                release(start, slotSize, 0, bb);
+                throw e;
+            }
+        }
+
+        // encode into the scratch buffer, and copy it into a claim of the exact size
+        ReallocatingArray scratch = producerScratch.get();
+        scratch.clear();
+        try {
+            codec.encode(group, scratch);
+        } catch (EncodeBufferOverflowException e) {
+            throw new IllegalArgumentException("Group size exceeds ring capacity (" + capacity + ")", e);
+        }
+        int size = scratch.position();
+        int length = align(size);
+        if (length > capacity) {
+            throw new IllegalArgumentException("Group size (" + size + ") exceeds ring capacity (" + capacity + ")");
+        }
+        start = claim(length, bb, wait, null);
+        if (start < 0) {
+            return false;
+        }
+        ByteBuffer src = scratch.getByteBuffer();
+        src.limit(size);
+        bb.position((int) (start & mask));
+        bb.put(src);
+        commit(start, start + length);
+        return true;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Claim room for a record. If the record does not fit before the end of the ring,
+     * the rest of the ring is claimed and committed as padding first.
+     *
+     * @param length the number of bytes to claim, a multiple of the alignment.
+     * @param bb the ring buffer (duplicate) of the current thread, not null.
+     * @param wait true if the claim should wait for room, false if it should fail.
+     * @param ignored a reader that should not hold back this claim, or null.
+     * @return the start sequence of the claim, or -1 if there was no room.
+     */
+    private long claim(int length, ByteBuffer bb, boolean wait, Reader ignored) {
+        bb.limit(capacity);
+        for (;;) {
+            long start = claimed.get();
+            int index = (int) (start & mask);
+            if (index + length > capacity) {
+                long end = start + (capacity - index);
+                if (hasRoom(end, ignored)) {
+                    if (claimed.compareAndSet(start, end)) {
+                        bb.put(index, NULL);
+                        commit(start, end);
+                    }
+                    continue;
+                }
+            } else {
+                long end = start + length;
+                if (hasRoom(end, ignored)) {
+                    if (claimed.compareAndSet(start, end)) {
+                        return start;
+                    }
+                    continue;
+                }
+            }
+            if (!wait) {
+                return -1;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Commit a claimed slot, after the group has been encoded. The unused end of the slot is given back if this
+     * is still the last claim, and is otherwise left as padding. An empty record is committed as padding.
+     *
+     * @param start the start sequence of the slot
+     * @param slotLength the claimed length of the slot
+     * @param length the used length of the slot, a multiple of the alignment, or 0 if unused.
+     * @param bb the ring buffer (duplicate) of the current thread, not null.
+     */
+    private void release(long start, int slotLength, int length, ByteBuffer bb) {
+        long end = start + slotLength;
+        if (length < slotLength && claimed.compareAndSet(end, start + length)) {
+            if (length != 0) {
+                commit(start, start + length);
+            }
+        } else {
+            if (length == 0) {
+                bb.put((int) (start & mask), NULL);
+            }
+            commit(start, end);
+        }
+    }
+
+    private void commit(long start, long end) {
+        commits.lazySet((int) (start & mask) >>> ALIGNMENT_SHIFT, end);
+    }
+
+    /**
+     * Returns true if a claim up to the specified end does not overwrite any record that has not been read.
+     */
+    private boolean hasRoom(long end, Reader ignored) {
+        long gating = gatingSequence.get();
+        if (end - gating <= capacity) {
+            return true;
+        }
+        long min = end; // no readers
+        for (Reader reader : readers) {
+            if (reader != ignored) {
+                min = Math.min(min, reader.sequence.get());
+            }
+        }
+        if (ignored == null) {
+            // fails if a new reader has lowered the gating sequence meanwhile
+            gatingSequence.compareAndSet(gating, min);
+        }
+        return end - min <= capacity;
+    }
+
+    /**
+     * Reader of committed records in the ring.
+     *
+     * <p>Instances of this class are not thread safe. Each reader should be used by one thread.
+     */
+    public class Reader implements AutoCloseable {
+        /** The start of the next record to read. */
+        private final AtomicLong sequence;
+        private final ByteBufferBuf view = new ByteBufferBuf(buffer.duplicate());
+
+        private Reader(long sequence) {
+            this.sequence = new AtomicLong(sequence);
+        }
+
+        /**
+         * Read all committed records.
+         *
+         * @param handler the handler of the records, not null.
+         * @return the number of records read.
+         * @throws IOException if the handler throws an exception.
+         */
+        public int read(RecordHandler handler) throws IOException {
+            return read(handler, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Read committed records.
+         *
+         * @param handler the handler of the records, not null.
+         * @param max the maximum number of records to read.
+         * @return the number of records read.
+         * @throws IOException if the handler throws an exception.
+         */
+        public int read(RecordHandler handler, int max) throws IOException {
+            ByteBuffer bb = view.getByteBuffer();
+            long seq = sequence.get();
+            int count = 0;
+            try {
+                while (count < max) {
+                    int index = (int) (seq & mask);
+                    long end = commits.get(index >>> ALIGNMENT_SHIFT);
+                    if (end <= seq) {
+                        break; // not committed yet
+                    }
+                    seq = end;
+                    bb.limit(capacity);
+                    if (bb.get(index) == NULL) {
+                        continue; // padding
+                    }
+                    bb.position(index);
+                    int size = BlinkInput.readUInt32(view);
+                    bb.limit(bb.position() + size).position(index);
+                    handler.onRecord(view);
+                    count++;
+                }
+            } finally {
+                sequence.lazySet(seq);
+            }
+            return count;
+        }
+
+        /**
+         * Decode all committed records.
+         *
+         * @param consumer the consumer of the decoded groups, not null.
+         * @return the number of decoded groups.
+         * @throws IOException if a group could not be decoded.
+         */
+        public int poll(Consumer<Object> consumer) throws IOException {
+            return read(record -> consumer.accept(codec.decode(record)));
+        }
+
+        /**
+         * Stop reading, so that the reader no longer holds back the producers.
+         */
+        @Override
+        public void close() {
+            removeReader(this);
+        }
+    }
+}
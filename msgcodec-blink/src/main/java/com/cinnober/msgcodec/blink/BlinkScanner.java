@@ -0,0 +1,239 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.ByteSource;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.function.IntPredicate;
+
+/**
+ * Scanner of Blink compact encoded streams of dynamic groups, which does not create any group objects.
+ *
+ * <p>The scanner only reads the size preamble and the group id of each group, and skips the rest of the
+ * group. Groups of interest can be inspected using a {@link BlinkGroupView}, which reads field values
+ * directly from the encoded data. This is much cheaper than decoding every group when only a few groups in
+ * a large stream, e.g. a journal, are of interest.
+ *
+ * <p>The end of the stream is reached when a {@link ByteBuf} has no remaining bytes,
+ * or when another byte source throws an {@link EOFException} between two groups.
+ * Null groups in the stream are skipped.
+ *
+ * <p>Example usage:
+ * <pre>
+ * BlinkScanner scanner = codec.createScanner();
+ * BlinkIndex index = scanner.index(in, groupId -&gt; groupId == orderGroupId);
+ * </pre>
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author agent
+ * @see BlinkCodec#createScanner()
+ */
+public class BlinkScanner {
+
+    /**
+     * Handler of scanned groups.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Called for each scanned group that is accepted by the group id filter.
+         *
+         * @param offset the offset of the group (size preamble), relative to the start of the scan.
+         * @param encodedSize the total encoded size of the group, including the size preamble.
+         * @param groupId the group id.
+         * @param view a view of the group, only valid during this call. The view may be moved freely.
+         * @throws IOException if the view throws an exception.
+         */
+        void onGroup(long offset, int encodedSize, int groupId, BlinkGroupView view) throws IOException;
+    }
+
+    private static final IntPredicate ALL_GROUPS = groupId -> true;
+
+    private final BlinkGroupView view;
+    /** Scratch buffer, for viewing groups from a byte source that is not a ByteBuf. */
+    private ByteArrayBuf scratch = new ByteArrayBuf(256);
+
+    /**
+     * Create a scanner.
+     *
+     * @param schema the schema, not null.
+     * @param maxBinarySize the maximum binary size (including strings) allowed while decoding, or -1 for no limit.
+     */
+    BlinkScanner(Schema schema, int maxBinarySize) {
+        this.view = new BlinkGroupView(schema, maxBinarySize);
+    }
+
+    /**
+     * Scan all groups in the specified byte source and build an index.
+     *
+     * @param in the byte source to scan, not null.
+     * @return the index of all groups, not null.
+     * @throws IOException if the byte source throws an exception.
+     * @throws DecodeException if the stream could not be parsed.
+     */
+    public BlinkIndex index(ByteSource in) throws IOException {
+        return index(in, ALL_GROUPS);
+    }
+
+    /**
+     * Scan all groups in the specified byte source and build an index of the groups accepted by a filter.
+     *
+     * @param in the byte source to scan, not null.
+     * @param groupIdFilter the filter of group ids to include in the index, not null.
+     * @return the index of the included groups, not null.
+     * @throws IOException if the byte source throws an exception.
+     * @throws DecodeException if the stream could not be parsed.
+     */
+    public BlinkIndex index(ByteSource in, IntPredicate groupIdFilter) throws IOException {
+        BlinkIndex index = new BlinkIndex();
+        scan(in, groupIdFilter, index, null);
+        return index;
+    }
+
+    /**
+     * Scan all groups in the specified byte source, and call a handler for the groups accepted by a filter.
+     * The handler is given a view of the group, which can be used to read selected field values.
+     *
+     * <p>Groups from a {@link ByteBuf} are viewed in place. Groups from other byte sources are first copied into
+     * a scratch buffer, but only when accepted by the filter.
+     *
+     * @param in the byte source to scan, not null.
+     * @param groupIdFilter the filter of group ids to handle, not null.
+     * @param handler the handler of accepted groups, not null.
+     * @return the number of handled groups.
+     * @throws IOException if the byte source or the handler throws an exception.
+     * @throws DecodeException if the stream could not be parsed.
+     */
+    public int scan(ByteSource in, IntPredicate groupIdFilter, Handler handler) throws IOException {
+        return scan(in, groupIdFilter, null, handler);
+    }
+
+    private int scan(ByteSource in, IntPredicate groupIdFilter, BlinkIndex index, Handler handler)
+            throws IOException {
+        final ByteBuf buf = in instanceof ByteBuf ? (ByteBuf) in : null;
+        int count = 0;
+        long offset = 0;
+        for (;;) {
+            int start = 0;
+            int b1;
+            if (buf != null) {
+                if (!buf.hasRemaining()) {
+                    break;
+                }
+                start = buf.position();
+                b1 = buf.read();
+            } else {
+                try {
+                    b1 = in.read();
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+            if (b1 == 0xc0) {
+                offset++; // null group
+                continue;
+            }
+            int sizeOfSize = sizeOfVLC(b1);
+            long size = BlinkInput.readUnsignedVLC(in, b1);
+            if (size > Integer.MAX_VALUE - sizeOfSize) {
+                throw new DecodeException("Dynamic group size overflow: " + size);
+            }
+            int id1 = in.read();
+            int sizeOfId = sizeOfVLC(id1);
+            int groupId = (int) BlinkInput.readUnsignedVLC(in, id1);
+            int encodedSize = sizeOfSize + (int) size;
+            int remaining = (int) size - sizeOfId;
+            if (remaining < 0) {
+                throw new DecodeException("Malformed dynamic group. Group id beyond group size.");
+            }
+
+            if (groupIdFilter.test(groupId)) {
+                count++;
+                if (index != null) {
+                    index.add(offset, encodedSize, groupId);
+                }
+                if (handler != null) {
+                    if (buf != null) {
+                        view.wrap(buf, start);
+                        handler.onGroup(offset, encodedSize, groupId, view);
+                        buf.position(start + encodedSize);
+                        remaining = 0;
+                    } else {
+                        viewCopy(in, groupId, remaining);
+                        handler.onGroup(offset, encodedSize, groupId, view);
+                        remaining = 0;
+                    }
+                }
+            }
+            if (remaining > 0) {
+                in.skip(remaining);
+            }
+            offset += encodedSize;
+        }
+        return count;
+    }
+
+    /**
+     * Copy a group into the scratch buffer, and wrap it with the view.
+     *
+     * @param in the source to read the fields of the group from
+     * @param groupId the group id, already read
+     * @param fieldsSize the number of bytes of the fields, not yet read
+     */
+    private void viewCopy(ByteSource in, int groupId, int fieldsSize) throws IOException {
+        int sizeOfId = BlinkOutput.sizeOfUnsignedVLC(0xffffffffL & groupId);
+        int size = sizeOfId + fieldsSize;
+        int encodedSize = BlinkOutput.sizeOfUnsignedVLC(size) + size;
+        if (scratch.capacity() < encodedSize) {
+            scratch = new ByteArrayBuf(Math.max(encodedSize, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        BlinkOutput.writeUInt32(scratch, size);
+        BlinkOutput.writeUInt32(scratch, groupId);
+        in.read(scratch.array(), scratch.position(), fieldsSize);
+        view.wrap(scratch, 0);
+    }
+
+    /**
+     * Returns the size of a VLC given its first byte.
+     *
+     * @param b1 the first byte
+     * @return the size in bytes
+     */
+    private static int sizeOfVLC(int b1) {
+        if ((0x80 & b1) == 0) {
+            return 1;
+        } else if ((0xc0 & b1) == 0x80) {
+            return 2;
+        } else {
+            return 1 + (0x3f & b1);
+        }
+    }
+}
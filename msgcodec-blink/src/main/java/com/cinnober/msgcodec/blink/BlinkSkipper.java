@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.TypeDef;
+import com.cinnober.msgcodec.io.ByteSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema driven skipping of values in the Blink compact binary encoding format.
+ *
+ * <p>Used when the encoded data must be traversed without creating any group objects.
+ *
+ * @author agent
+ */
+class BlinkSkipper {
+
+    private BlinkSkipper() {
+    }
+
+    /**
+     * Returns all fields of the specified group, including any inherited fields, in encoding order.
+     *
+     * @param schema the schema, not null.
+     * @param group the group, not null.
+     * @return the fields, not null.
+     */
+    static List<FieldDef> getAllFields(Schema schema, GroupDef group) {
+        List<FieldDef> fields = new ArrayList<>();
+        addAllFields(schema, group, fields);
+        return fields;
+    }
+
+    private static void addAllFields(Schema schema, GroupDef group, List<FieldDef> fields) {
+        if (group.getSuperGroup() != null) {
+            addAllFields(schema, schema.getGroup(group.getSuperGroup()), fields);
+        }
+        fields.addAll(group.getFields());
+    }
+
+    /**
+     * Skip the fields of a static group, including any inherited fields.
+     *
+     * @param schema the schema, not null.
+     * @param group the group, not null.
+     * @param in the input stream to read from, not null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    static void skipStaticGroup(Schema schema, GroupDef group, ByteSource in) throws IOException {
+        if (group.getSuperGroup() != null) {
+            skipStaticGroup(schema, schema.getGroup(group.getSuperGroup()), in);
+        }
+        for (FieldDef field : group.getFields()) {
+            skipValue(schema, field.getType(), field.isRequired(), in);
+        }
+    }
+
+    /**
+     * Skip a value of the specified type.
+     *
+     * @param schema the schema, not null.
+     * @param type the type of the value, not null.
+     * @param required true if the value is required, otherwise false.
+     * @param in the input stream to read from, not null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    static void skipValue(Schema schema, TypeDef type, boolean required, ByteSource in) throws IOException {
+        type = schema.resolveToType(type, false);
+        switch (type.getType()) {
+            case INT8:
+            case UINT8:
+            case CHAR:
+            case INT16:
+            case UINT16:
+            case INT32:
+            case UINT32:
+            case INT64:
+            case UINT64:
+            case FLOAT32:
+            case FLOAT64:
+            case BIGINT:
+            case BOOLEAN:
+            case ENUM:
+            case TIME:
+                BlinkInput.skipVLC(in);
+                break;
+            case DECIMAL:
+            case BIGDECIMAL:
+                if (BlinkInput.skipVLC(in)) { // exponent
+                    BlinkInput.skipVLC(in); // mantissa
+                }
+                break;
+            case STRING:
+            case BINARY: {
+                int size = readSizeNull(in);
+                if (size > 0) {
+                    in.skip(size);
+                }
+                break;
+            }
+            case SEQUENCE: {
+                int length = readSizeNull(in);
+                TypeDef componentType = ((TypeDef.Sequence) type).getComponentType();
+                for (int i = 0; i < length; i++) {
+                    skipValue(schema, componentType, true, in);
+                }
+                break;
+            }
+            case REFERENCE:
+                if (required || BlinkInput.readPresenceByte(in)) {
+                    skipStaticGroup(schema, schema.resolveToGroup(type), in);
+                }
+                break;
+            case DYNAMIC_REFERENCE:
+                skipDynamicGroup(in);
+                break;
+            default:
+                throw new RuntimeException("Unhandled case: " + type.getType());
+        }
+    }
+
+    /**
+     * Skip a (nullable) dynamic group, including the size preamble.
+     *
+     * @param in the input stream to read from, not null.
+     * @return the size of the skipped group (excluding the size preamble), or -1 if the group was null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed.
+     */
+    static int skipDynamicGroup(ByteSource in) throws IOException {
+        int size = readSizeNull(in);
+        if (size > 0) {
+            in.skip(size);
+        }
+        return size;
+    }
+
+    /**
+     * Read a nullable size (or length) preamble without boxing.
+     *
+     * @param in the input stream to read from, not null.
+     * @return the size, or -1 if null.
+     * @throws IOException if the input stream throws an exception.
+     * @throws DecodeException if the value could not be parsed, or if the size is larger than Integer.MAX_VALUE.
+     */
+    static int readSizeNull(ByteSource in) throws IOException {
+        int b1 = in.read();
+        if (b1 == 0xc0) {
+            return -1;
+        }
+        long size = BlinkInput.readUnsignedVLC(in, b1);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new DecodeException("Size larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+        return (int) size;
+    }
+}
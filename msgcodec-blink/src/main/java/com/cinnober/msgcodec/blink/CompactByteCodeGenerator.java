@@ -23,14 +23,296 @@
  */
 package com.cinnober.msgcodec.blink;
 
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.TypeDef;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.ISTORE;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.RETURN;
+
 /**
  *
  * @author mikael.brannstrom
  */
 class CompactByteCodeGenerator extends BaseByteCodeGenerator {
 
+    /** Marker for an unbounded encoded size. */
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+    private static final String STRING_CACHE_DESCRIPTOR = "Lcom/cinnober/msgcodec/blink/StringCache;";
+
     public CompactByteCodeGenerator() {
         super(GeneratedCompactCodec.class, BlinkCodec.class, BlinkInput.class, BlinkOutput.class);
     }
 
+    /**
+     * Generates the string cache field of string fields, and sequence of string fields.
+     *
+     * <p>Generated layout:
+     * <pre>
+     * // fields
+     * StringCache stringCache_MessageType1_field1; // null if no cache
+     * ...
+     * </pre>
+     */
+    @Override
+    protected void generateFieldMembers(Schema schema, GroupDef group, FieldDef field, ClassVisitor cv,
+            MethodVisitor ctormv, String genClassInternalName) {
+        if (!isStringField(schema, field)) {
+            return;
+        }
+        String cacheField = "stringCache_" + group.getName() + "_" + field.getName();
+        FieldVisitor fv = cv.visitField(ACC_PRIVATE + ACC_FINAL, cacheField, STRING_CACHE_DESCRIPTOR, null, null);
+        fv.visitEnd();
+
+        // ctor, init field
+        ctormv.visitVarInsn(ALOAD, 0); // this
+        ctormv.visitVarInsn(ALOAD, 0); // this
+        ctormv.visitLdcInsn(group.getName());
+        ctormv.visitLdcInsn(field.getName());
+        ctormv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "createStringCache",
+                "(Ljava/lang/String;Ljava/lang/String;)" + STRING_CACHE_DESCRIPTOR, false);
+        ctormv.visitFieldInsn(PUTFIELD, genClassInternalName, cacheField, STRING_CACHE_DESCRIPTOR);
+    }
+
+    private static boolean isStringField(Schema schema, FieldDef field) {
+        TypeDef type = schema.resolveToType(field.getType(), true);
+        if (type.getType() == TypeDef.Type.SEQUENCE) {
+            type = schema.resolveToType(((TypeDef.Sequence) type).getComponentType(), true);
+        }
+        return type.getType() == TypeDef.Type.STRING;
+    }
+
+    /**
+     * Generate string decoding using the string cache of the field, if any.
+     *
+     * <p>Generated code: <code>readStringUTF8[Null](in, getMaxBinarySize(), stringCache_[fieldIdentifier])</code>.
+     */
+    @Override
+    protected void generateDecodeStringValue(TypeDef.StringUnicode type, MethodVisitor mv, boolean required,
+            String genClassInternalName, String fieldIdentifier) {
+        if (fieldIdentifier == null) {
+            generateDecodeStringValue(type, mv, required);
+            return;
+        }
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, baseclassIName, "getMaxBinarySize", "()I", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, genClassInternalName, "stringCache_" + fieldIdentifier, STRING_CACHE_DESCRIPTOR);
+        mv.visitMethodInsn(INVOKESTATIC, blinkInputIName, required ? "readStringUTF8" : "readStringUTF8Null",
+                "(Lcom/cinnober/msgcodec/io/ByteSource;I" + STRING_CACHE_DESCRIPTOR + ")Ljava/lang/String;", false);
+    }
+
+    /**
+     * Generates the methods for writing a dynamic group to a byte buffer.
+     *
+     * <p>Generated layout:
+     * <pre>
+     * // fields
+     * int sizePrediction_MessageType1; // size preamble prediction state, 0 if no prediction
+     * ...
+     *
+     * // methods
+     * void writeDynamicGroupToBuf(ByteBuf, Object); // switch on group type
+     * ...
+     * void writeDynamicGroupToBuf_MessageType1(ByteBuf, MessageType1);
+     * void writeDynamicGroupToBuf_MessageType2(ByteBuf, MessageType2);
+     * ...
+     * </pre>
+     */
+    @Override
+    protected void generateWriteDynamicGroup(Schema schema, ClassVisitor cv, String genClassInternalName,
+            boolean javaClassCodec) {
+        generateWriteGroupTypeSwitch(schema, cv, genClassInternalName, javaClassCodec,
+                "writeDynamicGroupToBuf", "Lcom/cinnober/msgcodec/io/ByteBuf;");
+
+        for (GroupDef group : schema.getGroups()) {
+            Object groupType = group.getGroupType();
+            String groupDescriptor = getTypeDescriptor(groupType, javaClassCodec);
+            String predictionField = "sizePrediction_" + group.getName();
+            int estimatedSizeOfSize = estimateSizeOfSize(schema, group);
+
+            FieldVisitor fv = cv.visitField(ACC_PRIVATE, predictionField, "I", null, null);
+            fv.visitEnd();
+
+            MethodVisitor mv = cv.visitMethod(
+                    ACC_PRIVATE,
+                    "writeDynamicGroupToBuf_" + group.getName(),
+                    "(Lcom/cinnober/msgcodec/io/ByteBuf;" + groupDescriptor + ")V",
+                    null,
+                    new String[] { "java/io/IOException" });
+            mv.visitCode();
+            int startVar = 3;
+            int reservedVar = 4;
+
+            // int start = buf.position();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEINTERFACE, "com/cinnober/msgcodec/io/ByteBuf", "position", "()I", true);
+            mv.visitVarInsn(ISTORE, startVar);
+
+            // int reserved = reserveSizePreamble(buf, sizePrediction_X, estimatedSizeOfSize);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, genClassInternalName, predictionField, "I");
+            mv.visitLdcInsn(estimatedSizeOfSize);
+            mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "reserveSizePreamble",
+                    "(Lcom/cinnober/msgcodec/io/ByteBuf;II)I", false);
+            mv.visitVarInsn(ISTORE, reservedVar);
+
+            // writeStaticGroupWithId_X(buf, group);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ALOAD, 2);
+            if (javaClassCodec) {
+                mv.visitTypeInsn(CHECKCAST, getTypeInternalName(groupType, javaClassCodec));
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "writeStaticGroupWithId_" + group.getName(),
+                    "(Lcom/cinnober/msgcodec/io/ByteSink;" + groupDescriptor + ")V", false);
+
+            // sizePrediction_X = writeSizePreamble(buf, start, reserved, sizePrediction_X);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ILOAD, startVar);
+            mv.visitVarInsn(ILOAD, reservedVar);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, genClassInternalName, predictionField, "I");
+            mv.visitMethodInsn(INVOKEVIRTUAL, genClassInternalName, "writeSizePreamble",
+                    "(Lcom/cinnober/msgcodec/io/ByteBuf;III)I", false);
+            mv.visitFieldInsn(PUTFIELD, genClassInternalName, predictionField, "I");
+            mv.visitInsn(RETURN);
+
+            mv.visitMaxs(6, 5);
+            mv.visitEnd();
+        }
+    }
+
+    /**
+     * Estimate the size of the size preamble of a dynamic group, based on the min and max encoded size of the group.
+     *
+     * @param schema the schema
+     * @param group the group
+     * @return the estimated size of the size preamble, 1 or more.
+     */
+    static int estimateSizeOfSize(Schema schema, GroupDef group) {
+        int minSize = 0;
+        int maxSize = 0;
+        if (group.getId() != -1) {
+            minSize = maxSize = BlinkOutput.sizeOfUnsignedVLC(group.getId());
+        }
+        long[] bounds = new long[2];
+        addGroupSizeBounds(schema, group, bounds, 0);
+        minSize = (int) Math.min(UNBOUNDED, minSize + bounds[0]);
+        maxSize = (int) Math.min(UNBOUNDED, maxSize + bounds[1]);
+
+        if (maxSize < 1<<7) {
+            return 1;
+        } else if (minSize >= 1<<7) {
+            return BlinkOutput.sizeOfUnsignedVLC(minSize);
+        } else {
+            // could be anything, guess on the common case: small groups
+            return 1;
+        }
+    }
+
+    /**
+     * Add the min and max encoded size of the fields in the specified static group.
+     *
+     * @param schema the schema
+     * @param group the group
+     * @param bounds the min and max size, to add to
+     * @param depth the nesting depth, to guard against recursive groups
+     */
+    private static void addGroupSizeBounds(Schema schema, GroupDef group, long[] bounds, int depth) {
+        if (depth > 16) {
+            bounds[1] += UNBOUNDED;
+            return;
+        }
+        if (group.getSuperGroup() != null) {
+            addGroupSizeBounds(schema, schema.getGroup(group.getSuperGroup()), bounds, depth + 1);
+        }
+        for (FieldDef field : group.getFields()) {
+            addValueSizeBounds(schema, schema.resolveToType(field.getType(), false), field.isRequired(), bounds,
+                    depth);
+        }
+    }
+
+    private static void addValueSizeBounds(Schema schema, TypeDef type, boolean required, long[] bounds,
+            int depth) {
+        bounds[0] += 1;
+        switch (type.getType()) {
+            case BOOLEAN:
+                bounds[1] += 1;
+                break;
+            case INT8:
+            case UINT8:
+                bounds[1] += 2;
+                break;
+            case INT16:
+            case UINT16:
+            case CHAR:
+                bounds[1] += 3;
+                break;
+            case INT32:
+            case UINT32:
+            case ENUM:
+                bounds[1] += 5;
+                break;
+            case INT64:
+            case UINT64:
+            case FLOAT32:
+            case FLOAT64:
+            case TIME:
+                bounds[1] += 9;
+                break;
+            case DECIMAL:
+                if (required) {
+                    bounds[0] += 1; // exponent and mantissa, null is one byte
+                }
+                bounds[1] += 11;
+                break;
+            case STRING:
+                addBinarySizeBounds(((TypeDef.StringUnicode) type).getMaxSize(), bounds);
+                break;
+            case BINARY:
+                addBinarySizeBounds(((TypeDef.Binary) type).getMaxSize(), bounds);
+                break;
+            case REFERENCE:
+                if (required) {
+                    bounds[0] -= 1; // no presence byte
+                    addGroupSizeBounds(schema, schema.resolveToGroup(type), bounds, depth + 1);
+                } else {
+                    // null is one byte, otherwise a presence byte and the group
+                    long[] groupBounds = new long[2];
+                    addGroupSizeBounds(schema, schema.resolveToGroup(type), groupBounds, depth + 1);
+                    bounds[1] += 1 + groupBounds[1];
+                }
+                break;
+            default: // BIGINT, BIGDECIMAL, SEQUENCE, DYNAMIC_REFERENCE
+                bounds[1] += UNBOUNDED;
+                break;
+        }
+    }
+
+    private static void addBinarySizeBounds(int maxSize, long[] bounds) {
+        if (maxSize < 0) {
+            bounds[1] += UNBOUNDED;
+        } else {
+            bounds[1] += BlinkOutput.sizeOfUnsignedVLC(maxSize) + maxSize;
+        }
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.io.ByteSink;
+
+/**
+ * Byte sink that only counts the number of written bytes.
+ * Used for computing the encoded size of a group, without writing it anywhere.
+ *
+ * @author agent
+ */
+final class CountingByteSink implements ByteSink {
+
+    private int count;
+
+    /**
+     * Returns the number of written bytes.
+     * @return the number of written bytes.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Reset the number of written bytes to zero.
+     */
+    void reset() {
+        count = 0;
+    }
+
+    /**
+     * Count bytes, without writing them.
+     * @param n the number of bytes to count.
+     */
+    void add(int n) {
+        count += n;
+    }
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        count += b.length;
+    }
+
+    @Override
+    public void writeIntLE(int v) {
+        count += 4;
+    }
+
+    @Override
+    public void writeLongLE(long v) {
+        count += 8;
+    }
+
+    @Override
+    public void pad(int n) {
+        count += n;
+    }
+}
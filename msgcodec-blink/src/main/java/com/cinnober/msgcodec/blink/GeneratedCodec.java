@@ -24,10 +24,19 @@
 
 package com.cinnober.msgcodec.blink;
 
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteSink;
 import com.cinnober.msgcodec.io.ByteSource;
 import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.util.Pool;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Base class for a dynamically generated codec for a specific schema.
@@ -77,6 +86,20 @@ public abstract class GeneratedCodec {
      */
     protected abstract Object readStaticGroup(int groupId, ByteSource in) throws IOException, DecodeException;
 
+    /**
+     * Read a static group into an existing group instance.
+     * Method to be generated in a sub class using <b>switch</b> based on group id.
+     *
+     * @param groupId the group id
+     * @param in where to read from, not null.
+     * @param group the group to fill, not null. Must be of the exact group type of the group id.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws DecodeException if the group could not be decoded.
+     * @throws IllegalArgumentException if the group is not of the group type of the group id.
+     */
+    protected abstract void readStaticGroupInto(int groupId, ByteSource in, Object group)
+            throws IOException, DecodeException;
+
     /**
      * Write a dynamic group to the specified output stream.
      * @param out where to write to, not null.
@@ -109,6 +132,152 @@ public abstract class GeneratedCodec {
      */
     public abstract Object readDynamicGroupNull(ByteSource in) throws IOException;
 
+    /**
+     * Returns the exact encoded size of a dynamic group, as written by {@link #writeDynamicGroup}.
+     * Nothing is written, and no temporary buffers are used.
+     *
+     * @param group the group, not null.
+     * @return the encoded size in bytes.
+     * @throws IllegalArgumentException if an illegal value is encountered, e.g. missing required field value.
+     */
+    public abstract int sizeOf(Object group) throws IllegalArgumentException;
+
+    /**
+     * Write a dynamic group to the specified buffer.
+     *
+     * @param buf where to write to, not null.
+     * @param group the group to encode, not null
+     * @throws IOException if the underlying buffer throws an exception.
+     * @throws IllegalArgumentException if the group is not correct or complete, e.g. a required field is missing.
+     */
+    protected abstract void writeDynamicGroupToBuf(ByteBuf buf, Object group)
+            throws IOException, IllegalArgumentException;
+
+    /**
+     * Returns the pool of temporary encode buffers.
+     * @return the buffer pool, not null.
+     */
+    protected abstract Pool<byte[]> bufferPool();
+
+    /**
+     * Write a batch of dynamic groups to the specified output stream.
+     *
+     * <p>If the output stream is not a {@link ByteBuf}, as many groups as possible are encoded into one
+     * temporary buffer before it is copied to the output stream.
+     *
+     * @param out where to write to, not null.
+     * @param groups the groups to encode, not null.
+     * @param off the offset of the first group in groups.
+     * @param len the number of groups to encode.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws IllegalArgumentException if a group is not correct or complete, e.g. a required field is missing.
+     */
+    public void writeDynamicGroups(ByteSink out, Object[] groups, int off, int len)
+            throws IOException, IllegalArgumentException {
+        final int end = off + len;
+        if (out instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) out;
+            for (int i = off; i < end; i++) {
+                writeDynamicGroupToBuf(buf, groups[i]);
+            }
+        } else {
+            byte[] tmpBuf = bufferPool().get();
+            try {
+                ByteArrayBuf tmpOut = new ByteArrayBuf(tmpBuf);
+                for (int i = off; i < end; i++) {
+                    int mark = tmpOut.position();
+                    try {
+                        writeDynamicGroupToBuf(tmpOut, groups[i]);
+                    } catch (IOException e) {
+                        if (mark == 0) {
+                            throw e; // the group does not fit in an empty buffer
+                        }
+                        // buffer overflow, flush the previous groups and try again
+                        tmpOut.position(mark);
+                        tmpOut.flip();
+                        tmpOut.copyTo(out);
+                        tmpOut.clear();
+                        i--;
+                    }
+                }
+                tmpOut.flip();
+                tmpOut.copyTo(out);
+            } finally {
+                bufferPool().release(tmpBuf);
+            }
+        }
+    }
+
+    /**
+     * Read a batch of dynamic groups.
+     * Reading stops when max groups have been read, or when the end of the stream is reached.
+     * @param in the stream to read from.
+     * @param consumer the consumer of the groups, not null.
+     * @param max the maximum number of groups to read.
+     * @return the number of groups read.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    public int readDynamicGroups(ByteSource in, Consumer<Object> consumer, int max) throws IOException {
+        return readDynamicGroups(in, consumer, max, false);
+    }
+
+    /**
+     * Read a batch of nullable dynamic groups.
+     * Reading stops when max groups have been read, or when the end of the stream is reached.
+     * @param in the stream to read from.
+     * @param consumer the consumer of the groups, not null.
+     * @param max the maximum number of groups to read.
+     * @return the number of groups read.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    public int readDynamicGroupsNull(ByteSource in, Consumer<Object> consumer, int max) throws IOException {
+        return readDynamicGroups(in, consumer, max, true);
+    }
+
+    private int readDynamicGroups(ByteSource in, Consumer<Object> consumer, int max, boolean nullable)
+            throws IOException {
+        final boolean isBuf = in instanceof ByteBuf;
+        final ByteBuf inbuf = isBuf ? (ByteBuf) in : new PositionByteSource(in);
+        int count = 0;
+        while (count < max) {
+            if (isBuf && !inbuf.hasRemaining()) {
+                break;
+            }
+            int start = inbuf.position();
+            Object group;
+            try {
+                group = nullable ? readDynamicGroupNull(inbuf) : readDynamicGroup(inbuf);
+            } catch (EOFException e) {
+                if (inbuf.position() == start) {
+                    break; // end of stream between groups
+                }
+                throw e;
+            }
+            consumer.accept(group);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Read a dynamic group into an existing group instance.
+     * @param in the stream to read from.
+     * @param group the group to fill, not null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws IllegalArgumentException if the group is not of the group type of the decoded group.
+     */
+    public abstract void readDynamicGroupInto(ByteSource in, Object group) throws IOException;
+
+    /**
+     * Read a nullable dynamic group into an existing group instance.
+     * @param in the stream to read from.
+     * @param group the group to fill, not null.
+     * @return true if the group was filled, or false if the decoded group is null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws IllegalArgumentException if the group is not of the group type of the decoded group.
+     */
+    public abstract boolean readDynamicGroupNullInto(ByteSource in, Object group) throws IOException;
+
     protected int getMaxBinarySize() {
         return maxBinarySize;
     }
@@ -164,6 +333,29 @@ public abstract class GeneratedCodec {
         return new IllegalArgumentException(valueName + ": Cannot map enum value to symbol " + enumValue);
     }
 
+    /**
+     * Create the group ordinals of a schema where the group type is the java class.
+     * The ordinal of a group is the index of the group in {@link Schema#getGroups()}, or -1 for classes that are not
+     * in the schema. Called by the constructor of the generated sub class.
+     *
+     * @param schema the schema, not null.
+     * @return the group ordinals by class, not null.
+     */
+    protected static ClassValue<Integer> createGroupOrdinals(Schema schema) {
+        Map<GroupDef, Integer> ordinals = new IdentityHashMap<>();
+        for (GroupDef group : schema.getGroups()) {
+            ordinals.put(group, ordinals.size());
+        }
+        return new ClassValue<Integer>() {
+            @Override
+            protected Integer computeValue(Class<?> type) {
+                GroupDef group = schema.getGroup(type);
+                Integer ordinal = group != null ? ordinals.get(group) : null;
+                return ordinal != null ? ordinal : -1;
+            }
+        };
+    }
+
     /**
      * Create an encode exception when trying to encode a group for an unknown group type.
      * This mean that the group is not present in the schema.
@@ -184,4 +376,16 @@ public abstract class GeneratedCodec {
     protected static DecodeException unknownGroupId(int groupId) {
         return new DecodeException("Unknown group id: " + groupId);
     }
+
+    /**
+     * Create an exception when trying to decode a group into a group instance of another group type.
+     *
+     * @param groupId the decoded group id.
+     * @param group the group instance to decode into, not null.
+     * @return the exception to be thrown.
+     */
+    protected static IllegalArgumentException incompatibleTargetGroup(int groupId, Object group) {
+        return new IllegalArgumentException("Cannot decode group id " + groupId + " into group of type " +
+                group.getClass().getName());
+    }
 }
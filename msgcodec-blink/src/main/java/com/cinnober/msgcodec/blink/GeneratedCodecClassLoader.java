@@ -25,13 +25,40 @@
 package com.cinnober.msgcodec.blink;
 
 import com.cinnober.msgcodec.Schema;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Generates and loads the codec classes.
+ *
+ * <p>Codec classes pre-generated by {@link BlinkCodecPregenerator} are loaded from the context class loader
+ * (or the class loader of msgcodec) when available, otherwise the codec class is generated.
+ * Classes for different schemas are generated in parallel by the calling threads, e.g. when codecs are created
+ * from a parallel stream.
+ *
+ * <p>Each generated class is defined in a class loader of its own, with this class loader as the parent.
+ * The classes are cached by the schema UID in weak maps, so a generated class can be unloaded when the schema
+ * and all codecs for it have been garbage collected. See {@link GeneratedCodecStats}.
  *
  * @author mikael.brannstrom
  */
 class GeneratedCodecClassLoader extends ClassLoader {
+    private static final Logger log = Logger.getLogger(GeneratedCodecClassLoader.class.getName());
+    static {
+        registerAsParallelCapable();
+    }
     private static final GeneratedCodecClassLoader instance = new GeneratedCodecClassLoader();
 
     public static GeneratedCodecClassLoader getInstance() {
@@ -40,45 +67,182 @@ class GeneratedCodecClassLoader extends ClassLoader {
 
     private final CompactByteCodeGenerator compactCodeGenerator;
     private final NativeByteCodeGenerator nativeCodeGenerator;
-    private final WeakHashMap<Object, Class<GeneratedCompactCodec>> codecClassesBySchemaUID = new WeakHashMap<>();
-    private final WeakHashMap<Object, Class<GeneratedNativeCodec>> nativeCodecClassesBySchemaUID = new WeakHashMap<>();
-    private int nextClassSuffix = 0;
-    
+    private final GroupDispatcherByteCodeGenerator groupDispatcherCodeGenerator;
+    private final WeakHashMap<Object, CompletableFuture<Class<GeneratedCompactCodec>>> codecClassesBySchemaUID =
+        new WeakHashMap<>();
+    private final WeakHashMap<Object, CompletableFuture<Class<GeneratedNativeCodec>>> nativeCodecClassesBySchemaUID =
+        new WeakHashMap<>();
+    private final WeakHashMap<Object, Map<Map<String, Set<String>>, CompletableFuture<Class<GeneratedCompactCodec>>>>
+        projectedCodecClassesBySchemaUID = new WeakHashMap<>();
+    private final WeakHashMap<Object, Map<Class<?>, CompletableFuture<Class<GeneratedGroupDispatcher>>>>
+        groupDispatcherClassesBySchemaUID = new WeakHashMap<>();
+    private final AtomicInteger nextClassSuffix = new AtomicInteger();
+
+    private final Set<CodecClassLoaderReference> codecClassLoaders = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<CodecClassLoader> unloadedCodecClassLoaders = new ReferenceQueue<>();
+    private final AtomicInteger generatedClassCount = new AtomicInteger();
+    private final AtomicInteger liveClassCount = new AtomicInteger();
+    private final AtomicLong liveClassBytes = new AtomicLong();
+
     private GeneratedCodecClassLoader() {
         super(GeneratedCodecClassLoader.class.getClassLoader());
         compactCodeGenerator = new CompactByteCodeGenerator();
         nativeCodeGenerator = new NativeByteCodeGenerator();
+        groupDispatcherCodeGenerator = new GroupDispatcherByteCodeGenerator();
     }
 
     public Class<GeneratedCompactCodec> getGeneratedCodecClass(Schema schema) {
-        synchronized (this) {
-            final Object uid = schema.getUID();
-            Class<GeneratedCompactCodec> codecClass = codecClassesBySchemaUID.get(uid);
-            if (codecClass == null && !codecClassesBySchemaUID.containsKey(uid)) {
-                codecClass = generateCodecClass(schema, nextClassSuffix++);
-                codecClassesBySchemaUID.put(uid, codecClass);
-            }
-            return codecClass;
+        return getOrCreateClass(codecClassesBySchemaUID, schema.getUID(), () -> {
+            Class<GeneratedCompactCodec> codecClass = loadPregeneratedClass(schema, GeneratedCompactCodec.class);
+            return codecClass != null ? codecClass :
+                    generateCodecClass(schema, nextClassSuffix.getAndIncrement());
+        });
+    }
+
+    /**
+     * Returns the codec class that only decodes the specified fields.
+     *
+     * @param schema the schema, not null.
+     * @param projection the names of the fields to be decoded, keyed by group name, not null.
+     * @return the codec class, not null.
+     */
+    public Class<GeneratedCompactCodec> getGeneratedCodecClass(Schema schema,
+            Map<String, Set<String>> projection) {
+        if (projection.isEmpty()) {
+            return getGeneratedCodecClass(schema);
         }
+        Map<Map<String, Set<String>>, CompletableFuture<Class<GeneratedCompactCodec>>> codecClasses;
+        synchronized (projectedCodecClassesBySchemaUID) {
+            codecClasses = projectedCodecClassesBySchemaUID.computeIfAbsent(schema.getUID(), k -> new HashMap<>());
+        }
+        return getOrCreateClass(codecClasses, projection,
+                () -> generateCodecClass(schema, projection, nextClassSuffix.getAndIncrement()));
     }
 
     public Class<GeneratedNativeCodec> getGeneratedNativeCodecClass(Schema schema) {
-        synchronized (this) {
-            final Object uid = schema.getUID();
-            Class<GeneratedNativeCodec> codecClass = nativeCodecClassesBySchemaUID.get(uid);
-            if (codecClass == null && !nativeCodecClassesBySchemaUID.containsKey(uid)) {
-                codecClass = generateNativeCodecClass(schema, nextClassSuffix++);
-                nativeCodecClassesBySchemaUID.put(uid, codecClass);
+        return getOrCreateClass(nativeCodecClassesBySchemaUID, schema.getUID(), () -> {
+            Class<GeneratedNativeCodec> codecClass = loadPregeneratedClass(schema, GeneratedNativeCodec.class);
+            return codecClass != null ? codecClass :
+                    generateNativeCodecClass(schema, nextClassSuffix.getAndIncrement());
+        });
+    }
+
+    /**
+     * Returns the dispatcher class that calls the methods of the specified handler class.
+     *
+     * @param schema the schema, not null.
+     * @param handlerType the handler class, not null.
+     * @return the dispatcher class, not null.
+     * @throws IllegalArgumentException if the handler class does not have a method for each group.
+     */
+    public Class<GeneratedGroupDispatcher> getGeneratedGroupDispatcherClass(Schema schema, Class<?> handlerType) {
+        Map<Class<?>, CompletableFuture<Class<GeneratedGroupDispatcher>>> dispatcherClasses;
+        synchronized (groupDispatcherClassesBySchemaUID) {
+            dispatcherClasses = groupDispatcherClassesBySchemaUID.computeIfAbsent(schema.getUID(),
+                    k -> new HashMap<>());
+        }
+        return getOrCreateClass(dispatcherClasses, handlerType,
+                () -> generateGroupDispatcherClass(schema, handlerType, nextClassSuffix.getAndIncrement()));
+    }
+
+    /**
+     * Returns the class in the map, or creates it if not present.
+     *
+     * <p>The map is only locked while looking up or adding the future of the class. The class is created without
+     * holding the lock, so that classes for different schemas can be created in parallel. Concurrent calls for
+     * the same key wait for the first one to finish. If the creation fails the key is removed from the map.
+     *
+     * @param classes the classes, which also serves as the lock, not null.
+     * @param key the key, not null.
+     * @param factory the class factory, not null.
+     * @return the class, not null.
+     */
+    private static <K, T> Class<T> getOrCreateClass(Map<K, CompletableFuture<Class<T>>> classes, K key,
+            Supplier<Class<T>> factory) {
+        CompletableFuture<Class<T>> future;
+        CompletableFuture<Class<T>> newFuture = null;
+        synchronized (classes) {
+            future = classes.get(key);
+            if (future == null) {
+                future = newFuture = new CompletableFuture<>();
+                classes.put(key, newFuture);
             }
-            return codecClass;
         }
+
+        if (newFuture != null) {
+            try {
+                newFuture.complete(factory.get());
+            } catch (RuntimeException | Error e) {
+                synchronized (classes) {
+                    classes.remove(key);
+                }
+                newFuture.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Load the pre-generated codec class for the schema.
+     *
+     * @param schema the schema, not null.
+     * @param baseClass the base class of the codec, GeneratedCompactCodec or GeneratedNativeCodec.
+     * @return the codec class, or null if not found.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Class<T> loadPregeneratedClass(Schema schema, Class<T> baseClass) {
+        String key = BlinkCodecPregenerator.getSchemaKey(schema);
+        String className = baseClass == GeneratedNativeCodec.class ?
+                BlinkCodecPregenerator.getNativeCodecClassName(key) :
+                BlinkCodecPregenerator.getCompactCodecClassName(key);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader[] classLoaders = contextClassLoader == null || contextClassLoader == getParent() ?
+                new ClassLoader[] { getParent() } : new ClassLoader[] { contextClassLoader, getParent() };
+        for (ClassLoader classLoader : classLoaders) {
+            try {
+                Class<?> codecClass = Class.forName(className, true, classLoader);
+                if (baseClass.isAssignableFrom(codecClass)) {
+                    log.log(Level.FINE, "Loaded pre-generated codec class {0} for schema UID: {1}",
+                            new Object[] { className, schema.getUID() });
+                    return (Class<T>) codecClass;
+                }
+            } catch (ClassNotFoundException e) {
+                // try next
+            } catch (LinkageError e) {
+                log.log(Level.WARNING, "Could not load pre-generated codec class " + className +
+                        ", generating a new one", e);
+                return null;
+            }
+        }
+        return null;
     }
 
     @SuppressWarnings("unchecked")
     private Class<GeneratedCompactCodec> generateCodecClass(Schema schema, int suffix) {
         String generatedClassName = compactCodeGenerator.getGeneratedClassName(suffix);
         byte[] generatedClassBytes = compactCodeGenerator.generateClass(schema, suffix);
-        Class<?> generatedClass = defineClass(generatedClassName, generatedClassBytes, 0, generatedClassBytes.length);
+        Class<?> generatedClass = defineCodecClass(generatedClassName, generatedClassBytes);
+        return (Class<GeneratedCompactCodec>) generatedClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<GeneratedCompactCodec> generateCodecClass(Schema schema, Map<String, Set<String>> projection,
+            int suffix) {
+        String generatedClassName = compactCodeGenerator.getGeneratedClassName(suffix);
+        byte[] generatedClassBytes = compactCodeGenerator.generateClass(schema, projection, suffix);
+        Class<?> generatedClass = defineCodecClass(generatedClassName, generatedClassBytes);
         return (Class<GeneratedCompactCodec>) generatedClass;
     }
 
@@ -86,8 +250,111 @@ class GeneratedCodecClassLoader extends ClassLoader {
     private Class<GeneratedNativeCodec> generateNativeCodecClass(Schema schema, int suffix) {
         String generatedClassName = nativeCodeGenerator.getGeneratedClassName(suffix);
         byte[] generatedClassBytes = nativeCodeGenerator.generateClass(schema, suffix);
-        Class<?> generatedClass = defineClass(generatedClassName, generatedClassBytes, 0, generatedClassBytes.length);
+        Class<?> generatedClass = defineCodecClass(generatedClassName, generatedClassBytes);
         return (Class<GeneratedNativeCodec>) generatedClass;
     }
-    
+    @SuppressWarnings("unchecked")
+    private Class<GeneratedGroupDispatcher> generateGroupDispatcherClass(Schema schema, Class<?> handlerType,
+            int suffix) {
+        String generatedClassName = groupDispatcherCodeGenerator.getGeneratedClassName(suffix);
+        byte[] generatedClassBytes = groupDispatcherCodeGenerator.generateClass(schema, handlerType, suffix);
+        Class<?> generatedClass = defineCodecClass(generatedClassName, generatedClassBytes);
+        return (Class<GeneratedGroupDispatcher>) generatedClass;
+    }
+
+    /**
+     * Define a generated codec class in a class loader of its own.
+     *
+     * @param name the class name, not null.
+     * @param bytes the class bytes, not null.
+     * @return the class, not null.
+     */
+    private Class<?> defineCodecClass(String name, byte[] bytes) {
+        expungeUnloadedClasses();
+        CodecClassLoader classLoader = new CodecClassLoader(this);
+        Class<?> generatedClass = classLoader.defineClass(name, bytes);
+        codecClassLoaders.add(new CodecClassLoaderReference(classLoader, bytes.length, unloadedCodecClassLoaders));
+        generatedClassCount.incrementAndGet();
+        liveClassCount.incrementAndGet();
+        liveClassBytes.addAndGet(bytes.length);
+        return generatedClass;
+    }
+
+    /**
+     * Remove stale entries from the caches, and account for the codec classes that have been unloaded.
+     */
+    private void expungeUnloadedClasses() {
+        // WeakHashMap only expunges stale entries when accessed. The values reference the classes.
+        synchronized (codecClassesBySchemaUID) {
+            codecClassesBySchemaUID.size();
+        }
+        synchronized (nativeCodecClassesBySchemaUID) {
+            nativeCodecClassesBySchemaUID.size();
+        }
+        synchronized (projectedCodecClassesBySchemaUID) {
+            projectedCodecClassesBySchemaUID.size();
+        }
+        synchronized (groupDispatcherClassesBySchemaUID) {
+            groupDispatcherClassesBySchemaUID.size();
+        }
+        CodecClassLoaderReference ref;
+        while ((ref = (CodecClassLoaderReference) unloadedCodecClassLoaders.poll()) != null) {
+            if (codecClassLoaders.remove(ref)) {
+                liveClassCount.decrementAndGet();
+                liveClassBytes.addAndGet(-ref.classSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of codec classes generated since startup.
+     * @return the number of generated classes.
+     */
+    int getGeneratedClassCount() {
+        return generatedClassCount.get();
+    }
+
+    /**
+     * Returns the number of generated codec classes that have not been unloaded (garbage collected).
+     * @return the number of live generated classes.
+     */
+    int getLiveClassCount() {
+        expungeUnloadedClasses();
+        return liveClassCount.get();
+    }
+
+    /**
+     * Returns the total size of the class files of the live generated codec classes.
+     * @return the size in bytes.
+     */
+    long getLiveClassBytes() {
+        expungeUnloadedClasses();
+        return liveClassBytes.get();
+    }
+
+    /**
+     * Class loader of a single generated codec class.
+     *
+     * <p>The class, and the class loader, can be unloaded once the codec class is no longer used,
+     * i.e. when the schema and all codecs for it have been garbage collected.
+     */
+    private static class CodecClassLoader extends ClassLoader {
+        CodecClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineClass(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static class CodecClassLoaderReference extends WeakReference<CodecClassLoader> {
+        final int classSize;
+
+        CodecClassLoaderReference(CodecClassLoader classLoader, int classSize,
+                ReferenceQueue<CodecClassLoader> queue) {
+            super(classLoader, queue);
+            this.classSize = classSize;
+        }
+    }
 }
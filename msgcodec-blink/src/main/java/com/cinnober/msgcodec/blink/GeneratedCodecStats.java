@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+
+/**
+ * Metrics on the codec classes generated by {@link BlinkCodec} and {@link NativeBlinkCodec}.
+ *
+ * <p>A codec class is generated per schema (and field projection), unless pre-generated,
+ * see {@link BlinkCodecPregenerator}. Generated classes are unloaded when the schema and all codecs
+ * for it have been garbage collected, so in a long running application that creates codecs for new schemas,
+ * the number of live classes should stay bounded.
+ *
+ * @author agent
+ */
+public final class GeneratedCodecStats {
+
+    private GeneratedCodecStats() {
+    }
+
+    /**
+     * Returns the number of codec classes generated since startup.
+     * @return the number of generated classes.
+     */
+    public static int getGeneratedClassCount() {
+        return GeneratedCodecClassLoader.getInstance().getGeneratedClassCount();
+    }
+
+    /**
+     * Returns the number of generated codec classes that have not yet been unloaded.
+     * Unloading depends on the garbage collector, so classes that are no longer used may still be counted.
+     * @return the number of live generated classes.
+     */
+    public static int getLiveClassCount() {
+        return GeneratedCodecClassLoader.getInstance().getLiveClassCount();
+    }
+
+    /**
+     * Returns the total size of the class files of the generated codec classes that have not yet been unloaded.
+     * This is an approximation of the metaspace used by the generated classes.
+     * @return the size in bytes.
+     */
+    public static long getLiveClassBytes() {
+        return GeneratedCodecClassLoader.getInstance().getLiveClassBytes();
+    }
+
+    /**
+     * Returns the metaspace used by the JVM, including all classes, not only the generated codec classes.
+     * @return the used metaspace in bytes, or -1 if not available.
+     */
+    public static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+}
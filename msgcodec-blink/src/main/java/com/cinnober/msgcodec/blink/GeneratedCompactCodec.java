@@ -27,10 +27,16 @@ package com.cinnober.msgcodec.blink;
 import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteSink;
 import com.cinnober.msgcodec.io.ByteSource;
+import com.cinnober.msgcodec.util.Pool;
 import com.cinnober.msgcodec.DecodeException;
 import com.cinnober.msgcodec.GroupDef;
 import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.InputStreamSource;
+import com.cinnober.msgcodec.io.ReallocatingArray;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Base class for a dynamically generated compact blink codec for a specific schema.
@@ -52,6 +58,23 @@ public abstract class GeneratedCompactCodec extends GeneratedCodec {
 
     /** Reference to the blink codec. */
     protected final BlinkCodec codec;
+    /** Mask of the predicted size of the size preamble, in the prediction state. */
+    private static final int PREDICTION_SIZE_MASK = 0xff;
+    /** Shift of the number of consecutive groups with a smaller size preamble, in the prediction state. */
+    private static final int PREDICTION_COUNT_SHIFT = 8;
+    /** The number of consecutive groups with a smaller size preamble before the prediction shrinks. */
+    private static final int PREDICTION_SHRINK_COUNT = 8;
+
+    /** True if the size of the size preamble of dynamic groups should be predicted. */
+    private final boolean sizePrediction;
+    /** The size of the stream buffer. */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    /** Temporary buffer for groups read from streams. Allocated on demand. */
+    private byte[] streamBuffer;
+    /** Temporary buffer for groups written to streams, which grows for large groups. Allocated on demand. */
+    private ReallocatingArray streamOutBuffer;
+    /** Counter of the group size in sizeOf. Allocated on demand. */
+    private CountingByteSink sizeCounter;
 
     /**
      * Constructor.
@@ -62,48 +85,146 @@ public abstract class GeneratedCompactCodec extends GeneratedCodec {
     public GeneratedCompactCodec(BlinkCodec codec) {
         super(codec.getMaxBinarySize());
         this.codec = codec;
+        this.sizePrediction = codec.isSizePrediction();
     }
     
+    /**
+     * Create the string cache of a field. Called by the constructor of the generated sub class.
+     *
+     * @param groupName the name of the group that declares the field, not null.
+     * @param fieldName the name of the field, not null.
+     * @return a new string cache, or null if strings of the field should not be cached.
+     */
+    protected final StringCache createStringCache(String groupName, String fieldName) {
+        return codec.createStringCache(groupName, fieldName);
+    }
+
     @Override
     public void writeDynamicGroup(ByteSink out, Object group) throws IOException, IllegalArgumentException {
         if (out instanceof ByteBuf) {
-            ByteBuf buf = (ByteBuf) out;
-            int start = buf.position();
-            buf.skip(2); // size
-            writeStaticGroupWithId(buf, group);
-            int end = buf.position();
-            int size = end - start - 2;
-            if (size < 1<<7) {
-                buf.shift(start+2, size, -1);
-                buf.position(start);
-                buf.limit(buf.capacity());
-                BlinkOutput.writeVLC7(buf, size);
-                buf.position(end-1);
-            } else if (size < 1<<14) {
-                buf.position(start);
-                BlinkOutput.writeVLC14(buf, size);
-                buf.position(end);
-            } else {
-                int sizeOfSize = BlinkOutput.sizeOfUnsignedVLC(size);
-                buf.shift(start+2, size, sizeOfSize-2);
-                buf.position(start);
-                buf.limit(buf.capacity());
-                BlinkOutput.writeVLC(buf, size, sizeOfSize);
-                buf.position(end + sizeOfSize - 2);
-            }
+            writeDynamicGroupToBuf((ByteBuf) out, group);
+        } else if (out instanceof CountingByteSink) {
+            // nested dynamic group while computing the size, no need to write it anywhere
+            CountingByteSink counter = (CountingByteSink) out;
+            int start = counter.count();
+            writeStaticGroupWithId(counter, group);
+            counter.add(BlinkOutput.sizeOfUnsignedVLC(counter.count() - start));
         } else {
-            byte[] tmpBuf = codec.bufferPool().get();
+            byte[] tmpBuf = bufferPool().get();
             try {
                 ByteArrayBuf tmpOut = new ByteArrayBuf(tmpBuf);
-                writeDynamicGroup(tmpOut, group);
+                writeDynamicGroupToBuf(tmpOut, group);
                 tmpOut.flip();
                 tmpOut.copyTo(out);
             } finally {
-                codec.bufferPool().release(tmpBuf);
+                bufferPool().release(tmpBuf);
             }
         }
     }
 
+    @Override
+    protected Pool<byte[]> bufferPool() {
+        return codec.bufferPool();
+    }
+
+    @Override
+    public int sizeOf(Object group) throws IllegalArgumentException {
+        if (sizeCounter == null) {
+            sizeCounter = new CountingByteSink();
+        }
+        CountingByteSink counter = sizeCounter;
+        counter.reset();
+        try {
+            writeStaticGroupWithId(counter, group);
+        } catch (IOException e) {
+            throw new RuntimeException("Unexpected exception", e); // CountingByteSink does not throw
+        }
+        int size = counter.count();
+        return BlinkOutput.sizeOfUnsignedVLC(size) + size;
+    }
+
+    /**
+     * Write a dynamic group to the specified buffer.
+     *
+     * <p>The generated implementation dispatches on the group type, and for each group type it reserves room
+     * for the size preamble using {@link #reserveSizePreamble}, writes the group and finally writes the
+     * size preamble using {@link #writeSizePreamble}.
+     *
+     * @param buf where to write to, not null.
+     * @param group the group to encode, not null
+     * @throws IOException if the underlying buffer throws an exception.
+     * @throws IllegalArgumentException if the group is not correct or complete, e.g. a required field is missing.
+     */
+    @Override
+    protected abstract void writeDynamicGroupToBuf(ByteBuf buf, Object group)
+            throws IOException, IllegalArgumentException;
+
+    /**
+     * Reserve room for the size preamble of a dynamic group.
+     *
+     * @param buf the buffer to write to, not null.
+     * @param prediction the prediction state for the group type, as returned by {@link #writeSizePreamble},
+     * or 0 if no group of this type has been written yet.
+     * @param estimatedSizeOfSize the size of the size preamble estimated from the schema.
+     * @return the number of reserved bytes.
+     * @throws IOException if the underlying buffer throws an exception.
+     */
+    protected final int reserveSizePreamble(ByteBuf buf, int prediction, int estimatedSizeOfSize)
+            throws IOException {
+        int reserved;
+        if (!sizePrediction) {
+            reserved = 2;
+        } else if (prediction != 0) {
+            reserved = prediction & PREDICTION_SIZE_MASK;
+        } else {
+            reserved = estimatedSizeOfSize;
+        }
+        buf.skip(reserved);
+        return reserved;
+    }
+
+    /**
+     * Write the size preamble of a dynamic group, after the group has been written.
+     * The group is shifted if the reserved number of bytes does not match the actual size of the preamble.
+     *
+     * <p>The prediction grows immediately when a larger preamble is needed, since shifting right moves
+     * the (larger) group. The prediction shrinks only after a number of consecutive smaller groups,
+     * to avoid alternating between sizes.
+     *
+     * @param buf the buffer to write to, not null.
+     * @param start the position of the size preamble
+     * @param reserved the number of bytes reserved for the size preamble
+     * @param prediction the current prediction state for the group type, or 0 if none.
+     * @return the new prediction state for the group type, not 0.
+     * @throws IOException if the underlying buffer throws an exception.
+     */
+    protected final int writeSizePreamble(ByteBuf buf, int start, int reserved, int prediction)
+            throws IOException {
+        int end = buf.position();
+        int size = end - start - reserved;
+        int sizeOfSize = BlinkOutput.sizeOfUnsignedVLC(size);
+        if (sizeOfSize != reserved) {
+            int distance = sizeOfSize - reserved;
+            if (end + distance > buf.capacity()) {
+                throw new IOException("Buffer overflow");
+            }
+            buf.shift(start + reserved, size, distance);
+            buf.limit(buf.capacity());
+        }
+        buf.position(start);
+        BlinkOutput.writeVLC(buf, size, sizeOfSize);
+        buf.position(start + sizeOfSize + size);
+
+        if (sizeOfSize >= reserved) {
+            return sizeOfSize;
+        }
+        int smallerCount = (prediction >>> PREDICTION_COUNT_SHIFT) + 1;
+        if (smallerCount >= PREDICTION_SHRINK_COUNT) {
+            return sizeOfSize;
+        }
+        return reserved | (smallerCount << PREDICTION_COUNT_SHIFT);
+    }
+
     @Override
     public void writeDynamicGroupNull(ByteSink out, Object group) throws IOException {
         if (group == null) {
@@ -116,20 +237,111 @@ public abstract class GeneratedCompactCodec extends GeneratedCodec {
     @Override
     public Object readDynamicGroup(ByteSource in) throws IOException {
         int size = BlinkInput.readUInt32(in);
-        return readDynamicGroup(size, in);
+        return readDynamicGroup(size, in, null);
     }
 
     @Override
     public Object readDynamicGroupNull(ByteSource in) throws IOException {
-        Integer sizeObj = BlinkInput.readUInt32Null(in);
-        if (sizeObj == null) {
+        int size = BlinkSkipper.readSizeNull(in); // avoid boxing
+        if (size == -1) {
+            return null;
+        }
+        return readDynamicGroup(size, in, null);
+    }
+
+    /**
+     * Read a nullable dynamic group from an input stream, without reading beyond the end of the group.
+     *
+     * <p>The group is read from the stream in bulk into the stream buffer, and then decoded from the buffer.
+     * Groups larger than the stream buffer are decoded directly from the stream.
+     *
+     * @param in the input stream to read from, not null.
+     * @return the group, or null.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    public final Object readDynamicGroupNull(InputStream in) throws IOException {
+        InputStreamSource source = new InputStreamSource(in);
+        int size = BlinkSkipper.readSizeNull(source); // avoid boxing
+        if (size == -1) {
             return null;
         }
-        int size = sizeObj.intValue();
-        return readDynamicGroup(size, in);
+        byte[] tmpBuf = streamBuffer();
+        if (size > tmpBuf.length) {
+            return readDynamicGroup(size, source, null);
+        }
+        int len = 0;
+        while (len < size) {
+            int n = in.read(tmpBuf, len, size - len);
+            if (n < 0) {
+                // truncated group, let the decoder fail at the missing field with an EOFException
+                return readDynamicGroup(size, new InputStreamSource(new ByteArrayInputStream(tmpBuf, 0, len)), null);
+            }
+            len += n;
+        }
+        ByteArrayBuf tmpIn = new ByteArrayBuf(tmpBuf);
+        tmpIn.limit(size);
+        return readDynamicGroup(size, tmpIn, null);
     }
 
-    private Object readDynamicGroup(int size, ByteSource in) throws IOException {
+    /**
+     * Write a dynamic group to an output stream.
+     *
+     * <p>The group is encoded into the stream buffer, and then written to the stream in bulk.
+     * The stream buffer grows for groups larger than {@value #STREAM_BUFFER_SIZE} bytes,
+     * and is released again after such a group has been written.
+     *
+     * @param out the output stream to write to, not null.
+     * @param group the group to encode, not null
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws IllegalArgumentException if the group is not correct or complete, e.g. a required field is missing.
+     */
+    public final void writeDynamicGroup(OutputStream out, Object group) throws IOException {
+        ReallocatingArray tmpOut = streamOutBuffer;
+        if (tmpOut == null) {
+            tmpOut = new ReallocatingArray(STREAM_BUFFER_SIZE, Integer.MAX_VALUE);
+            streamOutBuffer = tmpOut;
+        }
+        tmpOut.clear();
+        writeDynamicGroupToBuf(tmpOut, group);
+        out.write(tmpOut.getByteBuffer().array(), 0, tmpOut.position());
+        if (tmpOut.allocation() > STREAM_BUFFER_SIZE) {
+            streamOutBuffer = null;
+        }
+    }
+
+    private byte[] streamBuffer() {
+        if (streamBuffer == null) {
+            streamBuffer = new byte[STREAM_BUFFER_SIZE];
+        }
+        return streamBuffer;
+    }
+
+    @Override
+    public void readDynamicGroupInto(ByteSource in, Object group) throws IOException {
+        int size = BlinkInput.readUInt32(in);
+        readDynamicGroup(size, in, group);
+    }
+
+    @Override
+    public boolean readDynamicGroupNullInto(ByteSource in, Object group) throws IOException {
+        int size = BlinkSkipper.readSizeNull(in); // avoid boxing
+        if (size == -1) {
+            return false;
+        }
+        readDynamicGroup(size, in, group);
+        return true;
+    }
+
+    /**
+     * Read a dynamic group, after the size preamble.
+     *
+     * @param size the size of the group.
+     * @param in the stream to read from.
+     * @param into the group to fill, or null if a new group should be created.
+     * @return the group, not null.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    private Object readDynamicGroup(int size, ByteSource in, Object into) throws IOException {
         ByteBuf inbuf;
         if (in instanceof ByteBuf) {
             inbuf = (ByteBuf) in;
@@ -138,8 +350,42 @@ public abstract class GeneratedCompactCodec extends GeneratedCodec {
         }
         int expectedEndPos = inbuf.position() + size;
         int groupId = BlinkInput.readUInt32(inbuf);
+        return readDynamicGroup(groupId, expectedEndPos, inbuf, in, into);
+    }
+
+    /**
+     * Read a nullable dynamic group, and dispatch it to the handler.
+     *
+     * @param in the input stream to read from, not null.
+     * @param dispatcher the dispatcher of the handler class, not null.
+     * @param handler the handler, not null.
+     * @return true if a group was dispatched, false if the group was null.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    final boolean readDynamicGroupNull(ByteSource in, GeneratedGroupDispatcher dispatcher, Object handler)
+            throws IOException {
+        int size = BlinkSkipper.readSizeNull(in); // avoid boxing
+        if (size == -1) {
+            return false;
+        }
+        ByteBuf inbuf = in instanceof ByteBuf ? (ByteBuf) in : new PositionByteSource(in);
+        int expectedEndPos = inbuf.position() + size;
+        int groupId = BlinkInput.readUInt32(inbuf);
+        Object group = readDynamicGroup(groupId, expectedEndPos, inbuf, in, null);
+        dispatcher.dispatch(groupId, group, handler);
+        return true;
+    }
+
+    private Object readDynamicGroup(int groupId, int expectedEndPos, ByteBuf inbuf, ByteSource in, Object into)
+            throws IOException {
         try {
-            Object group = readStaticGroup(groupId, inbuf);
+            Object group;
+            if (into == null) {
+                group = readStaticGroup(groupId, inbuf);
+            } else {
+                readStaticGroupInto(groupId, inbuf, into);
+                group = into;
+            }
             
             int skip = expectedEndPos - inbuf.position();
             if (skip < 0) {
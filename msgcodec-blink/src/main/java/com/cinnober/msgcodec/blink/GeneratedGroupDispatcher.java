@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+/**
+ * Base class for a dynamically generated dispatcher, which calls the handler method of a decoded group.
+ * A GeneratedGroupDispatcher sub class represents a schema and a handler class.
+ *
+ * @see BlinkCodec#decodeAndDispatch(com.cinnober.msgcodec.io.ByteSource, Object)
+ * @author agent
+ */
+
+/* Note: This class should be package private, but cannot since the dynamically generated classes are loaded
+   from another class loader, i.e. don't share the package with this class (regardless of package name). */
+public abstract class GeneratedGroupDispatcher {
+
+    /**
+     * Call the handler method of the group.
+     * Method to be generated in a sub class using <b>switch</b> based on group id.
+     * Any exception thrown by the handler method is propagated.
+     *
+     * @param groupId the group id of the group.
+     * @param group the group to dispatch, not null.
+     * @param handler the handler, not null.
+     */
+    protected abstract void dispatch(int groupId, Object group, Object handler);
+
+    /**
+     * Create an exception when there is no handler method for the group id.
+     *
+     * @param groupId the group id.
+     * @return the exception to be thrown.
+     */
+    protected static IllegalArgumentException unhandledGroupId(int groupId) {
+        return new IllegalArgumentException("No handler method for group id: " + groupId);
+    }
+}
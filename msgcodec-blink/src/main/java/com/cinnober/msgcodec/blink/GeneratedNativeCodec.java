@@ -28,6 +28,7 @@ import com.cinnober.msgcodec.DecodeException;
 import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteSink;
 import com.cinnober.msgcodec.io.ByteSource;
+import com.cinnober.msgcodec.util.Pool;
 import com.cinnober.msgcodec.GroupDef;
 import com.cinnober.msgcodec.io.ByteArrayBuf;
 import java.io.IOException;
@@ -54,6 +55,8 @@ public abstract class GeneratedNativeCodec extends GeneratedCodec {
     protected final NativeBlinkCodec codec;
 
     protected int dataPos;
+    /** Counter of the group size in sizeOf. Allocated on demand. */
+    private CountingByteSink sizeCounter;
 
     /**
      * Constructor.
@@ -69,28 +72,64 @@ public abstract class GeneratedNativeCodec extends GeneratedCodec {
     @Override
     public void writeDynamicGroup(ByteSink out, Object group) throws IOException, IllegalArgumentException {
         if (out instanceof ByteBuf) {
-            ByteBuf buf = (ByteBuf) out;
-            int start = buf.position();
-            buf.skip(4); // size
-            writeStaticGroupWithId(buf, group);
-            int end = buf.position();
-            int size = end - start - 4;
-            buf.position(start);
-            buf.writeIntLE(size);
-            buf.position(end);
+            writeDynamicGroupToBuf((ByteBuf) out, group);
+        } else if (out instanceof CountingByteSink) {
+            // nested dynamic group while computing the size, no need to write it anywhere
+            CountingByteSink counter = (CountingByteSink) out;
+            counter.add(4); // size
+            writeStaticGroupWithId(counter, group);
         } else {
-            byte[] tmpBuf = codec.bufferPool().get();
+            byte[] tmpBuf = bufferPool().get();
             try {
                 ByteArrayBuf tmpOut = new ByteArrayBuf(tmpBuf);
-                writeDynamicGroup(tmpOut, group);
+                writeDynamicGroupToBuf(tmpOut, group);
                 tmpOut.flip();
                 tmpOut.copyTo(out);
             } finally {
-                codec.bufferPool().release(tmpBuf);
+                bufferPool().release(tmpBuf);
             }
         }
     }
 
+    @Override
+    protected Pool<byte[]> bufferPool() {
+        return codec.bufferPool();
+    }
+
+    @Override
+    public int sizeOf(Object group) throws IllegalArgumentException {
+        if (sizeCounter == null) {
+            sizeCounter = new CountingByteSink();
+        }
+        CountingByteSink counter = sizeCounter;
+        counter.reset();
+        try {
+            writeStaticGroupWithId(counter, group);
+        } catch (IOException e) {
+            throw new RuntimeException("Unexpected exception", e); // CountingByteSink does not throw
+        }
+        return 4 + counter.count(); // size + group
+    }
+
+    /**
+     * Write a dynamic group to the specified buffer.
+     *
+     * @param buf where to write to, not null.
+     * @param group the group to encode, not null
+     * @throws IOException if the underlying buffer throws an exception.
+     */
+    @Override
+    protected void writeDynamicGroupToBuf(ByteBuf buf, Object group) throws IOException, IllegalArgumentException {
+        int start = buf.position();
+        buf.skip(4); // size
+        writeStaticGroupWithId(buf, group);
+        int end = buf.position();
+        int size = end - start - 4;
+        buf.position(start);
+        buf.writeIntLE(size);
+        buf.position(end);
+    }
+
     @Override
     public void writeDynamicGroupNull(ByteSink out, Object group) throws IOException {
         if (group == null) {
@@ -104,7 +143,7 @@ public abstract class GeneratedNativeCodec extends GeneratedCodec {
     @Override
     public Object readDynamicGroup(ByteSource in) throws IOException {
         int size = NativeBlinkInput.readUInt32(in);
-        return readDynamicGroup(size, in);
+        return readDynamicGroup(size, in, null);
     }
 
     @Override
@@ -116,7 +155,32 @@ public abstract class GeneratedNativeCodec extends GeneratedCodec {
         }
     }
 
-    private Object readDynamicGroup(int size, ByteSource in) throws IOException {
+    @Override
+    public void readDynamicGroupInto(ByteSource in, Object group) throws IOException {
+        int size = NativeBlinkInput.readUInt32(in);
+        readDynamicGroup(size, in, group);
+    }
+
+    @Override
+    public boolean readDynamicGroupNullInto(ByteSource in, Object group) throws IOException {
+        if (in.read() != 0) {
+            readDynamicGroupInto(in, group);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Read a dynamic group, after the size preamble.
+     *
+     * @param size the size of the group.
+     * @param in the stream to read from.
+     * @param into the group to fill, or null if a new group should be created.
+     * @return the group, not null.
+     * @throws IOException if the underlying stream throws an exception.
+     */
+    private Object readDynamicGroup(int size, ByteSource in, Object into) throws IOException {
         ByteBuf inbuf;
         if (in instanceof ByteBuf) {
             inbuf = (ByteBuf) in;
@@ -129,7 +193,13 @@ public abstract class GeneratedNativeCodec extends GeneratedCodec {
         int groupId = (int) NativeBlinkInput.readUInt64(inbuf);
         inbuf.skip(4); // discard extension offset (not supported)
         try {
-            Object group = readStaticGroup(groupId, inbuf);
+            Object group;
+            if (into == null) {
+                group = readStaticGroup(groupId, inbuf);
+            } else {
+                readStaticGroupInto(groupId, inbuf, into);
+                group = into;
+            }
 
             int skip = expectedEndPos - inbuf.position();
             if (skip < 0) {
@@ -0,0 +1,226 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.JavaClassGroupTypeAccessor;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.util.ObjectDispatcher;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ATHROW;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.F_SAME;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.POP2;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_7;
+
+/**
+ * Generates a {@link GeneratedGroupDispatcher} for a schema and a handler class.
+ *
+ * <p>Generated layout:
+ * <pre>
+ * void dispatch(int groupId, Object group, Object handler); // switch on groupId, e.g:
+ *     case 1: ((Handler) handler).onMessageType1((MessageType1) group); return;
+ * </pre>
+ *
+ * <p>The handler method of a group is a public, non-static method with a single parameter, where the
+ * parameter type is the group class, or the closest super type of it. Super types are searched in the order of
+ * {@link ObjectDispatcher.DefaultInheritanceTraverser}. The method name must match
+ * {@link ObjectDispatcher#DEFAULT_PATTERN}, e.g. "onHello", and any return value is ignored.
+ *
+ * @author agent
+ */
+class GroupDispatcherByteCodeGenerator {
+    private static final String GENERATED_CLASS_NAME = "com.cinnober.msgcodec.blink.GeneratedBlinkGroupDispatcher";
+    private static final String BASECLASS_INAME = Type.getInternalName(GeneratedGroupDispatcher.class);
+
+    public String getGeneratedClassName(int suffix) {
+        return GENERATED_CLASS_NAME + suffix;
+    }
+
+    /**
+     * Generate the dispatcher class.
+     *
+     * @param schema the schema, bound to java classes, not null.
+     * @param handlerType the handler class, must be public, not null.
+     * @param suffix the class name suffix.
+     * @return the class bytes, not null.
+     * @throws IllegalArgumentException if the handler has no method for some group, or if the schema is not bound
+     * to java classes.
+     */
+    public byte[] generateClass(Schema schema, Class<?> handlerType, int suffix) {
+        if (!schema.isBound() || schema.getBinding().getGroupTypeAccessor() != JavaClassGroupTypeAccessor.INSTANCE) {
+            throw new IllegalArgumentException("Schema is not bound to java classes");
+        }
+        if (!Modifier.isPublic(handlerType.getModifiers())) {
+            throw new IllegalArgumentException("Handler class is not public: " + handlerType.getName());
+        }
+        Map<Integer, Method> methodsByGroupId = new TreeMap<>();
+        List<String> unhandledGroups = new ArrayList<>();
+        for (GroupDef group : schema.getGroups()) {
+            if (group.getId() == -1) {
+                continue; // cannot be decoded as a dynamic group
+            }
+            Method method = findHandlerMethod(handlerType, (Class<?>) group.getGroupType());
+            if (method != null) {
+                methodsByGroupId.put(group.getId(), method);
+            } else {
+                unhandledGroups.add(group.getName());
+            }
+        }
+        if (!unhandledGroups.isEmpty()) {
+            throw new IllegalArgumentException("No handler method in " + handlerType.getName() +
+                    " for groups: " + unhandledGroups);
+        }
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        CheckClassAdapter cv = new CheckClassAdapter(classWriter);
+        String genClassInternalName = getGeneratedClassName(suffix).replace('.', '/');
+        cv.visit(V1_7, ACC_PUBLIC + ACC_FINAL, genClassInternalName, null, BASECLASS_INAME, null);
+
+        // constructor
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, BASECLASS_INAME, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // dispatch
+        mv = cv.visitMethod(ACC_PROTECTED, "dispatch", "(ILjava/lang/Object;Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        int[] groupIds = new int[methodsByGroupId.size()];
+        Label[] labels = new Label[groupIds.length];
+        int i = 0;
+        for (int groupId : methodsByGroupId.keySet()) {
+            groupIds[i] = groupId;
+            labels[i] = new Label();
+            i++;
+        }
+        Label unhandledLabel = new Label();
+        mv.visitVarInsn(ILOAD, 1);
+        BaseByteCodeGenerator.generateSwitch(mv, unhandledLabel, groupIds, labels);
+
+        String handlerInternalName = Type.getInternalName(handlerType);
+        i = 0;
+        for (Method method : methodsByGroupId.values()) {
+            mv.visitLabel(labels[i++]);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitTypeInsn(CHECKCAST, handlerInternalName);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(method.getParameterTypes()[0]));
+            if (handlerType.isInterface()) {
+                mv.visitMethodInsn(INVOKEINTERFACE, handlerInternalName, method.getName(),
+                        Type.getMethodDescriptor(method), true);
+            } else {
+                mv.visitMethodInsn(INVOKEVIRTUAL, handlerInternalName, method.getName(),
+                        Type.getMethodDescriptor(method), false);
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == long.class || returnType == double.class) {
+                mv.visitInsn(POP2);
+            } else if (returnType != void.class) {
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(RETURN);
+        }
+
+        // default case
+        mv.visitLabel(unhandledLabel);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitMethodInsn(INVOKESTATIC, BASECLASS_INAME, "unhandledGroupId",
+                "(I)Ljava/lang/IllegalArgumentException;", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(2, 4);
+        mv.visitEnd();
+
+        cv.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Find the handler method for a group class.
+     *
+     * @param handlerType the handler class, not null.
+     * @param groupType the group class, not null.
+     * @return the method, or null if not found.
+     * @throws IllegalArgumentException if there are several methods for the same parameter type.
+     */
+    private static Method findHandlerMethod(Class<?> handlerType, Class<?> groupType) {
+        Method method = findHandlerMethodExact(handlerType, groupType);
+        if (method != null) {
+            return method;
+        }
+        for (Class<?> superType : new ObjectDispatcher.DefaultInheritanceTraverser().getSuperTypes(groupType)) {
+            method = findHandlerMethodExact(handlerType, superType);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static Method findHandlerMethodExact(Class<?> handlerType, Class<?> parameterType) {
+        Method found = null;
+        for (Method method : handlerType.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isBridge() ||
+                    method.getDeclaringClass() == Object.class ||
+                    method.getParameterCount() != 1 || method.getParameterTypes()[0] != parameterType ||
+                    !ObjectDispatcher.DEFAULT_PATTERN.matcher(method.getName()).matches()) {
+                continue;
+            }
+            if (found != null) {
+                throw new IllegalArgumentException("Ambiguous handler methods for " + parameterType.getName() +
+                        ": " + found + " and " + method);
+            }
+            found = method;
+        }
+        return found;
+    }
+}
@@ -38,6 +38,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
+import java.util.function.Consumer;
 
 /**
  * The Blink codec can serialize and deserialize Java objects according to
@@ -131,6 +132,24 @@ public class NativeBlinkCodec implements MsgCodec {
         generatedCodec.writeDynamicGroup(out, group);
     }
 
+    /**
+     * Returns the exact encoded size of the specified group, as written by {@link #encode(Object, ByteSink)}.
+     * The group is not encoded anywhere, which makes this suitable for allocating exact-fit buffers
+     * or to reject oversize groups before encoding them.
+     *
+     * @param group the group, not null.
+     * @return the encoded size in bytes.
+     * @throws IllegalArgumentException if the group is not correct or complete, e.g. a required field is missing.
+     */
+    public int sizeOf(Object group) throws IllegalArgumentException {
+        return generatedCodec.sizeOf(group);
+    }
+
+    @Override
+    public void encodeBatch(Object[] groups, int off, int len, ByteSink out) throws IOException {
+        generatedCodec.writeDynamicGroups(out, groups, off, len);
+    }
+
     @Override
     public Object decode(InputStream in) throws IOException {
         return decode(new InputStreamSource(in));
@@ -141,20 +160,60 @@ public class NativeBlinkCodec implements MsgCodec {
         try {
             return generatedCodec.readDynamicGroup(in);
         } catch(GroupDecodeException|FieldDecodeException e) {
-            Throwable t = e;
-            StringBuilder str = new StringBuilder();
-            for (;;) {
-                if (t instanceof GroupDecodeException) {
-                    str.append('(').append(((GroupDecodeException)t).getGroupName()).append(')');
-                    t = t.getCause();
-                } else if(t instanceof FieldDecodeException) {
-                    str.append('.').append(((FieldDecodeException)t).getFieldName());
-                    t = t.getCause();
-                } else if(t instanceof ObjectInstantiationException) {
-                    throw new DecodeException("Could not create group "+str.toString(), t);
-                } else {
-                    throw new DecodeException("Could not decode field "+str.toString(), t);
-                }
+            throw decodeException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The end of input is also detected for other byte sources, when the end of stream is reached
+     * between two groups.
+     */
+    @Override
+    public int decodeBatch(ByteSource in, Consumer<Object> consumer, int max) throws IOException {
+        try {
+            return generatedCodec.readDynamicGroups(in, consumer, max);
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
+    }
+
+    /**
+     * Decode a group from the specified input stream into an existing group instance.
+     * No new group instance is created, and any existing static groups of the target group
+     * are reused (filled in) when possible. This allows group instances to be recycled.
+     *
+     * @param in the input stream to read from, not null.
+     * @param group the group instance to decode into, not null.
+     * The group must be of the exact same group type as the decoded group.
+     * @return the group instance, not null.
+     * @throws IOException if the underlying stream throws an exception.
+     * @throws DecodeException if the group could not be decoded, or if the group is of another group type.
+     */
+    public Object decodeInto(ByteSource in, Object group) throws IOException {
+        try {
+            generatedCodec.readDynamicGroupInto(in, group);
+            return group;
+        } catch(GroupDecodeException|FieldDecodeException e) {
+            throw decodeException(e);
+        }
+    }
+
+    private static DecodeException decodeException(Exception e) {
+        Throwable t = e;
+        StringBuilder str = new StringBuilder();
+        for (;;) {
+            if (t instanceof GroupDecodeException) {
+                str.append('(').append(((GroupDecodeException)t).getGroupName()).append(')');
+                t = t.getCause();
+            } else if(t instanceof FieldDecodeException) {
+                str.append('.').append(((FieldDecodeException)t).getFieldName());
+                t = t.getCause();
+            } else if(t instanceof ObjectInstantiationException) {
+                return new DecodeException("Could not create group "+str.toString(), t);
+            } else {
+                return new DecodeException("Could not decode field "+str.toString(), t);
             }
         }
     }
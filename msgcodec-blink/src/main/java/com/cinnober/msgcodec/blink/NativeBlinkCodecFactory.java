@@ -27,7 +27,7 @@ package com.cinnober.msgcodec.blink;
 import com.cinnober.msgcodec.MsgCodecInstantiationException;
 import com.cinnober.msgcodec.Schema;
 import com.cinnober.msgcodec.MsgCodecFactory;
-import com.cinnober.msgcodec.util.ConcurrentBufferPool;
+import com.cinnober.msgcodec.util.LockFreeBufferPool;
 import com.cinnober.msgcodec.util.Pool;
 import java.util.Objects;
 
@@ -53,7 +53,7 @@ public class NativeBlinkCodecFactory implements MsgCodecFactory {
             throw new IllegalArgumentException("Schema must be bound");
         }
         this.schema = schema;
-        this.bufferPool = new ConcurrentBufferPool(1_048_576, 10);
+        this.bufferPool = new LockFreeBufferPool(1_048_576, 10, 0); // at most 10 buffers per size, no thread cache
     }
 
     /**
@@ -27,7 +27,6 @@ import com.cinnober.msgcodec.io.ByteSink;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.nio.charset.Charset;
 
 /**
  * Methods for writing primitive Native Blink data types.
@@ -41,8 +40,6 @@ import java.nio.charset.Charset;
  */
 public class NativeBlinkOutput {
 
-    private static final Charset UTF8 = Charset.forName("UTF-8");
-
     private NativeBlinkOutput() {
     }
 
@@ -365,34 +362,18 @@ public class NativeBlinkOutput {
      * @throws NullPointerException if value is null
      */
     public static void writeInlineStringUTF8(ByteSink out, String value, int maxLength) throws IOException {
-        int len = value.length();
-        if (len < maxLength) {
-            boolean ascii = true;
-            for (int i=0; i<len; i++) {
-                if (value.charAt(i) >= 0x80) {
-                    ascii = false;
-                    break;
-                }
-            }
-            if (ascii) {
-                out.write(len);
-                for (int i=0; i<len; i++) {
-                    out.write(value.charAt(i));
-                }
-                out.pad(maxLength-len);
-            } else {
-                byte[] bytes = value.getBytes(UTF8);
-                len = bytes.length;
-                if (len > maxLength) {
-                    throw new IllegalArgumentException("String too long. More than " + maxLength + "  bytes");
-                }
-                out.write(len);
-                out.write(bytes);
-                out.pad(maxLength-len);
-            }
-        } else {
+        // the UTF-8 size is never less than the number of chars
+        if (value.length() > maxLength) {
             throw new IllegalArgumentException("String too long. More than " + maxLength + "  bytes");
         }
+        int asciiLength = BlinkOutput.asciiLength(value);
+        int size = BlinkOutput.sizeOfUTF8(value, asciiLength);
+        if (size > maxLength) {
+            throw new IllegalArgumentException("String too long. More than " + maxLength + "  bytes");
+        }
+        out.write(size);
+        BlinkOutput.writeUTF8(out, value, asciiLength);
+        out.pad(maxLength-size);
     }
     
     /**
@@ -410,7 +391,7 @@ public class NativeBlinkOutput {
             out.pad(1+maxLength);
         } else {
             out.write(1);
-            writeInlineStringUTF8Null(out, value, maxLength);
+            writeInlineStringUTF8(out, value, maxLength);
         }
     }
 
@@ -423,26 +404,9 @@ public class NativeBlinkOutput {
      * @throws NullPointerException if value is null
      */
     public static void writeDataStringUTF8(ByteSink out, String value) throws IOException {
-        int len = value.length();
-        if (len < 128) {
-            boolean ascii = true;
-            for (int i=0; i<len; i++) {
-                if (value.charAt(i) >= 0x80) {
-                    ascii = false;
-                    break;
-                }
-            }
-            if (ascii) {
-                out.writeIntLE(len);
-                for (int i=0; i<len; i++) {
-                    out.write(value.charAt(i));
-                }
-                return;
-            }
-        }
-        byte[] bytes = value.getBytes(UTF8);
-        out.writeIntLE(bytes.length);
-        out.write(bytes);
+        int asciiLength = BlinkOutput.asciiLength(value);
+        out.writeIntLE(BlinkOutput.sizeOfUTF8(value, asciiLength));
+        BlinkOutput.writeUTF8(out, value, asciiLength);
     }
     
     /**
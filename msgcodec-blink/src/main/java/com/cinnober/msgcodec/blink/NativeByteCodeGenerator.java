@@ -285,4 +285,24 @@ class NativeByteCodeGenerator extends BaseByteCodeGenerator {
 
         throw new UnsupportedOperationException("Not implemented yet"); // TODO: add support for data area
     }
+
+    @Override
+    protected void generateDecodeSequenceValue(
+            Class<?> javaClass, LocalVariable nextVar, boolean required, MethodVisitor mv,
+            Class<?> componentJavaClass, int byteSourceVar, TypeDef type, Schema schema,
+            String genClassInternalName, String fieldIdentifier, String debugValueLabel, boolean javaClassCodec,
+            int reuseVar)
+            throws IllegalArgumentException {
+
+        throw new UnsupportedOperationException("Not implemented yet"); // TODO: add support for data area
+    }
+
+    /**
+     * Field projection is not supported by the native codec.
+     */
+    @Override
+    protected void generateSkipValue(MethodVisitor mv, int byteSourceVar, LocalVariable nextVar,
+            boolean required, TypeDef type, Schema schema, String genClassInternalName) {
+        throw new UnsupportedOperationException("Not implemented yet");
+    }
 }
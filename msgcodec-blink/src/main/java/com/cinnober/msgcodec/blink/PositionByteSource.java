@@ -94,6 +94,16 @@ class PositionByteSource implements ByteBuf {
         throw new UnsupportedOperationException("Not supported.");
     }
 
+    /**
+     * Returns 0, since the number of remaining bytes in the source is unknown.
+     * This keeps the word-at-a-time paths in BlinkInput from reading ahead.
+     * @return 0
+     */
+    @Override
+    public int remaining() {
+        return 0;
+    }
+
     @Override
     public int limit() {
         throw new UnsupportedOperationException("Not supported.");
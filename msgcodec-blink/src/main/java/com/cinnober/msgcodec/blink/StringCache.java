@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.io.ByteSource;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of decoded strings, which allows repeated string values to be decoded without
+ * creating any new string instances.
+ *
+ * <p>The encoded bytes of the string are hashed and matched against the bytes of previously decoded strings.
+ * On a hit the previously decoded string instance is returned, otherwise the string is decoded and
+ * replaces any cached string with the same hash slot. Strings larger than {@link #MAX_CACHED_SIZE} bytes
+ * are never cached.
+ *
+ * <p>The cache is not thread safe. Each codec instance has its own caches.
+ *
+ * @author agent
+ * @see BlinkCodecFactory#setStringCache(String, String, int)
+ */
+public final class StringCache {
+    /** The maximum size in bytes of cached strings. */
+    public static final int MAX_CACHED_SIZE = 64;
+    /** The maximum number of cached strings of a cache. */
+    public static final int MAX_SIZE = 1 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+    private final byte[] scratch = new byte[MAX_CACHED_SIZE];
+
+    /**
+     * Create a new string cache.
+     *
+     * @param size the maximum number of cached strings, rounded up to the nearest power of two.
+     * At least 1 and at most {@link #MAX_SIZE}.
+     */
+    public StringCache(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_SIZE + ": " + size);
+        }
+        int capacity = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        keys = new byte[capacity][];
+        values = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the maximum number of cached strings.
+     * @return the capacity of the cache.
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Read a string of the specified size, returning a cached instance if the same bytes have been read before.
+     *
+     * @param in the input stream to read from, not null.
+     * @param size the size of the string in bytes.
+     * @return the string, not null.
+     * @throws IOException if the input stream throws an exception.
+     */
+    public String readStringUtf8(ByteSource in, int size) throws IOException {
+        if (size > MAX_CACHED_SIZE) {
+            return in.readStringUtf8(size);
+        }
+        byte[] bytes = scratch;
+        in.read(bytes, 0, size);
+        int hash = size;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & mask;
+
+        byte[] key = keys[index];
+        if (key != null && equals(key, bytes, size)) {
+            return values[index];
+        }
+        String value = new String(bytes, 0, size, UTF8);
+        keys[index] = Arrays.copyOf(bytes, size);
+        values[index] = value;
+        return value;
+    }
+
+    private static boolean equals(byte[] key, byte[] bytes, int size) {
+        if (key.length != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (key[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -34,30 +34,55 @@ import com.cinnober.msgcodec.GroupDef;
 import com.cinnober.msgcodec.MsgCodec;
 import com.cinnober.msgcodec.MsgObject;
 import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.TypeDef;
 import com.cinnober.msgcodec.SchemaBuilder;
 import com.cinnober.msgcodec.SymbolMapping;
 import com.cinnober.msgcodec.anot.Dynamic;
 import com.cinnober.msgcodec.anot.Id;
 import com.cinnober.msgcodec.anot.Required;
+import com.cinnober.msgcodec.anot.Sequence;
 import com.cinnober.msgcodec.anot.Time;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
 import com.cinnober.msgcodec.io.ByteArrays;
 import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteBufferBuf;
 import com.cinnober.msgcodec.io.ByteBuffers;
+import com.cinnober.msgcodec.io.InputStreamSource;
+import com.cinnober.msgcodec.io.OutputStreamSink;
 import com.cinnober.msgcodec.messages.MetaProtocol;
+import com.cinnober.msgcodec.util.ConcurrentBufferPool;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * @author mikael.brannstrom
@@ -104,6 +129,38 @@ public class BlinkCodecTest {
         assertEquals("Hello greeting", "Hello World", msg.get("greeting"));
     }
 
+    @Test
+    public void testStreamLargeGroup() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        MsgCodec codec = new BlinkCodecFactory(schema).createCodec();
+        String greeting = new String(new char[20000]).replace('\0', 'x');
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        codec.encode(new Hello(greeting), bout); // larger than the stream buffer
+        codec.encode(new Hello("small"), bout);
+        ByteArrayInputStream in = new ByteArrayInputStream(bout.toByteArray());
+        assertEquals(greeting, ((Hello) codec.decode(in)).getGreeting());
+        assertEquals("small", ((Hello) codec.decode(in)).getGreeting());
+    }
+
+    @Test
+    public void testFailStreamTruncatedGroup() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        MsgCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        codec.encode(new Hello("Hello World"), bout);
+        byte[] data = bout.toByteArray();
+        try {
+            codec.decode(new ByteArrayInputStream(data, 0, data.length - 3));
+            fail("Expected DecodeException");
+        } catch (DecodeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertTrue(cause instanceof EOFException);
+        }
+    }
+
     @Test
     public void testBrokenHelloEncode() throws Exception {
         Schema schema = new SchemaBuilder().build(Hello.class);
@@ -447,6 +504,603 @@ public class BlinkCodecTest {
         assertNull(entity.optionalIntMessage);
     }
 
+    @Test
+    public void testDecodeInto() throws IOException {
+        Schema schema = new SchemaBuilder().build(ReuseMsg.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+
+        ReuseMsg msg = new ReuseMsg();
+        msg.inner = new IntMsg(1);
+        msg.inners = new IntMsg[] { new IntMsg(2), new IntMsg(3) };
+        msg.values = new int[] { 4, 5 };
+        msg.list = new ArrayList<>();
+        msg.list.add(6);
+        codec.encode(msg, buf);
+        buf.flip();
+
+        ReuseMsg target = new ReuseMsg();
+        IntMsg inner = new IntMsg();
+        IntMsg[] inners = new IntMsg[] { new IntMsg(), new IntMsg() };
+        int[] values = new int[2];
+        List<Integer> list = new ArrayList<>();
+        list.add(0);
+        target.inner = inner;
+        target.inners = inners;
+        target.values = values;
+        target.list = list;
+
+        assertSame(target, codec.decodeInto(buf, target));
+        assertEquals(msg, target);
+        assertSame(inner, target.inner);
+        assertSame(inners, target.inners);
+        assertSame(inners[1], target.inners[1]);
+        assertSame(values, target.values);
+        assertSame(list, target.list);
+
+        // decode again, into the same object
+        buf.position(0);
+        codec.decodeInto(buf, target);
+        assertEquals(msg, target);
+        assertSame(inner, target.inner);
+    }
+
+    @Test
+    public void testDecodeIntoNotReused() throws IOException {
+        Schema schema = new SchemaBuilder().build(ReuseMsg.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+
+        ReuseMsg msg = new ReuseMsg();
+        msg.inner = new IntMsg(1);
+        msg.values = new int[] { 4, 5 };
+        codec.encode(msg, buf);
+        buf.flip();
+
+        ReuseMsg target = new ReuseMsg();
+        int[] values = new int[3]; // wrong length
+        target.values = values;
+        target.inners = new IntMsg[1];
+
+        codec.decodeInto(buf, target);
+        assertEquals(msg, target);
+        assertNotSame(values, target.values);
+        assertNull(target.inners);
+    }
+
+    @Test
+    public void testDecodeIntoGroup() throws IOException {
+        Schema schema = Group.bind(new SchemaBuilder().build(Hello.class));
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+        Group hello = new Group(schema, "Hello");
+        hello.set("greeting", "Hello World");
+        codec.encode(hello, buf);
+        buf.flip();
+
+        Group target = new Group(schema, "Hello");
+        assertSame(target, codec.decodeInto(buf, target));
+        assertEquals("Hello World", target.get("greeting"));
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testFailDecodeIntoOtherGroup() throws IOException {
+        Schema schema = new SchemaBuilder().build(ReuseMsg.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+        codec.encode(new IntMsg(1), buf);
+        buf.flip();
+        codec.decodeInto(buf, new ReuseMsg());
+    }
+
+    @Test
+    public void testBatchBuf() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+
+        Object[] groups = new Object[] { new IntMsg(0), new IntMsg(1), new IntMsg(2), new IntMsg(3) };
+        codec.encodeBatch(groups, 1, 3, buf);
+        buf.flip();
+
+        List<Object> decoded = new ArrayList<>();
+        assertEquals(2, codec.decodeBatch(buf, decoded::add, 2));
+        assertEquals(1, codec.decodeBatch(buf, decoded::add, 10));
+        assertEquals(0, codec.decodeBatch(buf, decoded::add, 10));
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(groups[i + 1], decoded.get(i));
+        }
+    }
+
+    @Test
+    public void testBatchStream() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMsg.class);
+        // small buffers, to make sure the encoder has to flush several times
+        BlinkCodec codec = new BlinkCodecFactory(schema).setBufferPool(new ConcurrentBufferPool(16, 1)).createCodec();
+
+        Object[] groups = new Object[20];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new IntMsg(i * 1000);
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        codec.encodeBatch(groups, 0, groups.length, new OutputStreamSink(bout));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (Object group : groups) {
+            codec.encode(group, expected);
+        }
+        assertArrayEquals(expected.toByteArray(), bout.toByteArray());
+
+        List<Object> decoded = new ArrayList<>();
+        InputStreamSource in = new InputStreamSource(new ByteArrayInputStream(bout.toByteArray()));
+        assertEquals(groups.length, codec.decodeBatch(in, decoded::add, 100));
+        assertArrayEquals(groups, decoded.toArray());
+    }
+
+    @Test
+    public void testSizePrediction() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        BlinkCodec refCodec = new BlinkCodecFactory(schema).setSizePrediction(false).createCodec();
+
+        // mix groups with size preambles of different sizes, to make the predictions both hit and miss
+        Object[] groups = new Object[] {
+            new Hello("small"), new Hello("small"),
+            new Hello(createString(1000)), new Hello(createString(1000)),
+            new Hello(createString(20000)), new Hello("small"),
+            new IntMsg(1), new Hello(createString(100)), new Hello(createString(126)), new IntMsg(2),
+        };
+        for (Object group : groups) {
+            ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(30000));
+            ByteBuf refBuf = new ByteBufferBuf(ByteBuffer.allocate(30000));
+            codec.encode(group, buf);
+            refCodec.encode(group, refBuf);
+            assertEquals(refBuf.position(), buf.position());
+            buf.flip();
+            refBuf.flip();
+            assertEquals(refBuf.getByteBuffer(), buf.getByteBuffer());
+            assertEquals(group, codec.decode(buf));
+        }
+    }
+
+    @Test
+    public void testEstimateSizeOfSizeOptionalFields() {
+        // decimals are at least two bytes each if present, but only one byte if null
+        List<FieldDef> innerFields = new ArrayList<>();
+        List<FieldDef> decimalFields = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            innerFields.add(new FieldDef("f" + i, -1, true, TypeDef.DECIMAL, null, null));
+            decimalFields.add(new FieldDef("f" + i, -1, false, TypeDef.DECIMAL, null, null));
+        }
+        GroupDef inner = new GroupDef("Inner", -1, null, innerFields, null, null);
+        GroupDef decimals = new GroupDef("Decimals", 1, null, decimalFields, null, null);
+        GroupDef outer = new GroupDef("Outer", 2, null,
+                Arrays.asList(new FieldDef("inner", -1, false, new TypeDef.Reference("Inner"), null, null)),
+                null, null);
+        Schema schema = new Schema(Arrays.asList(inner, decimals, outer), null);
+
+        assertEquals(2, CompactByteCodeGenerator.estimateSizeOfSize(schema, inner));
+        assertEquals(1, CompactByteCodeGenerator.estimateSizeOfSize(schema, decimals));
+        assertEquals(1, CompactByteCodeGenerator.estimateSizeOfSize(schema, outer));
+    }
+
+    @Test
+    public void testSizeOf() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class, Bar.class, DateMsg.class,
+                DynamicMsgs.class, IntMsg.class, ReuseMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+
+        Bar bar = new Bar(3);
+        bar.setData(1000);
+        bar.setFoo(new Foo(4));
+        ReuseMsg reuseMsg = new ReuseMsg();
+        reuseMsg.inner = new IntMsg(1);
+        reuseMsg.inners = new IntMsg[] { new IntMsg(2), new IntMsg(-300000) };
+        reuseMsg.values = new int[] { 4, 5 };
+        reuseMsg.list = new ArrayList<>();
+        reuseMsg.list.add(6);
+        DateMsg dateMsg = new DateMsg();
+        dateMsg.seconds1970 = new Date(1_000_000_000_000L);
+
+        Object[] groups = new Object[] {
+            new Hello("hello"), new Hello("h\u00e4ll\u00e5 \u4e16\u754c"), new Hello(createString(20000)),
+            bar, dateMsg, reuseMsg, new ReuseMsg(),
+            new DynamicMsgs(new IntMsg(1), null, new IntMsg(Integer.MAX_VALUE)),
+        };
+        for (Object group : groups) {
+            int size = codec.sizeOf(group);
+            ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(size)); // exact fit
+            codec.encode(group, buf);
+            assertEquals(size, buf.position());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailSizeOfMissingRequired() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        codec.sizeOf(new Hello());
+    }
+
+    @Test
+    public void testFieldProjection() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class, Bar.class, DateMsg.class,
+                IntMsg.class, ReuseMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        BlinkCodec projectedCodec = new BlinkCodecFactory(schema)
+                .setFieldProjection("Foo", "id")
+                .setFieldProjection("ReuseMsg", "values")
+                .setFieldProjection("DateMsg", "seconds1970")
+                .setFieldProjection("Hello")
+                .createCodec();
+
+        Bar bar = new Bar(3);
+        bar.setData(1000);
+        bar.setFoo(new Foo(4));
+        ReuseMsg reuseMsg = new ReuseMsg();
+        reuseMsg.inner = new IntMsg(1);
+        reuseMsg.inners = new IntMsg[] { new IntMsg(2), new IntMsg(-300000) };
+        reuseMsg.values = new int[] { 4, 5 };
+        reuseMsg.list = new ArrayList<>();
+        reuseMsg.list.add(6);
+        DateMsg dateMsg = new DateMsg();
+        dateMsg.days1970 = new Date(0);
+        dateMsg.seconds1970 = new Date(1_000_000_000_000L);
+
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocate(1000));
+        codec.encode(new Hello("hello"), buf);
+        codec.encode(bar, buf);
+        codec.encode(reuseMsg, buf);
+        codec.encode(dateMsg, buf);
+        codec.encode(new IntMsg(7), buf);
+        buf.flip();
+
+        assertEquals(new Hello(), projectedCodec.decode(buf));
+        Bar bar2 = (Bar) projectedCodec.decode(buf);
+        assertEquals(3, bar2.getId());
+        assertEquals(1000, bar2.getData());
+        assertNull(bar2.getFoo());
+        ReuseMsg reuseMsg2 = (ReuseMsg) projectedCodec.decode(buf);
+        assertArrayEquals(reuseMsg.values, reuseMsg2.values);
+        assertNull(reuseMsg2.inner);
+        assertNull(reuseMsg2.inners);
+        assertNull(reuseMsg2.list);
+        DateMsg dateMsg2 = (DateMsg) projectedCodec.decode(buf);
+        assertEquals(dateMsg.seconds1970, dateMsg2.seconds1970);
+        assertNull(dateMsg2.days1970);
+        assertEquals(7, ((IntMsg) projectedCodec.decode(buf)).value);
+        assertEquals(0, buf.remaining());
+
+        // decode into keeps skipped fields
+        buf.position(0);
+        projectedCodec.decode(buf);
+        projectedCodec.decode(buf);
+        ReuseMsg target = new ReuseMsg();
+        IntMsg inner = new IntMsg(8);
+        target.inner = inner;
+        projectedCodec.decodeInto(buf, target);
+        assertSame(inner, target.inner);
+        assertArrayEquals(reuseMsg.values, target.values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailFieldProjectionNoSuchField() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        new BlinkCodecFactory(schema).setFieldProjection("Hello", "nonExisting");
+    }
+
+    @Test
+    public void testStringCache() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        BlinkCodec cachingCodec = new BlinkCodecFactory(schema).setStringCache("Hello", "greeting", 16).createCodec();
+
+        String longGreeting = createString(StringCache.MAX_CACHED_SIZE + 1);
+        ByteBuf buf = new ByteArrayBuf(1000);
+        for (String greeting : new String[] { "hello", "world", "hello", longGreeting, longGreeting, "world" }) {
+            codec.encode(new Hello(greeting), buf);
+        }
+
+        buf.flip();
+        Hello[] cached = new Hello[6];
+        for (int i = 0; i < cached.length; i++) {
+            cached[i] = (Hello) cachingCodec.decode(buf);
+        }
+        assertEquals("hello", cached[0].getGreeting());
+        assertSame(cached[0].getGreeting(), cached[2].getGreeting());
+        assertSame(cached[1].getGreeting(), cached[5].getGreeting());
+        assertEquals(longGreeting, cached[3].getGreeting());
+        assertNotSame(cached[3].getGreeting(), cached[4].getGreeting());
+
+        buf.position(0);
+        Hello hello1 = (Hello) codec.decode(buf);
+        codec.decode(buf);
+        Hello hello2 = (Hello) codec.decode(buf);
+        assertEquals(hello1.getGreeting(), hello2.getGreeting());
+        assertNotSame(hello1.getGreeting(), hello2.getGreeting());
+    }
+
+    @Test
+    public void testPregeneratedCodecClasses() throws Exception {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class);
+        Schema nativeSchema = new SchemaBuilder().build(NativeBlinkCodecTest.IntMessage.class);
+        String key = BlinkCodecPregenerator.getSchemaKey(schema);
+        assertEquals(key, BlinkCodecPregenerator.getSchemaKey(new SchemaBuilder().build(Hello.class, Foo.class)));
+        assertNotEquals(key, BlinkCodecPregenerator.getSchemaKey(new SchemaBuilder().build(Hello.class)));
+
+        File jarFile = File.createTempFile("codecs", ".jar");
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            try (OutputStream out = new FileOutputStream(jarFile)) {
+                BlinkCodecPregenerator.writeJar(out, schema, nativeSchema);
+            }
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[] { jarFile.toURI().toURL() },
+                    getClass().getClassLoader())) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+
+                BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+                assertEquals(BlinkCodecPregenerator.getCompactCodecClassName(key),
+                        GeneratedCodecClassLoader.getInstance().getGeneratedCodecClass(schema).getName());
+                ByteBuf buf = new ByteArrayBuf(100);
+                codec.encode(new Hello("Hello World"), buf);
+                buf.flip();
+                assertEquals(new Hello("Hello World"), codec.decode(buf));
+
+                NativeBlinkCodec nativeCodec = new NativeBlinkCodecFactory(nativeSchema).createCodec();
+                assertEquals(
+                        BlinkCodecPregenerator.getNativeCodecClassName(
+                                BlinkCodecPregenerator.getSchemaKey(nativeSchema)),
+                        GeneratedCodecClassLoader.getInstance().getGeneratedNativeCodecClass(nativeSchema).getName());
+                NativeBlinkCodecTest.IntMessage msg = new NativeBlinkCodecTest.IntMessage(1, 2, 3, 4);
+                buf.clear();
+                nativeCodec.encode(msg, buf);
+                buf.flip();
+                assertEquals(msg, nativeCodec.decode(buf));
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+            jarFile.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentCodecClassGeneration() throws Exception {
+        List<Schema> schemas = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            schemas.add(new SchemaBuilder().build(Hello.class, Foo.class, Bar.class));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Class<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Schema schema = schemas.get(i % schemas.size());
+                futures.add(executor.submit(
+                        () -> GeneratedCodecClassLoader.getInstance().getGeneratedCodecClass(schema)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Class<?> codecClass = futures.get(i).get();
+                assertSame(futures.get(i % schemas.size()).get(), codecClass);
+                if (i >= schemas.size()) {
+                    continue;
+                }
+                for (int j = 0; j < i; j++) {
+                    assertNotSame(futures.get(j).get(), codecClass);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Depends on the garbage collector, which may ignore System.gc(). Only run with -Ptest.gc.
+     */
+    @Test
+    public void testGeneratedCodecClassUnloading() throws Exception {
+        assumeTrue("Depends on the garbage collector", Boolean.getBoolean("msgcodec.test.gc"));
+        int generatedClassCount = GeneratedCodecStats.getGeneratedClassCount();
+        WeakReference<Class<?>> codecClassRef = createCodecAndGetClass();
+        assertEquals(generatedClassCount + 1, GeneratedCodecStats.getGeneratedClassCount());
+        assertTrue(GeneratedCodecStats.getLiveClassCount() > 0);
+        assertTrue(GeneratedCodecStats.getLiveClassBytes() > 0);
+
+        for (int i = 0; i < 100 && codecClassRef.get() != null; i++) {
+            System.gc();
+            GeneratedCodecStats.getLiveClassCount(); // expunges the caches
+            Thread.sleep(10);
+        }
+        assertNull("Generated codec class not unloaded", codecClassRef.get());
+    }
+
+    private WeakReference<Class<?>> createCodecAndGetClass() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        return new WeakReference<>(GeneratedCodecClassLoader.getInstance().getGeneratedCodecClass(schema));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailEncodeUnknownGroupType() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        codec.encode(new Bar(1), new ByteArrayBuf(100));
+    }
+
+    @Test
+    public void testDecodeAndDispatch() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class, Bar.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        codec.encode(new Foo(2), buf);
+        codec.encode(new Bar(3), buf);
+        buf.write(0xc0); // null
+        buf.flip();
+
+        GroupHandler handler = new GroupHandler();
+        assertTrue(codec.decodeAndDispatch(buf, handler));
+        assertTrue(codec.decodeAndDispatch(buf, handler));
+        assertTrue(codec.decodeAndDispatch(buf, handler));
+        assertFalse(codec.decodeAndDispatch(buf, handler));
+        assertEquals(Arrays.asList("onHello:Hello World", "onFoo:2", "onFoo:3"), handler.calls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailDecodeAndDispatchNoHandlerMethod() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        buf.flip();
+        codec.decodeAndDispatch(buf, new GroupHandler());
+    }
+
+    public static class GroupHandler {
+        final List<String> calls = new ArrayList<>();
+
+        public void onHello(Hello hello) {
+            calls.add("onHello:" + hello.getGreeting());
+        }
+        public String onFoo(Foo foo) {
+            calls.add("onFoo:" + foo.getId());
+            return "ignored";
+        }
+        public void otherMethod(String notAGroup) {
+        }
+        public void setOwner(Object owner) { // not a catch-all handler method
+        }
+        @Override
+        public boolean equals(Object obj) { // not a catch-all handler method
+            return super.equals(obj);
+        }
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+    }
+
+    @Test
+    public void testDecodeAndDispatchCatchAll() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, IntMsg.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        codec.encode(new IntMsg(1), buf);
+        buf.flip();
+
+        CatchAllGroupHandler handler = new CatchAllGroupHandler();
+        assertTrue(codec.decodeAndDispatch(buf, handler));
+        assertTrue(codec.decodeAndDispatch(buf, handler));
+        assertEquals(Arrays.asList("onHello:Hello World", "onAny:IntMsg"), handler.calls);
+    }
+
+    public static class CatchAllGroupHandler extends GroupHandler {
+        public void onAny(Object group) {
+            calls.add("onAny:" + group.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    public void testDecodeAndDispatchInterface() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        codec.encode(new Foo(2), buf);
+        buf.flip();
+
+        List<String> calls = new ArrayList<>();
+        GreetingHandler handler = new GreetingHandler() { // anonymous, i.e. not public
+            @Override
+            public void onHello(Hello hello) {
+                calls.add("onHello:" + hello.getGreeting());
+            }
+            @Override
+            public void onFoo(Foo foo) {
+                calls.add("onFoo:" + foo.getId());
+            }
+        };
+        assertTrue(codec.decodeAndDispatch(buf, GreetingHandler.class, handler));
+        assertTrue(codec.decodeAndDispatch(buf, GreetingHandler.class, handler));
+        assertEquals(Arrays.asList("onHello:Hello World", "onFoo:2"), calls);
+    }
+
+    @Test
+    public void testDecodeAndDispatchLambda() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ByteBuf buf = new ByteArrayBuf(100);
+        codec.encode(new Hello("Hello World"), buf);
+        buf.flip();
+
+        List<String> calls = new ArrayList<>();
+        assertTrue(codec.decodeAndDispatch(buf, HelloHandler.class, hello -> calls.add(hello.getGreeting())));
+        assertEquals(Arrays.asList("Hello World"), calls);
+    }
+
+    public interface GreetingHandler {
+        void onHello(Hello hello);
+        void onFoo(Foo foo);
+    }
+
+    public interface HelloHandler {
+        void onHello(Hello hello);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailStringCacheNotString() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMsg.class);
+        new BlinkCodecFactory(schema).setStringCache("IntMsg", "value", 16);
+    }
+
+    @Test
+    public void testFailStringCacheSize() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        for (int size : new int[] { 0, StringCache.MAX_SIZE + 1, (1 << 30) + 1, Integer.MAX_VALUE }) {
+            try {
+                new BlinkCodecFactory(schema).setStringCache("Hello", "greeting", size);
+                fail("Expected exception for size " + size);
+            } catch (IllegalArgumentException e) {}
+            try {
+                new StringCache(size);
+                fail("Expected exception for size " + size);
+            } catch (IllegalArgumentException e) {}
+        }
+        assertEquals(StringCache.MAX_SIZE, new StringCache(StringCache.MAX_SIZE).capacity());
+    }
+
+    @Test
+    public void testDecodeStreamNoReadAhead() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec encoder = new BlinkCodecFactory(schema).createCodec();
+        // small decode buffer, to also decode large groups directly from the stream
+        BlinkCodec codec = new BlinkCodecFactory(schema).setBufferPool(new ConcurrentBufferPool(64, 1)).createCodec();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        Hello[] msgs = new Hello[] { new Hello("hello"), new Hello(createString(1000)), new Hello("world") };
+        for (Hello msg : msgs) {
+            encoder.encode(msg, bout);
+        }
+        bout.write(0xc0); // null
+        bout.write(42); // trailing byte, not to be consumed
+
+        ByteArrayInputStream in = new ByteArrayInputStream(bout.toByteArray());
+        for (Hello msg : msgs) {
+            assertEquals(msg, codec.decode(in));
+        }
+        assertNull(codec.decode(in));
+        assertEquals(42, in.read());
+    }
+
+    private static String createString(int length) {
+        StringBuilder str = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            str.append((char) ('a' + i % 26));
+        }
+        return str.toString();
+    }
+
     @Id(1)
     public static class Hello extends MsgObject {
         @Required
@@ -564,6 +1218,15 @@ public class BlinkCodecTest {
         }
     }
     
+    @Id(10)
+    public static class ReuseMsg extends MsgObject {
+        public IntMsg inner;
+        public IntMsg[] inners;
+        public int[] values;
+        @Sequence(Integer.class)
+        public List<Integer> list;
+    }
+
     public enum AEnum {
         VALUE
     }
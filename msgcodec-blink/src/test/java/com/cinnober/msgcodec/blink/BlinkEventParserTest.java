@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.FieldDef;
+import com.cinnober.msgcodec.GroupDef;
+import com.cinnober.msgcodec.MsgObject;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.anot.Dynamic;
+import com.cinnober.msgcodec.anot.Id;
+import com.cinnober.msgcodec.anot.SmallDecimal;
+import com.cinnober.msgcodec.anot.Unsigned;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.InputStreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class BlinkEventParserTest {
+
+    private static final String EXPECTED_EVENTS =
+            "startGroup(null,EventSubMsg) " +
+            "bigDecimal(big,1.25) " +
+            "binary(bin,[1, 2, 3]) " +
+            "decimal(dec,-2,1234) " +
+            "startGroup(dyn,Leaf) string(name,leaf) endGroup(dyn,Leaf) " +
+            "float32(f32,-0.25) " +
+            "float64(f64,1.5) " +
+            "bool(flag,true) " +
+            "int32(i32,-123456) " +
+            "int64(i64,-9223372036854775808) " +
+            "startGroup(inner,Inner) int32(value,7) endGroup(inner,Inner) " +
+            "null(optDyn) " +
+            "null(optInt) " +
+            "startSequence(seq,3) int32(seq,1) int32(seq,2) int32(seq,3) endSequence(seq) " +
+            "string(str,\u00e5\u00e4\u00f6) " +
+            "int32(u32,-2) " +
+            "string(extra,sub) " +
+            "endGroup(null,EventSubMsg) ";
+
+    @Test
+    public void testParseBuf() throws IOException {
+        BlinkCodec codec = createCodec();
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(createMessage(), buf);
+        int size = buf.position();
+        buf.flip();
+
+        RecordingListener listener = new RecordingListener();
+        assertTrue(codec.createEventParser().parse(buf, listener));
+        assertEquals(EXPECTED_EVENTS, listener.events.toString());
+        assertEquals(size, buf.position());
+    }
+
+    @Test
+    public void testParseStream() throws IOException {
+        BlinkCodec codec = createCodec();
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(createMessage(), buf);
+        BlinkOutput.writeNull(buf);
+        buf.flip();
+        byte[] data = new byte[buf.limit()];
+        buf.read(data, 0, data.length);
+
+        BlinkEventParser parser = codec.createEventParser();
+        InputStreamSource in = new InputStreamSource(new ByteArrayInputStream(data));
+        RecordingListener listener = new RecordingListener();
+        assertTrue(parser.parse(in, listener));
+        assertEquals(EXPECTED_EVENTS, listener.events.toString());
+
+        // null group
+        listener.events.setLength(0);
+        assertFalse(parser.parse(in, listener));
+        assertEquals("", listener.events.toString());
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testFailParseUnknownGroupId() throws IOException {
+        BlinkCodec codec = createCodec();
+        ByteBuf buf = new ByteArrayBuf(new byte[16]);
+        BlinkOutput.writeUInt32(buf, 1); // size
+        BlinkOutput.writeUInt32(buf, 99); // group id
+        buf.flip();
+        codec.createEventParser().parse(buf, new BlinkEventParser.Listener() {});
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testFailParseSequenceTooLong() throws IOException {
+        Schema schema = new SchemaBuilder().build(EventMsg.class, EventSubMsg.class, Inner.class, Leaf.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).setMaxSequenceLength(2).createCodec();
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(createMessage(), buf); // three elements
+        buf.flip();
+        codec.createEventParser().parse(buf, new BlinkEventParser.Listener() {});
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testFailParseDecimalExponentOutOfRange() throws IOException {
+        BlinkCodec codec = createCodec();
+        ByteBuf buf = new ByteArrayBuf(new byte[16]);
+        BlinkOutput.writeUInt32(buf, 4); // size
+        BlinkOutput.writeUInt32(buf, 4); // group id
+        BlinkOutput.writeInt32(buf, 200); // exponent, two bytes
+        BlinkOutput.writeInt64(buf, 1); // mantissa
+        buf.flip();
+        codec.createEventParser().parse(buf, new BlinkEventParser.Listener() {});
+    }
+
+    private static BlinkCodec createCodec() {
+        Schema schema = new SchemaBuilder().build(EventMsg.class, EventSubMsg.class, Inner.class, Leaf.class,
+                DecimalMsg.class);
+        return new BlinkCodecFactory(schema).createCodec();
+    }
+
+    private static EventSubMsg createMessage() {
+        EventSubMsg msg = new EventSubMsg();
+        msg.i32 = -123456;
+        msg.u32 = 0xfffffffe;
+        msg.i64 = Long.MIN_VALUE;
+        msg.str = "\u00e5\u00e4\u00f6";
+        msg.inner = new Inner();
+        msg.inner.value = 7;
+        msg.seq = new int[] { 1, 2, 3 };
+        msg.f32 = -0.25f;
+        msg.f64 = 1.5;
+        msg.flag = true;
+        msg.dec = new BigDecimal("12.34");
+        msg.big = new BigDecimal("1.25");
+        msg.bin = new byte[] { 1, 2, 3 };
+        msg.dyn = new Leaf();
+        msg.dyn.name = "leaf";
+        msg.extra = "sub";
+        return msg;
+    }
+
+    private static class RecordingListener implements BlinkEventParser.Listener {
+        final StringBuilder events = new StringBuilder();
+
+        private void event(String name, FieldDef field, Object value) {
+            events.append(name).append('(').append(field != null ? field.getName() : null);
+            if (value != null) {
+                events.append(',').append(value);
+            }
+            events.append(") ");
+        }
+        @Override
+        public void startGroup(FieldDef field, GroupDef group) {
+            event("startGroup", field, group.getName());
+        }
+        @Override
+        public void endGroup(FieldDef field, GroupDef group) {
+            event("endGroup", field, group.getName());
+        }
+        @Override
+        public void startSequence(FieldDef field, int length) {
+            event("startSequence", field, length);
+        }
+        @Override
+        public void endSequence(FieldDef field) {
+            event("endSequence", field, null);
+        }
+        @Override
+        public void nullValue(FieldDef field) {
+            event("null", field, null);
+        }
+        @Override
+        public void bool(FieldDef field, boolean value) {
+            event("bool", field, value);
+        }
+        @Override
+        public void int32(FieldDef field, int value) {
+            event("int32", field, value);
+        }
+        @Override
+        public void int64(FieldDef field, long value) {
+            event("int64", field, value);
+        }
+        @Override
+        public void float32(FieldDef field, float value) {
+            event("float32", field, value);
+        }
+        @Override
+        public void float64(FieldDef field, double value) {
+            event("float64", field, value);
+        }
+        @Override
+        public void decimal(FieldDef field, int exponent, long mantissa) {
+            event("decimal", field, exponent + "," + mantissa);
+        }
+        @Override
+        public void bigDecimal(FieldDef field, BigDecimal value) {
+            event("bigDecimal", field, value);
+        }
+        @Override
+        public void string(FieldDef field, ByteBuf buf, int offset, int length) throws IOException {
+            byte[] data = new byte[length];
+            buf.position(offset);
+            buf.read(data, 0, length);
+            event("string", field, new String(data, StandardCharsets.UTF_8));
+        }
+        @Override
+        public void binary(FieldDef field, ByteBuf buf, int offset, int length) throws IOException {
+            byte[] data = new byte[length];
+            buf.position(offset);
+            buf.read(data, 0, length);
+            event("binary", field, Arrays.toString(data));
+        }
+    }
+
+    @Id(1)
+    public static class EventMsg extends MsgObject {
+        public int i32;
+        @Unsigned
+        public int u32;
+        public long i64;
+        public Integer optInt;
+        public String str;
+        public Inner inner;
+        public int[] seq;
+        public float f32;
+        public double f64;
+        public boolean flag;
+        @SmallDecimal
+        public BigDecimal dec;
+        public BigDecimal big;
+        public byte[] bin;
+        @Dynamic
+        public Leaf dyn;
+        @Dynamic
+        public Leaf optDyn;
+    }
+
+    @Id(2)
+    public static class EventSubMsg extends EventMsg {
+        public String extra;
+    }
+
+    public static class Inner extends MsgObject {
+        public int value;
+    }
+
+    @Id(3)
+    public static class Leaf extends MsgObject {
+        public String name;
+    }
+
+    @Id(4)
+    public static class DecimalMsg extends MsgObject {
+        @SmallDecimal
+        public BigDecimal dec;
+    }
+}
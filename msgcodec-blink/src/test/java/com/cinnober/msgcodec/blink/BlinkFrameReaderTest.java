@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.DecodeException;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.blink.BlinkCodecTest.Hello;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class BlinkFrameReaderTest {
+
+    private static Hello[] createGroups() {
+        Hello[] groups = new Hello[20];
+        for (int i = 0; i < groups.length; i++) {
+            char[] greeting = new char[i * 17];
+            Arrays.fill(greeting, (char) ('a' + i));
+            groups[i] = new Hello(new String(greeting));
+        }
+        return groups;
+    }
+
+    private static byte[] encode(BlinkCodec codec, Object[] groups) throws IOException {
+        ByteArrayBuf buf = new ByteArrayBuf(new byte[8192]);
+        for (Object group : groups) {
+            codec.encode(group, buf);
+        }
+        BlinkOutput.writeNull(buf); // null groups are skipped
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    @Test
+    public void testReadChannel() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        Hello[] groups = createGroups();
+        byte[] data = encode(codec, groups);
+
+        for (int chunkSize : new int[] { 1, 3, 100, 8192 }) {
+            BlinkFrameReader reader = codec.createFrameReader(16, -1);
+            ChunkedChannel channel = new ChunkedChannel(data, chunkSize);
+            List<Object> decoded = new ArrayList<>();
+            while (reader.read(channel) != -1) {
+                reader.decodeAll(decoded::add);
+            }
+            assertEquals("chunkSize " + chunkSize, Arrays.asList(groups), decoded);
+            assertEquals(0, reader.available());
+        }
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        byte[] data = encode(codec, new Object[] { new Hello("hello"), new Hello("world") });
+
+        BlinkFrameReader reader = codec.createFrameReader();
+        reader.append(ByteBuffer.wrap(data, 0, 5));
+        assertFalse(reader.hasFrame());
+        reader.append(ByteBuffer.wrap(data, 5, data.length - 5));
+        assertTrue(reader.hasFrame());
+        assertEquals(new Hello("hello"), reader.decode());
+        assertEquals(new Hello("world"), reader.decode());
+        assertNull(reader.decode()); // null group
+        assertFalse(reader.hasFrame());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailDecodePartialFrame() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        byte[] data = encode(codec, new Object[] { new Hello("hello") });
+
+        BlinkFrameReader reader = codec.createFrameReader();
+        reader.append(ByteBuffer.wrap(data, 0, 3));
+        reader.decode();
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testFailFrameTooLarge() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        byte[] data = encode(codec, new Object[] { new Hello("hello world") });
+
+        BlinkFrameReader reader = codec.createFrameReader(16, 8);
+        reader.append(ByteBuffer.wrap(data));
+        reader.hasFrame();
+    }
+
+    @Test
+    public void testFailPreambleTooLarge() throws IOException {
+        Schema schema = new SchemaBuilder().build(Hello.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        for (int b1 = 0xc5; b1 <= 0xff; b1++) {
+            BlinkFrameReader reader = codec.createFrameReader();
+            // only the first byte of the preamble, the rest has not arrived yet
+            try {
+                reader.append(ByteBuffer.wrap(new byte[] { (byte) b1 }));
+                reader.hasFrame();
+                fail("Expected exception for preamble byte " + Integer.toHexString(b1));
+            } catch (DecodeException e) {}
+        }
+    }
+
+    /**
+     * Non-blocking channel that reads at most chunkSize bytes at a time,
+     * and nothing every other read.
+     */
+    private static class ChunkedChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final int chunkSize;
+        private boolean readNothing;
+
+        ChunkedChannel(byte[] data, int chunkSize) {
+            this.data = ByteBuffer.wrap(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            readNothing = !readNothing;
+            if (readNothing) {
+                return 0;
+            }
+            int n = Math.min(Math.min(chunkSize, dst.remaining()), data.remaining());
+            ByteBuffer chunk = data.duplicate();
+            chunk.limit(chunk.position() + n);
+            dst.put(chunk);
+            data.position(data.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
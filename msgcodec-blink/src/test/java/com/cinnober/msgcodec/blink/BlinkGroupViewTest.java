@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.MsgObject;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.anot.Dynamic;
+import com.cinnober.msgcodec.anot.Id;
+import com.cinnober.msgcodec.anot.Unsigned;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
+import java.io.IOException;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class BlinkGroupViewTest {
+
+    @Test
+    public void testReadFields() throws IOException {
+        Schema schema = new SchemaBuilder().build(ViewMsg.class, ViewSubMsg.class, Inner.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+
+        ViewSubMsg msg = new ViewSubMsg();
+        msg.i32 = -123456;
+        msg.u32 = 0xfffffffe;
+        msg.i64 = Long.MIN_VALUE;
+        msg.str = "hello";
+        msg.inner = new Inner();
+        msg.inner.value = 7;
+        msg.seq = new int[] { 1, 2, 3 };
+        msg.f64 = 1.5;
+        msg.flag = true;
+        msg.dec = new BigDecimal("12.34");
+        msg.extra = "sub";
+
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(msg, buf);
+        BlinkOutput.writeNull(buf);
+        int size = buf.position() - 1;
+
+        BlinkGroupView view = codec.createGroupView();
+        assertTrue(view.wrap(buf, 0));
+        assertEquals(size, view.getEncodedSize());
+        assertSame(schema.getGroup(ViewSubMsg.class), view.getGroupDef());
+        assertEquals(12, view.getFieldCount());
+
+        // read out of order
+        assertEquals("sub", view.getString(view.getFieldIndex("extra")));
+        assertEquals(-123456, view.getInt32(view.getFieldIndex("i32")));
+        assertEquals(0xfffffffe, view.getInt32(view.getFieldIndex("u32")));
+        assertEquals(Long.MIN_VALUE, view.getInt64(view.getFieldIndex("i64")));
+        assertTrue(view.isNull(view.getFieldIndex("optInt")));
+        assertEquals("hello", view.getString(view.getFieldIndex("str")));
+        assertFalse(view.isNull(view.getFieldIndex("inner")));
+        assertEquals(3, view.getSequenceLength(view.getFieldIndex("seq")));
+        assertEquals(1.5, view.getFloat64(view.getFieldIndex("f64")), 0.0);
+        assertTrue(view.getBoolean(view.getFieldIndex("flag")));
+        assertEquals(new BigDecimal("12.34"), view.getDecimal(view.getFieldIndex("dec")));
+        assertEquals(-1, view.getFieldIndex("noSuchField"));
+
+        // null group
+        assertFalse(view.wrap(buf, size));
+        assertNull(view.getGroupDef());
+        assertEquals(1, view.getEncodedSize());
+    }
+
+    @Test
+    public void testReadNestedDynamicGroup() throws IOException {
+        Schema schema = new SchemaBuilder().build(ViewMsg.class, Inner.class, Holder.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+
+        Holder msg = new Holder();
+        msg.nested = new ViewMsg();
+        msg.nested.i32 = 42;
+        msg.after = 7;
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(msg, buf);
+
+        BlinkGroupView view = codec.createGroupView();
+        BlinkGroupView nestedView = codec.createGroupView();
+        assertTrue(view.wrap(buf, 0));
+        assertTrue(nestedView.wrap(buf, view.getFieldOffset(view.getFieldIndex("nested"))));
+        assertSame(schema.getGroup(ViewMsg.class), nestedView.getGroupDef());
+        assertEquals(42, nestedView.getInt32(nestedView.getFieldIndex("i32")));
+        assertEquals(7, view.getInt32(view.getFieldIndex("after")));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testReadNullPrimitive() throws IOException {
+        Schema schema = new SchemaBuilder().build(ViewMsg.class, Inner.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ViewMsg msg = new ViewMsg();
+        msg.inner = new Inner();
+        msg.seq = new int[0];
+
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(msg, buf);
+
+        BlinkGroupView view = codec.createGroupView();
+        view.wrap(buf, 0);
+        view.getInt32(view.getFieldIndex("optInt"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalType() throws IOException {
+        Schema schema = new SchemaBuilder().build(ViewMsg.class, Inner.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ViewMsg msg = new ViewMsg();
+        msg.str = "x";
+        msg.inner = new Inner();
+        msg.seq = new int[0];
+
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(msg, buf);
+
+        BlinkGroupView view = codec.createGroupView();
+        view.wrap(buf, 0);
+        view.getInt32(view.getFieldIndex("str"));
+    }
+
+    @Test
+    public void testSameAsDecode() throws IOException {
+        Schema schema = new SchemaBuilder().build(ViewMsg.class, Inner.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        ViewMsg msg = new ViewMsg();
+        msg.i32 = 1;
+        msg.optInt = 1000;
+        msg.str = "åäö";
+        msg.inner = new Inner();
+        msg.seq = new int[] { 4711 };
+        msg.bin = new byte[] { 1, 2, 3 };
+
+        ByteBuf buf = new ByteArrayBuf(new byte[1024]);
+        codec.encode(msg, buf);
+        buf.flip();
+        ViewMsg decoded = (ViewMsg) codec.decode(buf);
+
+        BlinkGroupView view = codec.createGroupView();
+        view.wrap(buf, 0);
+        assertEquals(decoded.optInt.intValue(), view.getInt32(view.getFieldIndex("optInt")));
+        assertEquals(decoded.str, view.getString(view.getFieldIndex("str")));
+        assertArrayEquals(decoded.bin, view.getBinary(view.getFieldIndex("bin")));
+    }
+
+    @Id(1)
+    public static class ViewMsg extends MsgObject {
+        public int i32;
+        @Unsigned
+        public int u32;
+        public long i64;
+        public Integer optInt;
+        public String str;
+        public Inner inner;
+        public int[] seq;
+        public double f64;
+        public boolean flag;
+        public BigDecimal dec;
+        public byte[] bin;
+    }
+
+    @Id(2)
+    public static class ViewSubMsg extends ViewMsg {
+        public String extra;
+    }
+
+    public static class Inner extends MsgObject {
+        public int value;
+    }
+
+    @Id(3)
+    public static class Holder extends MsgObject {
+        @Dynamic
+        public ViewMsg nested;
+        public int after;
+    }
+}
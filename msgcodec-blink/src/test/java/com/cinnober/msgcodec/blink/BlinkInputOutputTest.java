@@ -24,6 +24,7 @@
 package com.cinnober.msgcodec.blink;
 
 import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBufferBuf;
 import com.cinnober.msgcodec.io.ByteSink;
 import com.cinnober.msgcodec.io.ByteSource;
 import static org.junit.Assert.assertEquals;
@@ -32,6 +33,9 @@ import static org.junit.Assert.assertArrayEquals;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -82,6 +86,45 @@ public class BlinkInputOutputTest {
                 new byte[] {(byte)0xc8, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte)0xc0});
     }
 
+    /**
+     * Values at all size boundaries must be encoded and decoded the same way,
+     * regardless of whether the buffer has room for word-at-a-time access or not.
+     * @throws IOException
+     */
+    @Test
+    public void testWordAndByteAtATimeVLC() throws IOException {
+        for (int bits = 0; bits < 64; bits++) {
+            for (long value : new long[] { (1L << bits) - 1, 1L << bits, -(1L << bits), -(1L << bits) - 1 }) {
+                testWordAndByteAtATimeVLC(value, BlinkOutput::writeUnsignedVLC, BlinkInput::readUnsignedVLC,
+                        BlinkOutput.sizeOfUnsignedVLC(value));
+                testWordAndByteAtATimeVLC(value, BlinkOutput::writeSignedVLC, BlinkInput::readSignedVLC,
+                        BlinkOutput.sizeOfSignedVLC(value));
+            }
+        }
+    }
+
+    private void testWordAndByteAtATimeVLC(long value, WriteOp<Long> writeOp, ReadOp<Long> readOp, int size)
+            throws IOException {
+        ByteArrayBuf wordBuf = new ByteArrayBuf(size + 8);
+        Arrays.fill(wordBuf.array(), (byte) 0x55);
+        writeOp.writeValue(wordBuf, value);
+        assertEquals("Size of " + value, size, wordBuf.position());
+        for (int i = size; i < size + 8; i++) {
+            assertEquals("Byte after " + value, (byte) 0x55, wordBuf.array()[i]);
+        }
+
+        ByteArrayBuf byteBuf = new ByteArrayBuf(size); // no room for a full word
+        writeOp.writeValue(byteBuf, value);
+        assertArrayEquals("Encoded " + value, byteBuf.array(), Arrays.copyOf(wordBuf.array(), size));
+
+        wordBuf.flip();
+        wordBuf.limit(size + 8);
+        assertEquals("Word decoded", Long.valueOf(value), readOp.readValue(wordBuf));
+        assertEquals("Word position", size, wordBuf.position());
+        byteBuf.flip();
+        assertEquals("Byte decoded", Long.valueOf(value), readOp.readValue(byteBuf));
+    }
+
     /**
      * Examples from the Blink Specification beta2 - 2013-02-05, chapter 3.2.
      * @throws IOException
@@ -97,6 +140,53 @@ public class BlinkInputOutputTest {
         testEncodeDecodeStringUTF8("", new byte[] { 0x00 });
     }
 
+    @Test
+    public void testStringUTF8SameAsGetBytes() throws IOException {
+        StringBuilder longAscii = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longAscii.append((char) ('a' + i % 26));
+        }
+        StringBuilder longNonAscii = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            longNonAscii.append("\u00e5\u00e4\u20ac\u65e5\ud83d\ude00");
+        }
+        String[] values = {
+            "", "a", "abcdefg", "abcdefgh", "abcdefghi", longAscii.toString(),
+            "Räksmörgås", longAscii + "åäö" + longAscii, longNonAscii.toString(),
+            "€100", "日本語のテキスト",
+            "pair \ud83d\ude00 ok", "high \ud83d only", "low \ude00 only", "end \ud83d",
+        };
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            assertEquals(value, bytes.length, BlinkOutput.sizeOfUTF8(value, BlinkOutput.asciiLength(value)));
+
+            ByteArrayBuf buf = new ByteArrayBuf(bytes.length + 16);
+            BlinkOutput.writeStringUTF8(buf, value);
+            buf.flip();
+            assertEquals(value, bytes.length, BlinkInput.readUInt32(buf));
+            byte[] actual = new byte[buf.remaining()];
+            buf.read(actual);
+            assertArrayEquals(value, bytes, actual);
+
+            // word-at-a-time instead of array copy
+            ByteBufferBuf nioBuf = new ByteBufferBuf(ByteBuffer.allocate(bytes.length + 16));
+            BlinkOutput.writeStringUTF8(nioBuf, value);
+            nioBuf.flip();
+            assertEquals(value, bytes.length, BlinkInput.readUInt32(nioBuf));
+            actual = new byte[nioBuf.remaining()];
+            nioBuf.read(actual);
+            assertArrayEquals(value, bytes, actual);
+
+            buf.clear();
+            NativeBlinkOutput.writeDataStringUTF8(buf, value);
+            buf.flip();
+            assertEquals(value, bytes.length, buf.readIntLE());
+            actual = new byte[buf.remaining()];
+            buf.read(actual);
+            assertArrayEquals(value, bytes, actual);
+        }
+    }
+
     /**
      * Examples from the Blink Specification beta2 - 2013-02-05, chapter 3.5.
      * @throws IOException
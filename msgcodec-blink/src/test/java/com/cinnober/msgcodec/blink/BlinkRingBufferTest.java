@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.blink.BlinkCodecTest.Foo;
+import com.cinnober.msgcodec.blink.BlinkCodecTest.Hello;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class BlinkRingBufferTest {
+
+    private static BlinkCodec createCodec() {
+        Schema schema = new SchemaBuilder().build(Hello.class, Foo.class);
+        return new BlinkCodecFactory(schema).createCodec();
+    }
+
+    private static Hello createHello(int i) {
+        char[] greeting = new char[i % 50];
+        Arrays.fill(greeting, (char) ('a' + i % 26));
+        return new Hello(new String(greeting));
+    }
+
+    @Test
+    public void testMultipleReaders() throws IOException {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(256);
+        BlinkRingBuffer.Reader reader1 = ring.newReader();
+        BlinkRingBuffer.Reader reader2 = ring.newReader();
+
+        List<Object> expected = new ArrayList<>();
+        List<Object> read1 = new ArrayList<>();
+        List<Object> read2 = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Hello hello = createHello(i);
+            ring.encode(hello);
+            expected.add(hello);
+            if (i % 3 == 0) {
+                reader1.poll(read1::add);
+                reader2.poll(read2::add);
+            }
+        }
+        reader1.poll(read1::add);
+        reader2.poll(read2::add);
+        assertEquals(expected, read1);
+        assertEquals(expected, read2);
+    }
+
+    @Test
+    public void testFull() throws IOException {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(64);
+        BlinkRingBuffer.Reader reader = ring.newReader();
+        int count = 0;
+        while (ring.tryEncode(new Foo(count))) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(1, reader.read(record -> {}, 1));
+        assertEquals(count - 1, reader.read(record -> {}));
+        assertTrue(ring.tryEncode(new Foo(count)));
+
+        // a closed reader does not hold back the producer
+        reader.close();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ring.tryEncode(new Foo(i)));
+        }
+    }
+
+    @Test
+    public void testRecords() throws IOException {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(1024);
+        BlinkRingBuffer.Reader reader = ring.newReader();
+        Hello hello = new Hello("hello world");
+        ring.encode(hello);
+        List<Object> read = new ArrayList<>();
+        assertEquals(1, reader.read(record -> {
+            assertEquals(codec.sizeOf(hello), record.remaining());
+            read.add(codec.decode(record));
+            assertFalse(record.hasRemaining());
+        }));
+        assertEquals(Arrays.asList(hello), read);
+        assertEquals(0, reader.read(record -> {}));
+    }
+
+    @Test
+    public void testGroupsLargerThanSlot() throws IOException {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(256, 16);
+        BlinkRingBuffer.Reader reader = ring.newReader();
+        List<Object> written = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Object group = i % 2 == 0 ? new Foo(i) : createHello(i * 3);
+            ring.encode(group);
+            written.add(group);
+            if (i % 5 == 4) {
+                List<Object> read = new ArrayList<>();
+                reader.poll(read::add);
+                assertEquals(written, read);
+                written.clear();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailGroupTooLarge() throws IOException {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(64);
+        ring.tryEncode(createHello(49) /* 49 chars */);
+        ring.tryEncode(new Hello(new String(new char[100])));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        BlinkCodec codec = createCodec();
+        BlinkRingBuffer ring = codec.createRingBuffer(1024);
+        BlinkRingBuffer.Reader reader = ring.newReader();
+        int producers = 3;
+        int groupsPerProducer = 2000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < groupsPerProducer; i++) {
+                        ring.encode(new Foo(producer * groupsPerProducer + i));
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        int[] next = new int[producers];
+        int total = 0;
+        while (total < producers * groupsPerProducer && error.get() == null) {
+            total += reader.poll(group -> {
+                int id = ((Foo) group).getId();
+                int producer = id / groupsPerProducer;
+                assertEquals(producer * groupsPerProducer + next[producer], id);
+                next[producer]++;
+            });
+            Thread.yield();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, error.get());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(groupsPerProducer, next[p]);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.blink;
+
+import com.cinnober.msgcodec.MsgObject;
+import com.cinnober.msgcodec.Schema;
+import com.cinnober.msgcodec.SchemaBuilder;
+import com.cinnober.msgcodec.anot.Id;
+import com.cinnober.msgcodec.io.ByteArrayBuf;
+import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.InputStreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author agent
+ */
+public class BlinkScannerTest {
+
+    private static Object[] createGroups() {
+        Object[] groups = new Object[10];
+        for (int i = 0; i < groups.length; i++) {
+            if (i % 3 == 0) {
+                groups[i] = new ScanTrade(i, "trade" + i);
+            } else {
+                groups[i] = new ScanOrder(i);
+            }
+        }
+        return groups;
+    }
+
+    private static ByteArrayBuf encode(BlinkCodec codec, Object[] groups) throws IOException {
+        ByteArrayBuf buf = new ByteArrayBuf(new byte[1024]);
+        for (Object group : groups) {
+            codec.encode(group, buf);
+        }
+        BlinkOutput.writeNull(buf); // null groups are skipped
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void testIndexBuf() throws IOException {
+        Schema schema = new SchemaBuilder().build(ScanOrder.class, ScanTrade.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        Object[] groups = createGroups();
+        ByteArrayBuf buf = encode(codec, groups);
+
+        BlinkIndex index = codec.createScanner().index(buf);
+        assertEquals(groups.length, index.size());
+        assertEquals(buf.limit(), buf.position());
+        for (int i = 0; i < groups.length; i++) {
+            assertEquals(schema.getGroup(groups[i].getClass()).getId(), index.getGroupId(i));
+            buf.position((int) index.getOffset(i));
+            assertEquals(groups[i], codec.decode(buf));
+            assertEquals(index.getOffset(i) + index.getEncodedSize(i), buf.position());
+        }
+    }
+
+    @Test
+    public void testIndexStreamFiltered() throws IOException {
+        Schema schema = new SchemaBuilder().build(ScanOrder.class, ScanTrade.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        Object[] groups = createGroups();
+        ByteArrayBuf buf = encode(codec, groups);
+        BlinkIndex allIndex = codec.createScanner().index(buf);
+
+        InputStreamSource in = new InputStreamSource(
+                new ByteArrayInputStream(buf.array(), 0, buf.limit()));
+        BlinkIndex index = codec.createScanner().index(in, groupId -> groupId == 2);
+        assertEquals(4, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(2, index.getGroupId(i));
+            assertEquals(allIndex.getOffset(i * 3), index.getOffset(i));
+            assertEquals(allIndex.getEncodedSize(i * 3), index.getEncodedSize(i));
+        }
+    }
+
+    @Test
+    public void testScanFieldValues() throws IOException {
+        Schema schema = new SchemaBuilder().build(ScanOrder.class, ScanTrade.class);
+        BlinkCodec codec = new BlinkCodecFactory(schema).createCodec();
+        Object[] groups = createGroups();
+        ByteArrayBuf buf = encode(codec, groups);
+
+        List<String> bufValues = new ArrayList<>();
+        assertEquals(4, codec.createScanner().scan(buf, groupId -> groupId == 2,
+                (offset, size, groupId, view) -> bufValues.add(toString(view))));
+
+        buf.position(0);
+        List<String> streamValues = new ArrayList<>();
+        InputStreamSource in = new InputStreamSource(new ByteArrayInputStream(buf.array(), 0, buf.limit()));
+        assertEquals(4, codec.createScanner().scan(in, groupId -> groupId == 2,
+                (offset, size, groupId, view) -> streamValues.add(toString(view))));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < groups.length; i += 3) {
+            expected.add(i + ":trade" + i);
+        }
+        assertEquals(expected, bufValues);
+        assertEquals(expected, streamValues);
+    }
+
+    private static String toString(BlinkGroupView view) throws IOException {
+        return view.getInt32(view.getFieldIndex("value")) + ":" + view.getString(view.getFieldIndex("text"));
+    }
+
+    @Id(1)
+    public static class ScanOrder extends MsgObject {
+        public int value;
+        public ScanOrder() {
+        }
+        public ScanOrder(int value) {
+            this.value = value;
+        }
+    }
+
+    @Id(2)
+    public static class ScanTrade extends MsgObject {
+        public int value;
+        public String text;
+        public ScanTrade() {
+        }
+        public ScanTrade(int value, String text) {
+            this.value = value;
+            this.text = text;
+        }
+    }
+}
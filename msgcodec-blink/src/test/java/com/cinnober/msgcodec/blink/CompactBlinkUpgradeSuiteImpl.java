@@ -25,13 +25,15 @@ package com.cinnober.msgcodec.blink;
 
 import com.cinnober.msgcodec.test.upgrade.TestUpgradesSuite;
 import com.cinnober.msgcodec.util.ConcurrentBufferPool;
+import java.util.Collections;
 import org.junit.runners.model.InitializationError;
 
 public class CompactBlinkUpgradeSuiteImpl extends TestUpgradesSuite {
 
     public CompactBlinkUpgradeSuiteImpl(Class<?> rootClass)
             throws InitializationError {
-        super(rootClass, s -> new BlinkCodec(s, new ConcurrentBufferPool(1_048_576, 10), 10 * 1_048_576, 1_000_000));
+        super(rootClass, s -> new BlinkCodec(s, new ConcurrentBufferPool(1_048_576, 10), 10 * 1_048_576, 1_000_000, true,
+                Collections.emptyMap(), Collections.emptyMap()));
     }
 
 }
@@ -24,7 +24,10 @@ import com.cinnober.msgcodec.anot.Id;
 import com.cinnober.msgcodec.anot.Unsigned;
 import com.cinnober.msgcodec.io.ByteArrayBuf;
 import com.cinnober.msgcodec.io.ByteBuf;
+import com.cinnober.msgcodec.io.OffHeapByteBuf;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -51,6 +54,65 @@ public class NativeBlinkCodecTest {
         assertEquals(msg1, msg2);
     }
 
+    @Test
+    public void testEncodeDecodeOffHeap() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMessage.class);
+        NativeBlinkCodec codec = new NativeBlinkCodecFactory(schema).createCodec();
+
+        ByteArrayBuf refBuf = new ByteArrayBuf(1024);
+        ByteBuf buf = new OffHeapByteBuf(1024);
+        Object msg1 = new IntMessage(1,-2,Long.MIN_VALUE,4);
+        codec.encode(msg1, refBuf);
+        codec.encode(msg1, buf);
+        refBuf.flip();
+        buf.flip();
+        assertEquals(refBuf.getByteBuffer().limit(refBuf.limit()), buf.getByteBuffer());
+
+        Object msg2 = codec.decode(buf);
+        assertEquals(msg1, msg2);
+    }
+
+    @Test
+    public void testSizeOfIntMessage() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMessage.class);
+        NativeBlinkCodec codec = new NativeBlinkCodecFactory(schema).createCodec();
+
+        ByteBuf buf = new ByteArrayBuf(1024);
+        Object msg = new IntMessage(1,2,3,4);
+        codec.encode(msg, buf);
+        assertEquals(buf.position(), codec.sizeOf(msg));
+    }
+
+    @Test
+    public void testBatchIntMessage() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMessage.class);
+        NativeBlinkCodec codec = new NativeBlinkCodecFactory(schema).createCodec();
+
+        ByteBuf buf = new ByteArrayBuf(1024);
+        Object[] msgs = new Object[] { new IntMessage(1,2,3,4), new IntMessage(5,6,7,8) };
+        codec.encodeBatch(msgs, 0, msgs.length, buf);
+
+        buf.flip();
+        List<Object> decoded = new ArrayList<>();
+        assertEquals(2, codec.decodeBatch(buf, decoded::add, 10));
+        assertArrayEquals(msgs, decoded.toArray());
+    }
+
+    @Test
+    public void testDecodeIntoIntMessage() throws IOException {
+        Schema schema = new SchemaBuilder().build(IntMessage.class);
+        NativeBlinkCodec codec = new NativeBlinkCodecFactory(schema).createCodec();
+
+        ByteBuf buf = new ByteArrayBuf(1024);
+        Object msg1 = new IntMessage(1,2,3,4);
+        codec.encode(msg1, buf);
+
+        buf.flip();
+        IntMessage msg2 = new IntMessage();
+        assertSame(msg2, codec.decodeInto(buf, msg2));
+        assertEquals(msg1, msg2);
+    }
+
 
     @Id(1)
     public static class IntMessage extends MsgObject {
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 
 import org.junit.Test;
 
@@ -11,6 +12,7 @@ import com.cinnober.msgcodec.MsgCodec;
 import com.cinnober.msgcodec.Schema;
 import com.cinnober.msgcodec.SchemaBuilder;
 import com.cinnober.msgcodec.anot.Id;
+import com.cinnober.msgcodec.io.ChunkedByteBuf;
 import com.cinnober.msgcodec.io.ReallocatingByteBuf;
 
 public class ReallocatedByteBufTest {
@@ -51,4 +53,28 @@ public class ReallocatedByteBufTest {
         assertEquals(100043, output2.id);
     }
 
+    @Test
+    public void testEncodeAndDecodeWithMsgCodecToChunkedByteBuf() throws IOException {
+        Schema schema = new SchemaBuilder().build(InternalMessageObject.class);
+        MsgCodec codec = new BlinkCodecFactory(schema).createCodec();
+
+        // small chunks, so that the size preamble is back-patched across chunk boundaries
+        ChunkedByteBuf buf = new ChunkedByteBuf(8, 1 << 20);
+        for (int i = 0; i < 100; i++) {
+            InternalMessageObject obj = new InternalMessageObject();
+            obj.id = i;
+            obj.text = String.join("", Collections.nCopies(i * 3, "x"));
+            obj.flag = (i & 1) == 0;
+            codec.encode(obj, buf);
+        }
+
+        buf.flip();
+        for (int i = 0; i < 100; i++) {
+            InternalMessageObject output = (InternalMessageObject) codec.decode(buf);
+            assertEquals(i, output.id);
+            assertEquals(i * 3, output.text.length());
+            assertEquals((i & 1) == 0, output.flag);
+        }
+        assertEquals(0, buf.remaining());
+    }
 }
@@ -23,11 +23,13 @@
  */
 package com.cinnober.msgcodec;
 
+import com.cinnober.msgcodec.io.ByteBuf;
 import com.cinnober.msgcodec.io.ByteSink;
 import com.cinnober.msgcodec.io.ByteSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
 /** 
  * A codec that can encode and decode messages.
@@ -80,4 +82,52 @@ public interface MsgCodec {
      * @throws DecodeException if the value could not be decoded, or if a required field is missing.
      */
     Object decode(ByteSource in) throws IOException, DecodeException;
+
+    /**
+     * Write a batch of groups to the byte sink.
+     *
+     * <p>The default implementation calls {@link #encode(Object, ByteSink)} for each group.
+     * Implementations may override this method to amortize per group overhead.
+     *
+     * @param groups the groups to encode, not null.
+     * @param off the offset of the first group in groups.
+     * @param len the number of groups to encode.
+     * @param out the byte sink to write to, not null.
+     * @throws IOException if the underlying byte sink throws an exception.
+     * @throws IllegalArgumentException if a group is not correct or complete, e.g. a required field is missing.
+     * Partial data may have been written to the byte sink.
+     */
+    default void encodeBatch(Object[] groups, int off, int len, ByteSink out)
+            throws IOException, IllegalArgumentException {
+        for (int i = off, end = off + len; i < end; i++) {
+            encode(groups[i], out);
+        }
+    }
+
+    /**
+     * Read a batch of groups from the specified byte source.
+     *
+     * <p>Decoding stops when max groups have been decoded, or when the end of the input is reached.
+     * If the byte source is a {@link ByteBuf} the end is reached when there are no remaining bytes.
+     * Implementations may also detect the end of other byte sources.
+     *
+     * <p>The default implementation calls {@link #decode(ByteSource)} for each group, and only detects
+     * the end of a {@link ByteBuf}. Implementations may override this method to amortize per group overhead.
+     *
+     * @param in the byte source to read from, not null.
+     * @param consumer the consumer of the decoded values, not null.
+     * @param max the maximum number of groups to decode.
+     * @return the number of decoded groups.
+     * @throws IOException if the underlying byte source throws an exception.
+     * @throws DecodeException if a value could not be decoded, or if a required field is missing.
+     */
+    default int decodeBatch(ByteSource in, Consumer<Object> consumer, int max) throws IOException, DecodeException {
+        ByteBuf buf = in instanceof ByteBuf ? (ByteBuf) in : null;
+        int count = 0;
+        while (count < max && (buf == null || buf.hasRemaining())) {
+            consumer.accept(decode(in));
+            count++;
+        }
+        return count;
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * A buffered byte source wrapper for an input stream.
+ *
+ * <p>Data is read from the input stream in bulk into an internal buffer, and single bytes,
+ * strings and integers are then read directly from the buffer.
+ *
+ * <p><b>Note:</b> the input stream is read ahead, i.e. bytes beyond the last byte read from this
+ * source may already have been consumed from the input stream. Use the same buffered source for
+ * the whole lifetime of the stream, or use {@link InputStreamSource} if the stream is shared.
+ *
+ * @author agent
+ * @see InputStreamSource
+ */
+public class BufferedInputStreamSource implements ByteSource {
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos;
+    private int end;
+
+    /**
+     * Create a new buffered input stream source, with a buffer size of 8192 bytes.
+     * @param in the wrapped input stream to read from, not null.
+     */
+    public BufferedInputStreamSource(InputStream in) {
+        this(in, new byte[8192]);
+    }
+
+    /**
+     * Create a new buffered input stream source.
+     * @param in the wrapped input stream to read from, not null.
+     * @param buffer the internal buffer to use, not null. Any data in the buffer is ignored.
+     */
+    public BufferedInputStreamSource(InputStream in, byte[] buffer) {
+        this.in = Objects.requireNonNull(in);
+        if (buffer.length < 8) {
+            throw new IllegalArgumentException("Buffer too small: " + buffer.length);
+        }
+        this.buf = buffer;
+    }
+
+    /**
+     * Returns the number of bytes that have been read from the input stream, but not yet from this source.
+     * @return the number of buffered bytes.
+     */
+    public int buffered() {
+        return end - pos;
+    }
+
+    /**
+     * Make sure the specified number of bytes are available in the buffer.
+     * Any remaining bytes are moved to the start of the buffer, before more data is read.
+     *
+     * @param len the number of bytes, not larger than the buffer size.
+     * @throws EOFException if the end of stream is reached before all bytes could be read.
+     * @throws IOException if the input stream throws an exception.
+     */
+    private void fill(int len) throws IOException {
+        if (pos != 0) {
+            System.arraycopy(buf, pos, buf, 0, end - pos);
+            end -= pos;
+            pos = 0;
+        }
+        while (end < len) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            end += n;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == end) {
+            fill(1);
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    @Override
+    public void read(byte[] b, int off, int len) throws IOException {
+        int n = Math.min(len, end - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        if (n < len) {
+            // the buffer is empty
+            if (len - n >= buf.length) {
+                InputStreams.readFully(in, b, off + n, len - n);
+            } else {
+                fill(len - n);
+                System.arraycopy(buf, pos, b, off + n, len - n);
+                pos += len - n;
+            }
+        }
+    }
+
+    @Override
+    public String readStringUtf8(int len) throws IOException {
+        if (end - pos < len) {
+            if (len > buf.length) {
+                return ByteSource.super.readStringUtf8(len);
+            }
+            fill(len);
+        }
+        String s = new String(buf, pos, len, UTF8);
+        pos += len;
+        return s;
+    }
+
+    @Override
+    public void skip(int len) throws IOException {
+        while (end - pos < len) {
+            len -= end - pos;
+            pos = end;
+            fill(1);
+        }
+        pos += len;
+    }
+
+    @Override
+    public int readIntLE() throws IOException {
+        if (end - pos < 4) {
+            fill(4);
+        }
+        int v = (buf[pos] & 0xff) |
+                (buf[pos+1] & 0xff) << 8 |
+                (buf[pos+2] & 0xff) << 16 |
+                (buf[pos+3] & 0xff) << 24;
+        pos += 4;
+        return v;
+    }
+
+    @Override
+    public long readLongLE() throws IOException {
+        if (end - pos < 8) {
+            fill(8);
+        }
+        long v = (buf[pos] & 0xffL) |
+                (buf[pos+1] & 0xffL) << 8 |
+                (buf[pos+2] & 0xffL) << 16 |
+                (buf[pos+3] & 0xffL) << 24 |
+                (buf[pos+4] & 0xffL) << 32 |
+                (buf[pos+5] & 0xffL) << 40 |
+                (buf[pos+6] & 0xffL) << 48 |
+                (buf[pos+7] & 0xffL) << 56;
+        pos += 8;
+        return v;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * A buffered byte sink wrapper for an output stream.
+ *
+ * <p>Data is written to an internal buffer, which is written to the output stream in bulk when it is full,
+ * or when the sink is flushed. Byte arrays larger than the buffer are written directly to the output stream.
+ *
+ * <p><b>Note:</b> {@link #flush()} must be called to make sure all data is written to the output stream.
+ *
+ * @author agent
+ * @see OutputStreamSink
+ */
+public class BufferedOutputStreamSink implements ByteSink, Flushable {
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+
+    /**
+     * Create a new buffered output stream sink, with a buffer size of 8192 bytes.
+     * @param out the wrapped output stream to write to, not null.
+     */
+    public BufferedOutputStreamSink(OutputStream out) {
+        this(out, new byte[8192]);
+    }
+
+    /**
+     * Create a new buffered output stream sink.
+     * @param out the wrapped output stream to write to, not null.
+     * @param buffer the internal buffer to use, not null.
+     */
+    public BufferedOutputStreamSink(OutputStream out, byte[] buffer) {
+        this.out = Objects.requireNonNull(out);
+        if (buffer.length < 8) {
+            throw new IllegalArgumentException("Buffer too small: " + buffer.length);
+        }
+        this.buf = buffer;
+    }
+
+    /**
+     * Returns the number of bytes that have been written to this sink, but not yet to the output stream.
+     * @return the number of buffered bytes.
+     */
+    public int buffered() {
+        return pos;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    /**
+     * Write any buffered bytes to the output stream, and flush the output stream.
+     * @throws IOException if the output stream throws an exception.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (pos == buf.length) {
+            flushBuffer();
+        }
+        buf[pos++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - pos) {
+            flushBuffer();
+            if (len >= buf.length) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    @Override
+    public void writeIntLE(int v) throws IOException {
+        if (buf.length - pos < 4) {
+            flushBuffer();
+        }
+        buf[pos] = (byte) v;
+        buf[pos+1] = (byte) (v >> 8);
+        buf[pos+2] = (byte) (v >> 16);
+        buf[pos+3] = (byte) (v >> 24);
+        pos += 4;
+    }
+
+    @Override
+    public void writeLongLE(long v) throws IOException {
+        if (buf.length - pos < 8) {
+            flushBuffer();
+        }
+        buf[pos] = (byte) v;
+        buf[pos+1] = (byte) (v >> 8);
+        buf[pos+2] = (byte) (v >> 16);
+        buf[pos+3] = (byte) (v >> 24);
+        buf[pos+4] = (byte) (v >> 32);
+        buf[pos+5] = (byte) (v >> 40);
+        buf[pos+6] = (byte) (v >> 48);
+        buf[pos+7] = (byte) (v >> 56);
+        pos += 8;
+    }
+}
@@ -232,7 +232,37 @@ public class ByteArrayBuf implements ByteBuf {
         data[pos+7] = (byte) (v >> 56);
         pos += 8;
     }
-    
+
+    @Override
+    public int readIntLE() throws IOException {
+        if (pos + 4 > limit) {
+            throw new IOException("Buffer underflow");
+        }
+        int v = (data[pos] & 0xff) |
+                (data[pos+1] & 0xff) << 8 |
+                (data[pos+2] & 0xff) << 16 |
+                (data[pos+3] & 0xff) << 24;
+        pos += 4;
+        return v;
+    }
+
+    @Override
+    public long readLongLE() throws IOException {
+        if (pos + 8 > limit) {
+            throw new IOException("Buffer underflow");
+        }
+        long v = (data[pos] & 0xffL) |
+                (data[pos+1] & 0xffL) << 8 |
+                (data[pos+2] & 0xffL) << 16 |
+                (data[pos+3] & 0xffL) << 24 |
+                (data[pos+4] & 0xffL) << 32 |
+                (data[pos+5] & 0xffL) << 40 |
+                (data[pos+6] & 0xffL) << 48 |
+                (data[pos+7] & 0xffL) << 56;
+        pos += 8;
+        return v;
+    }
+
     @Override
     public ByteBuffer getByteBuffer() {
         return ByteBuffer.wrap(data);
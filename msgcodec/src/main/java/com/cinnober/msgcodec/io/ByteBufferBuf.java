@@ -38,7 +38,7 @@ import java.nio.ByteOrder;
  */
 public class ByteBufferBuf implements ByteBuf {
 
-    private final ByteBuffer buf;
+    private ByteBuffer buf;
     private final char[] chars = new char[128];
 
     /**
@@ -49,6 +49,14 @@ public class ByteBufferBuf implements ByteBuf {
         this.buf = buf;
     }
 
+    /**
+     * Replace the underlying byte buffer, e.g. when another window of a file has been mapped.
+     * @param buf the new byte buffer, not null.
+     */
+    protected void setByteBuffer(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
     /**
      * Returns the underlying byte buffer.
      * @return the underlying byte buffer, not null.
@@ -180,20 +188,20 @@ public class ByteBufferBuf implements ByteBuf {
             return s;
         } else {
             if (len < 128) {
+                final int pos = buf.position();
                 boolean ascii = true;
                 for (int i=0; i<len; i++) {
-                    chars[i] = (char) buf.get();
-                    if(chars[i] < 0) {
+                    byte b = buf.get(pos+i);
+                    if (b < 0) {
                         ascii = false;
                         break;
                     }
+                    chars[i] = (char) b;
                 }
                 if (ascii) {
+                    buf.position(pos+len);
                     return new String(chars, 0, len);
                 }
-                else {
-                    buf.position(buf.position() - len);
-                }
             }
             return ByteBuf.super.readStringUtf8(len);
         }
@@ -0,0 +1,430 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.io;
+
+import com.cinnober.msgcodec.EncodeBufferOverflowException;
+import com.cinnober.msgcodec.EncodeBufferUnderflowException;
+import com.cinnober.msgcodec.util.Pool;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A ByteBuf made of fixed size chunks, which grows by adding chunks instead of reallocating and copying.
+ *
+ * <p>This is suitable for large messages, e.g. reports of several megabytes, where {@link ReallocatingByteBuf}
+ * would copy the whole content each time it grows and allocate large arrays. The chunks are taken from a pool,
+ * and they are returned to the pool by {@link #release()}. Since chunks are reused, the content of bytes
+ * that have not been written is undefined.
+ *
+ * <p>The content between position and limit can be exposed as a ByteBuffer array for gathering writes,
+ * see {@link #getByteBuffers()}.
+ *
+ * @author agent
+ */
+public class ChunkedByteBuf implements ByteBuf {
+
+    private final Pool<byte[]> chunkPool;
+    private final int chunkSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final int maximumSize;
+
+    private byte[][] chunks = new byte[8][];
+    private int chunkCount;
+    private int position;
+    private int limit;
+
+    /**
+     * Create a new chunked buffer, where the chunks are allocated on demand.
+     *
+     * @param chunkSize the size of each chunk, a power of two.
+     * @param maximumSize the maximum size (capacity) of the buffer.
+     */
+    public ChunkedByteBuf(int chunkSize, int maximumSize) {
+        this(chunkSize, maximumSize, null);
+    }
+
+    /**
+     * Create a new chunked buffer.
+     *
+     * @param chunkSize the size of each chunk, a power of two.
+     * @param maximumSize the maximum size (capacity) of the buffer.
+     * @param chunkPool the pool of chunks, or null if chunks should be allocated on demand.
+     * The buffers in the pool must not be smaller than the chunk size.
+     */
+    public ChunkedByteBuf(int chunkSize, int maximumSize, Pool<byte[]> chunkPool) {
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkSize);
+        }
+        this.chunkPool = chunkPool;
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.maximumSize = maximumSize;
+        this.limit = maximumSize;
+    }
+
+    /**
+     * Returns the chunk size.
+     * @return the chunk size in bytes.
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Release all chunks to the pool, and clear the buffer.
+     */
+    public void release() {
+        for (int i = 0; i < chunkCount; i++) {
+            if (chunkPool != null) {
+                chunkPool.release(chunks[i]);
+            }
+            chunks[i] = null;
+        }
+        chunkCount = 0;
+        clear();
+    }
+
+    private void ensureWritable(int askedSize) {
+        if (askedSize > limit) {
+            throw new EncodeBufferOverflowException("Required buffer capacity: " + askedSize +
+                    " bytes exceeds limit: " + limit + " bytes!");
+        }
+        ensureCapacity(askedSize);
+    }
+
+    private void ensureCapacity(int askedSize) {
+        if (askedSize > chunkCount << chunkShift) {
+            int newChunkCount = (askedSize + chunkMask) >>> chunkShift;
+            if (newChunkCount > chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, newChunkCount));
+            }
+            while (chunkCount < newChunkCount) {
+                chunks[chunkCount++] = newChunk();
+            }
+        }
+    }
+
+    private byte[] newChunk() {
+        if (chunkPool == null) {
+            return new byte[chunkSize];
+        }
+        byte[] chunk = chunkPool.get();
+        if (chunk.length < chunkSize) {
+            throw new IllegalArgumentException("Chunk from pool is smaller than the chunk size: " + chunk.length);
+        }
+        return chunk;
+    }
+
+    private void ensureReadable(int askedSize) {
+        if (askedSize > limit) {
+            throw new EncodeBufferUnderflowException("Required buffer capacity: " + askedSize +
+                    " bytes exceeds limit: " + limit + " bytes!");
+        }
+        ensureCapacity(askedSize);
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public ChunkedByteBuf position(int position) {
+        if (position > limit) {
+            throw new IllegalArgumentException("Cannot set position beyond limit");
+        }
+        this.position = position;
+        return this;
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public ChunkedByteBuf limit(int limit) {
+        if (limit < position) {
+            throw new IllegalArgumentException("Cannot set limit before position");
+        } else if (limit > maximumSize) {
+            throw new IllegalArgumentException("Cannot set limit beyond capacity");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public int capacity() {
+        return maximumSize;
+    }
+
+    @Override
+    public int allocation() {
+        return chunkCount << chunkShift;
+    }
+
+    @Override
+    public ChunkedByteBuf clear() {
+        position = 0;
+        limit = maximumSize;
+        return this;
+    }
+
+    @Override
+    public ChunkedByteBuf flip() {
+        limit = position;
+        position = 0;
+        return this;
+    }
+
+    @Override
+    public void shift(int position, int length, int distance) {
+        if (position + distance < 0) {
+            throw new IllegalArgumentException("Cannot shift left beyond 0");
+        } else if (position + distance + length > limit) {
+            throw new IllegalArgumentException("Cannot shift right beyond limit");
+        }
+        ensureCapacity(Math.max(position, position + distance) + length);
+        if (distance > 0) {
+            // copy backwards, since the ranges may overlap
+            int remaining = length;
+            while (remaining > 0) {
+                int srcEnd = position + remaining;
+                int dstEnd = srcEnd + distance;
+                int n = Math.min(remaining, Math.min(((srcEnd - 1) & chunkMask) + 1, ((dstEnd - 1) & chunkMask) + 1));
+                int src = srcEnd - n;
+                int dst = dstEnd - n;
+                System.arraycopy(chunks[src >>> chunkShift], src & chunkMask,
+                        chunks[dst >>> chunkShift], dst & chunkMask, n);
+                remaining -= n;
+            }
+        } else if (distance < 0) {
+            int done = 0;
+            while (done < length) {
+                int src = position + done;
+                int dst = src + distance;
+                int n = Math.min(length - done,
+                        Math.min(chunkSize - (src & chunkMask), chunkSize - (dst & chunkMask)));
+                System.arraycopy(chunks[src >>> chunkShift], src & chunkMask,
+                        chunks[dst >>> chunkShift], dst & chunkMask, n);
+                done += n;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureReadable(position + 1);
+        int pos = position++;
+        return 0xff & chunks[pos >>> chunkShift][pos & chunkMask];
+    }
+
+    @Override
+    public void read(byte[] b, int off, int len) throws IOException {
+        ensureReadable(position + len);
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - (position & chunkMask));
+            System.arraycopy(chunks[position >>> chunkShift], position & chunkMask, b, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void skip(int len) throws IOException {
+        ensureReadable(position + len);
+        position += len;
+    }
+
+    @Override
+    public String readStringUtf8(int len) throws IOException {
+        ensureReadable(position + len);
+        int off = position & chunkMask;
+        if (off + len <= chunkSize) {
+            String s = new String(chunks[position >>> chunkShift], off, len, UTF8);
+            position += len;
+            return s;
+        }
+        return ByteBuf.super.readStringUtf8(len);
+    }
+
+    @Override
+    public int readIntLE() throws IOException {
+        int off = position & chunkMask;
+        if (off + 4 > chunkSize || position + 4 > limit) {
+            return ByteBuf.super.readIntLE();
+        }
+        ensureReadable(position + 4);
+        byte[] data = chunks[position >>> chunkShift];
+        int v = (data[off] & 0xff) |
+                (data[off+1] & 0xff) << 8 |
+                (data[off+2] & 0xff) << 16 |
+                (data[off+3] & 0xff) << 24;
+        position += 4;
+        return v;
+    }
+
+    @Override
+    public long readLongLE() throws IOException {
+        int off = position & chunkMask;
+        if (off + 8 > chunkSize || position + 8 > limit) {
+            return ByteBuf.super.readLongLE();
+        }
+        ensureReadable(position + 8);
+        byte[] data = chunks[position >>> chunkShift];
+        long v = (data[off] & 0xffL) |
+                (data[off+1] & 0xffL) << 8 |
+                (data[off+2] & 0xffL) << 16 |
+                (data[off+3] & 0xffL) << 24 |
+                (data[off+4] & 0xffL) << 32 |
+                (data[off+5] & 0xffL) << 40 |
+                (data[off+6] & 0xffL) << 48 |
+                (data[off+7] & 0xffL) << 56;
+        position += 8;
+        return v;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureWritable(position + 1);
+        int pos = position++;
+        chunks[pos >>> chunkShift][pos & chunkMask] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureWritable(position + len);
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - (position & chunkMask));
+            System.arraycopy(b, off, chunks[position >>> chunkShift], position & chunkMask, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void writeIntLE(int v) throws IOException {
+        int off = position & chunkMask;
+        if (off + 4 > chunkSize) {
+            ByteBuf.super.writeIntLE(v);
+            return;
+        }
+        ensureWritable(position + 4);
+        byte[] data = chunks[position >>> chunkShift];
+        data[off] = (byte) v;
+        data[off+1] = (byte) (v >> 8);
+        data[off+2] = (byte) (v >> 16);
+        data[off+3] = (byte) (v >> 24);
+        position += 4;
+    }
+
+    @Override
+    public void writeLongLE(long v) throws IOException {
+        int off = position & chunkMask;
+        if (off + 8 > chunkSize) {
+            ByteBuf.super.writeLongLE(v);
+            return;
+        }
+        ensureWritable(position + 8);
+        byte[] data = chunks[position >>> chunkShift];
+        data[off] = (byte) v;
+        data[off+1] = (byte) (v >> 8);
+        data[off+2] = (byte) (v >> 16);
+        data[off+3] = (byte) (v >> 24);
+        data[off+4] = (byte) (v >> 32);
+        data[off+5] = (byte) (v >> 40);
+        data[off+6] = (byte) (v >> 48);
+        data[off+7] = (byte) (v >> 56);
+        position += 8;
+    }
+
+    /**
+     * Copy the content of this buffer to the specified byte sink.
+     * The data between position and limit are copied.
+     * @param out the byte sink to write to, not null.
+     * @throws IOException if data cannot be written to the byte sink.
+     */
+    public void copyTo(ByteSink out) throws IOException {
+        ensureCapacity(limit);
+        int pos = position;
+        while (pos < limit) {
+            int n = Math.min(limit - pos, chunkSize - (pos & chunkMask));
+            out.write(chunks[pos >>> chunkShift], pos & chunkMask, n);
+            pos += n;
+        }
+    }
+
+    /**
+     * Returns the content between position and limit as byte buffers, one per chunk,
+     * e.g. for a {@link java.nio.channels.GatheringByteChannel}.
+     * The byte buffers share the content of this buffer, but they have their own position and limit.
+     *
+     * @return the byte buffers, not null.
+     */
+    public ByteBuffer[] getByteBuffers() {
+        ensureCapacity(limit);
+        if (position == limit) {
+            return new ByteBuffer[0];
+        }
+        int first = position >>> chunkShift;
+        int last = (limit - 1) >>> chunkShift;
+        ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            int start = i == first ? position & chunkMask : 0;
+            int end = i == last ? ((limit - 1) & chunkMask) + 1 : chunkSize;
+            buffers[i - first] = ByteBuffer.wrap(chunks[i], start, end - start);
+        }
+        return buffers;
+    }
+
+    /**
+     * Returns the content as a single byte buffer, if it fits in one chunk.
+     *
+     * @return a byte buffer that shares the first chunk, not null.
+     * @throws UnsupportedOperationException if the buffer has more than one chunk.
+     * @see #getByteBuffers()
+     */
+    @Override
+    public ByteBuffer getByteBuffer() {
+        ensureCapacity(1);
+        if (chunkCount > 1) {
+            throw new UnsupportedOperationException("More than one chunk, use getByteBuffers()");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(chunks[0], 0, Math.min(limit, chunkSize));
+        buffer.position(Math.min(position, buffer.limit()));
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[pos=" + position + " lim=" + limit + " cap=" + maximumSize +
+                " chunks=" + chunkCount + "]";
+    }
+}
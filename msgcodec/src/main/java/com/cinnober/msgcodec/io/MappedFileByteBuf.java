@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ByteBuf backed by a memory mapped window of a file.
+ *
+ * <p>Files larger than 2 GB cannot be mapped into a single buffer. Instead a window of the file is mapped,
+ * and the position, limit and capacity of this byte buf are relative to the start of the current window.
+ * The window is moved forward explicitly with {@link #slide(int)}, which should be called between
+ * messages, since the decoders expect the position to be stable while decoding a message.
+ * The window must be large enough to hold the largest message.
+ *
+ * <p>Example, replay of a journal:
+ * <pre>
+ * try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+ *     MappedFileByteBuf buf = new MappedFileByteBuf(channel, FileChannel.MapMode.READ_ONLY, 64 * 1048576);
+ *     while (buf.slide(maxMessageSize)) {
+ *         Object msg = codec.decode(buf);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Unmapped windows are released when they are garbage collected.
+ *
+ * @author agent
+ */
+public class MappedFileByteBuf extends ByteBufferBuf {
+
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final int windowSize;
+    private long windowOffset;
+
+    /**
+     * Create a new mapped file byte buf, with the window at the start of the file.
+     *
+     * <p>In read only mode the window never extends beyond the end of the file.
+     * In read-write mode the window is always the window size, and the file grows when needed.
+     *
+     * @param channel the file channel, not null. The channel must be opened for reading,
+     * and writing too if the map mode is not read only. The channel is not closed by this byte buf.
+     * @param mode the map mode, not null.
+     * @param windowSize the size of the mapped window in bytes.
+     * @throws IOException if the file could not be mapped.
+     */
+    public MappedFileByteBuf(FileChannel channel, FileChannel.MapMode mode, int windowSize) throws IOException {
+        super(ByteBuffer.allocate(0));
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Illegal window size: " + windowSize);
+        }
+        this.channel = channel;
+        this.mode = mode;
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    /**
+     * Map a new window, starting at the specified file offset. The position is set to zero.
+     *
+     * @param fileOffset the file offset of the new window, not negative.
+     * @return this ByteBuf.
+     * @throws IOException if the file could not be mapped.
+     */
+    public MappedFileByteBuf map(long fileOffset) throws IOException {
+        if (fileOffset < 0) {
+            throw new IllegalArgumentException("Illegal file offset: " + fileOffset);
+        }
+        long size = windowSize;
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            size = Math.max(0, Math.min(size, channel.size() - fileOffset));
+        }
+        MappedByteBuffer buf = channel.map(mode, fileOffset, size);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        setByteBuffer(buf);
+        windowOffset = fileOffset;
+        return this;
+    }
+
+    /**
+     * Slide the window forward to the current position, if fewer than the specified number of bytes
+     * remain in the current window.
+     *
+     * @param minRemaining the minimum number of bytes that should remain in the window, e.g. the maximum
+     * message size. Must not be larger than the window size.
+     * @return true if there are any remaining bytes in the window (after sliding), otherwise false.
+     * @throws IOException if the file could not be mapped.
+     */
+    public boolean slide(int minRemaining) throws IOException {
+        ByteBuffer buf = getByteBuffer();
+        if (buf.remaining() < minRemaining) {
+            long filePosition = filePosition();
+            if (mode != FileChannel.MapMode.READ_ONLY || filePosition + buf.remaining() < channel.size()) {
+                map(filePosition);
+            }
+        }
+        return getByteBuffer().hasRemaining();
+    }
+
+    /**
+     * Returns the file offset of the current window.
+     * @return the file offset.
+     */
+    public long windowOffset() {
+        return windowOffset;
+    }
+
+    /**
+     * Returns the file offset of the current position.
+     * @return the file offset.
+     */
+    public long filePosition() {
+        return windowOffset + position();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "[offset=" + windowOffset +
+                " pos=" + position() + " lim=" + limit() + " cap=" + capacity() + "]";
+    }
+}
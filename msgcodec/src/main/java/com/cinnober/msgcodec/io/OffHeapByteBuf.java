@@ -0,0 +1,360 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.io;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * A ByteBuf backed by off-heap memory of a direct byte buffer, which is accessed by raw address arithmetic.
+ *
+ * <p>Compared to a {@link ByteBufferBuf} wrapping a direct byte buffer, the bounds are checked once per
+ * operation rather than once per byte, and 4 and 8 byte little endian integers are read and written
+ * as single memory accesses.
+ *
+ * <p>The position and limit of this byte buf are separate from the position and limit of
+ * the underlying byte buffer. See {@link #getByteBuffer()}.
+ *
+ * <p>This class relies on <code>sun.misc.Unsafe</code>. Use {@link #isSupported()} to check if it is
+ * available in the current JVM.
+ *
+ * @author agent
+ */
+public class OffHeapByteBuf implements ByteBuf {
+
+    /** The only reference to the Unsafe type, which javac warns about. */
+    private static final sun.misc.Unsafe UNSAFE = theUnsafe();
+    private static final long ADDRESS_OFFSET;
+    private static final long BYTE_ARRAY_OFFSET;
+    private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    static {
+        long addressOffset = -1;
+        long byteArrayOffset = -1;
+        if (UNSAFE != null) {
+            try {
+                addressOffset = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+                byteArrayOffset = UNSAFE.arrayBaseOffset(byte[].class);
+            } catch (Exception | LinkageError e) {
+                // not supported, see isSupported
+            }
+        }
+        ADDRESS_OFFSET = addressOffset;
+        BYTE_ARRAY_OFFSET = byteArrayOffset;
+    }
+
+    /**
+     * Look up the Unsafe instance reflectively, without naming its type.
+     *
+     * @return the Unsafe instance, or null if not available.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T theUnsafe() {
+        try {
+            Field f = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return (T) f.get(null);
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final long address;
+    private final int capacity;
+    private final char[] chars = new char[128];
+    private int position;
+    private int limit;
+
+    /**
+     * Returns true if off-heap byte bufs are supported in the current JVM.
+     * @return true if supported, otherwise false.
+     */
+    public static boolean isSupported() {
+        return UNSAFE != null && ADDRESS_OFFSET != -1;
+    }
+
+    /**
+     * Create a new off-heap byte buf, backed by a newly allocated direct byte buffer.
+     * @param capacity the capacity in bytes.
+     * @throws UnsupportedOperationException if off-heap byte bufs are not supported.
+     */
+    public OffHeapByteBuf(int capacity) {
+        this(ByteBuffer.allocateDirect(capacity));
+    }
+
+    /**
+     * Create a new off-heap byte buf, backed by the memory of the specified direct byte buffer.
+     * The position and limit are initialized from the byte buffer.
+     *
+     * @param buffer the direct byte buffer, not null.
+     * @throws IllegalArgumentException if the byte buffer is not direct.
+     * @throws ReadOnlyBufferException if the byte buffer is read-only.
+     * @throws UnsupportedOperationException if off-heap byte bufs are not supported.
+     */
+    public OffHeapByteBuf(ByteBuffer buffer) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("sun.misc.Unsafe is not available");
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Not a direct byte buffer");
+        }
+        if (buffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        this.buffer = buffer;
+        this.address = UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+        this.capacity = buffer.capacity();
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Returns the underlying direct byte buffer.
+     * The position and limit of the byte buffer are set to the position and limit of this byte buf.
+     *
+     * @return the underlying byte buffer, not null.
+     */
+    @Override
+    public ByteBuffer getByteBuffer() {
+        buffer.limit(limit).position(position);
+        return buffer;
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public ByteBuf position(int position) {
+        if (position < 0 || position > limit) {
+            throw new IllegalArgumentException("Illegal position: " + position);
+        }
+        this.position = position;
+        return this;
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public ByteBuf limit(int limit) {
+        if (limit < 0 || limit > capacity) {
+            throw new IllegalArgumentException("Illegal limit: " + limit);
+        }
+        this.limit = limit;
+        if (position > limit) {
+            position = limit;
+        }
+        return this;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int allocation() {
+        return capacity;
+    }
+
+    @Override
+    public ByteBuf clear() {
+        position = 0;
+        limit = capacity;
+        return this;
+    }
+
+    @Override
+    public ByteBuf flip() {
+        limit = position;
+        position = 0;
+        return this;
+    }
+
+    @Override
+    public void shift(int position, int length, int distance) {
+        if (position < 0 || length < 0 || position + length > limit) {
+            throw new IllegalArgumentException("Cannot shift outside of limit");
+        } else if (position + distance < 0) {
+            throw new IllegalArgumentException("Cannot shift left beyond 0");
+        } else if (position + distance + length > limit) {
+            throw new IllegalArgumentException("Cannot shift right beyond limit");
+        }
+        ByteBuffers.copy(buffer, position, buffer, position+distance, length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= limit) {
+            throw new IOException("Buffer underflow");
+        }
+        return UNSAFE.getByte(address + position++) & 0xff;
+    }
+
+    @Override
+    public void read(byte[] b, int off, int len) throws IOException {
+        if (len > limit - position) {
+            throw new IOException("Buffer underflow");
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        UNSAFE.copyMemory(null, address + position, b, BYTE_ARRAY_OFFSET + off, len);
+        position += len;
+    }
+
+    @Override
+    public void read(byte[] b) throws IOException {
+        read(b, 0, b.length);
+    }
+
+    @Override
+    public void skip(int len) throws IOException {
+        if (len < 0) {
+            throw new IllegalArgumentException("Negative length: " + len);
+        }
+        if (len > limit - position) {
+            throw new IOException("Buffer underflow");
+        }
+        position += len;
+    }
+
+    @Override
+    public String readStringUtf8(int len) throws IOException {
+        if (len < 0) {
+            throw new IllegalArgumentException("Negative length: " + len);
+        }
+        if (len > limit - position) {
+            throw new IOException("Buffer underflow");
+        }
+        if (len < 128) {
+            final long start = address + position;
+            boolean ascii = true;
+            for (int i=0; i<len; i++) {
+                byte b = UNSAFE.getByte(start + i);
+                if (b < 0) {
+                    ascii = false;
+                    break;
+                }
+                chars[i] = (char) b;
+            }
+            if (ascii) {
+                position += len;
+                return new String(chars, 0, len);
+            }
+        }
+        byte[] data = new byte[len];
+        read(data, 0, len);
+        return new String(data, UTF8);
+    }
+
+    @Override
+    public int readIntLE() throws IOException {
+        if (4 > limit - position) {
+            throw new IOException("Buffer underflow");
+        }
+        int v = UNSAFE.getInt(address + position);
+        position += 4;
+        return NATIVE_LITTLE_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+
+    @Override
+    public long readLongLE() throws IOException {
+        if (8 > limit - position) {
+            throw new IOException("Buffer underflow");
+        }
+        long v = UNSAFE.getLong(address + position);
+        position += 8;
+        return NATIVE_LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position >= limit) {
+            throw new IOException("Buffer overflow");
+        }
+        UNSAFE.putByte(address + position++, (byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > limit - position) {
+            throw new IOException("Buffer overflow");
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        UNSAFE.copyMemory(b, BYTE_ARRAY_OFFSET + off, null, address + position, len);
+        position += len;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void writeIntLE(int v) throws IOException {
+        if (4 > limit - position) {
+            throw new IOException("Buffer overflow");
+        }
+        UNSAFE.putInt(address + position, NATIVE_LITTLE_ENDIAN ? v : Integer.reverseBytes(v));
+        position += 4;
+    }
+
+    @Override
+    public void writeLongLE(long v) throws IOException {
+        if (8 > limit - position) {
+            throw new IOException("Buffer overflow");
+        }
+        UNSAFE.putLong(address + position, NATIVE_LITTLE_ENDIAN ? v : Long.reverseBytes(v));
+        position += 8;
+    }
+
+    @Override
+    public void pad(int n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative length: " + n);
+        }
+        if (n > limit - position) {
+            throw new IOException("Buffer overflow");
+        }
+        UNSAFE.setMemory(address + position, n, (byte) 0);
+        position += n;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "[pos=" + position + " lim=" + limit + " cap=" + capacity + "]";
+    }
+}
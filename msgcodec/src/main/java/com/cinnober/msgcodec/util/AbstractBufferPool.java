@@ -0,0 +1,347 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base class of lock free buffer pools, with power of two size classes.
+ *
+ * <p>Each size class has a shared magazine of buffers, and optionally a small cache per thread.
+ * Buffers are taken from (and released to) the cache of the current thread first, and then the shared magazine.
+ * The shared magazine is a bounded ring buffer, where the head and tail are claimed with compare-and-set,
+ * i.e. no locks are taken and no slots are scanned.
+ * When the pool is empty a new buffer is allocated, and when the pool is full a released buffer is discarded.
+ * The pool never blocks.
+ *
+ * <p>Note that buffers in a thread cache are kept until the thread dies, and are not bounded by the pool
+ * capacity. With many threads, e.g. a thread per connection, the thread cache should be small or disabled.
+ *
+ * <p>The pool keeps statistics, which can be used to tune the pool capacity and to find buffer leaks.
+ *
+ * @author agent
+ * @param <T> the type of the buffers.
+ */
+public abstract class AbstractBufferPool<T> implements Pool<T> {
+
+    /** The number of size classes, for buffer sizes 2^0 to 2^30 bytes. */
+    private static final int SIZE_CLASSES = 31;
+
+    private final int bufferSize;
+    private final int threadCacheSize;
+    private final Magazine[] magazines;
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+
+    private final LongAdder threadCacheHits = new LongAdder();
+    private final LongAdder magazineHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * Create a new buffer pool.
+     *
+     * @param bufferSize the default buffer size, see {@link #get()}. Rounded up to a power of two.
+     * @param poolCapacity the number of buffers kept in the shared magazine, per size class.
+     * @param threadCacheSize the number of buffers kept per thread, per size class, or 0 for no thread cache.
+     */
+    protected AbstractBufferPool(int bufferSize, int poolCapacity, int threadCacheSize) {
+        if (bufferSize <= 0 || bufferSize > 1 << (SIZE_CLASSES - 1)) {
+            throw new IllegalArgumentException("Illegal buffer size: " + bufferSize);
+        }
+        if (poolCapacity < 0 || threadCacheSize < 0) {
+            throw new IllegalArgumentException("Illegal capacity");
+        }
+        this.bufferSize = 1 << sizeClass(bufferSize);
+        this.threadCacheSize = threadCacheSize;
+        this.magazines = new Magazine[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            magazines[i] = new Magazine(poolCapacity);
+        }
+    }
+
+    /**
+     * Allocate a new buffer.
+     *
+     * @param size the size of the buffer.
+     * @return the new buffer, not null.
+     */
+    protected abstract T allocate(int size);
+
+    /**
+     * Returns the size of a buffer.
+     *
+     * @param buffer the buffer, not null.
+     * @return the size of the buffer.
+     */
+    protected abstract int sizeOf(T buffer);
+
+    /**
+     * Prepare a released buffer for reuse. The default implementation does nothing.
+     *
+     * @param buffer the buffer, not null.
+     */
+    protected void reset(T buffer) {
+    }
+
+    /**
+     * Returns the default buffer size, a power of two.
+     *
+     * @return the default buffer size.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get a pooled buffer of the default size.
+     *
+     * @return the buffer, not null.
+     */
+    @Override
+    public T get() {
+        return get(bufferSize);
+    }
+
+    /**
+     * Get a pooled buffer of at least the specified size.
+     * The size of the returned buffer is the smallest power of two that is not smaller than the requested size.
+     *
+     * @param minSize the minimum size of the buffer.
+     * @return the buffer, not null.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int minSize) {
+        if (minSize > 1 << (SIZE_CLASSES - 1)) {
+            throw new IllegalArgumentException("Illegal buffer size: " + minSize);
+        }
+        int sizeClass = sizeClass(minSize);
+        T buffer;
+        if (threadCacheSize > 0) {
+            buffer = threadCaches.get().poll(sizeClass);
+            if (buffer != null) {
+                threadCacheHits.increment();
+                return buffer;
+            }
+        }
+        buffer = (T) magazines[sizeClass].poll();
+        if (buffer != null) {
+            magazineHits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return allocate(1 << sizeClass);
+    }
+
+    /**
+     * Release a buffer to the pool. Buffers that do not have a power of two size are discarded.
+     *
+     * @param buffer the buffer, not null.
+     */
+    @Override
+    public void release(T buffer) {
+        releases.increment();
+        int size = sizeOf(buffer);
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            discards.increment();
+            return;
+        }
+        reset(buffer);
+        int sizeClass = sizeClass(size);
+        if (threadCacheSize > 0 && threadCaches.get().offer(sizeClass, buffer)) {
+            return;
+        }
+        if (!magazines[sizeClass].offer(buffer)) {
+            discards.increment();
+        }
+    }
+
+    /**
+     * Returns the number of buffers taken from the cache of the current thread, or the shared magazine.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return threadCacheHits.sum() + magazineHits.sum();
+    }
+
+    /**
+     * Returns the number of buffers taken from the cache of the current thread.
+     *
+     * @return the number of thread cache hits.
+     */
+    public long getThreadCacheHitCount() {
+        return threadCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of requests when the pool was empty, which is also the number of allocated buffers.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of released buffers that were discarded, since the pool was full.
+     *
+     * @return the number of discarded buffers.
+     */
+    public long getDiscardCount() {
+        return discards.sum();
+    }
+
+    /**
+     * Returns the number of buffers that have been taken from the pool, but not released.
+     * A number that keeps growing indicates a buffer leak.
+     *
+     * @return the number of outstanding (possibly leaked) buffers.
+     */
+    public long getOutstandingCount() {
+        return threadCacheHits.sum() + magazineHits.sum() + misses.sum() - releases.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[bufferSize=" + bufferSize + " hits=" + getHitCount() +
+                " misses=" + getMissCount() + " discards=" + getDiscardCount() +
+                " outstanding=" + getOutstandingCount() + "]";
+    }
+
+    /**
+     * Returns the size class of the specified size, i.e. the smallest n such that 2^n &gt;= size.
+     */
+    private static int sizeClass(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Bounded multi-producer multi-consumer ring of buffers, for one size class.
+     *
+     * <p>Each slot has a sequence number that tells whether the slot is ready to be written or read for the
+     * current lap. For position <code>pos</code> the slot is ready to be written when the sequence number is
+     * <code>2*pos</code> and ready to be read when it is <code>2*pos+1</code>. A producer (consumer) claims the tail (head) with compare-and-set, and then writes (reads)
+     * the slot and advances its sequence number. A slot that has been claimed but not yet written (read) looks
+     * full (empty), in which case the buffer is discarded (allocated) instead of waiting.
+     */
+    private static final class Magazine {
+        private final int capacity;
+        private final AtomicReferenceArray<Object> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        Magazine(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, 2L * i);
+            }
+        }
+
+        Object poll() {
+            if (capacity == 0) {
+                return null;
+            }
+            long pos = head.get();
+            for (;;) {
+                int index = (int) (pos % capacity);
+                long diff = sequences.get(index) - (2 * pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        Object buffer = slots.get(index);
+                        slots.lazySet(index, null);
+                        sequences.set(index, 2 * (pos + capacity));
+                        return buffer;
+                    }
+                } else if (diff < 0) {
+                    return null; // empty
+                }
+                pos = head.get();
+            }
+        }
+
+        boolean offer(Object buffer) {
+            if (capacity == 0) {
+                return false;
+            }
+            long pos = tail.get();
+            for (;;) {
+                int index = (int) (pos % capacity);
+                long diff = sequences.get(index) - 2 * pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots.lazySet(index, buffer);
+                        sequences.set(index, 2 * pos + 1);
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    return false; // full
+                }
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Cache of buffers for one thread. One small stack per size class, allocated on demand.
+     */
+    private class ThreadCache {
+        private final Object[][] stacks = new Object[SIZE_CLASSES][];
+        private final int[] sizes = new int[SIZE_CLASSES];
+
+        @SuppressWarnings("unchecked")
+        T poll(int sizeClass) {
+            int n = sizes[sizeClass];
+            if (n == 0) {
+                return null;
+            }
+            Object[] stack = stacks[sizeClass];
+            sizes[sizeClass] = --n;
+            T buffer = (T) stack[n];
+            stack[n] = null;
+            return buffer;
+        }
+
+        boolean offer(int sizeClass, T buffer) {
+            int n = sizes[sizeClass];
+            if (n == threadCacheSize) {
+                return false;
+            }
+            Object[] stack = stacks[sizeClass];
+            if (stack == null) {
+                stack = stacks[sizeClass] = new Object[threadCacheSize];
+            }
+            stack[n] = buffer;
+            sizes[sizeClass] = n + 1;
+            return true;
+        }
+    }
+}
@@ -29,10 +29,10 @@ import java.util.concurrent.BlockingQueue;
 /**
  * Concurrent buffer pool. 
  * The pool has a capacity, but when that is exceeded new buffers are created on demand.
- * The pool never blocks.
+ * The pool never blocks, but each get and release takes the lock of the queue.
  * 
  * @author mikael.brannstrom
- *
+ * @see LockFreeBufferPool
  */
 public class ConcurrentBufferPool implements Pool<byte[]> {
     
@@ -0,0 +1,326 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.util;
+
+import com.cinnober.msgcodec.MsgCodec;
+import com.cinnober.msgcodec.io.ByteBufferBuf;
+import com.cinnober.msgcodec.io.ReallocatingByteBuf;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder of groups to a gathering byte channel, e.g. a socket channel, which writes many groups at once.
+ *
+ * <p>Groups are encoded in place into pooled byte buffers (preferably direct). When a buffer is full the next
+ * group is encoded into a new buffer from the pool. The filled buffers are written
+ * with a single {@link GatheringByteChannel#write(ByteBuffer[], int, int)} when flushed, and then released
+ * to the pool. A group that is larger than a pooled buffer is encoded into a separate buffer that
+ * is allocated for that group only.
+ *
+ * <p>The buffers are flushed:
+ * <ul>
+ * <li>explicitly by {@link #flush()},</li>
+ * <li>when the number of pending bytes reaches the flush size, if any,</li>
+ * <li>when the oldest pending group has waited for the flush delay, if any.
+ * The delay is checked when a group is encoded, and by {@link #flushIfDue()},
+ * which should be called periodically by e.g. the event loop.</li>
+ * </ul>
+ *
+ * <p>Partial writes are tracked, which makes this usable with non-blocking channels. The data that was not
+ * written is kept until the next flush. See {@link #isWritePending()}.
+ *
+ * <p>Example usage:
+ * <pre>
+ * Pool&lt;ByteBuffer&gt; bufferPool = ...; // pool of cleared 64 kB buffers
+ * GatheringChannelEncoder encoder = new GatheringChannelEncoder(codec, channel,
+ *     bufferPool, 64, 256 * 1024, 1, TimeUnit.MILLISECONDS);
+ * for (Object group : groups) {
+ *     encoder.encode(group);
+ * }
+ * encoder.flush();
+ * </pre>
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author agent
+ */
+public class GatheringChannelEncoder implements Closeable {
+
+    private final MsgCodec codec;
+    private final GatheringByteChannel channel;
+    private final Pool<ByteBuffer> bufferPool;
+    private final int flushSize;
+    private final long flushDelayNanos;
+
+    /**
+     * Buffers that are ready to be written (flipped). The buffers in [head, tail) contain unwritten data.
+     */
+    private final ByteBuffer[] buffers;
+    /** True for each buffer in buffers that should be released to the pool. */
+    private final boolean[] pooled;
+    private int head;
+    private int tail;
+
+    /** The buffer currently encoded into, or null. */
+    private ByteBuffer current;
+    private ByteBufferBuf currentBuf;
+
+    private long pendingBytes;
+    /** The time (System.nanoTime) when the oldest pending group was encoded. */
+    private long pendingSince;
+
+    /**
+     * Create a new encoder, which is only flushed explicitly.
+     *
+     * @param codec the codec, not null.
+     * @param channel the channel to write to, not null.
+     * @param bufferPool the pool of cleared buffers to encode into, not null.
+     * @param maxBuffers the maximum number of buffers that can be pending.
+     */
+    public GatheringChannelEncoder(MsgCodec codec, GatheringByteChannel channel, Pool<ByteBuffer> bufferPool,
+            int maxBuffers) {
+        this(codec, channel, bufferPool, maxBuffers, -1, -1, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Create a new encoder.
+     *
+     * @param codec the codec, not null.
+     * @param channel the channel to write to, not null.
+     * @param bufferPool the pool of cleared buffers to encode into, not null.
+     * @param maxBuffers the maximum number of buffers that can be pending.
+     * @param flushSize the number of pending bytes that triggers a flush, or -1 for no limit.
+     * @param flushDelay the maximum time a group is pending before a flush, or -1 for no limit.
+     * @param flushDelayUnit the time unit of the flush delay, not null.
+     */
+    public GatheringChannelEncoder(MsgCodec codec, GatheringByteChannel channel, Pool<ByteBuffer> bufferPool,
+            int maxBuffers, int flushSize, long flushDelay, TimeUnit flushDelayUnit) {
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("Illegal max buffers: " + maxBuffers);
+        }
+        this.codec = codec;
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.flushSize = flushSize;
+        this.flushDelayNanos = flushDelay < 0 ? -1 : flushDelayUnit.toNanos(flushDelay);
+        this.buffers = new ByteBuffer[maxBuffers];
+        this.pooled = new boolean[maxBuffers];
+    }
+
+    /**
+     * Returns the number of bytes that have been encoded but not yet written to the channel.
+     *
+     * @return the number of pending bytes.
+     */
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Returns true if there is data that has not been written to the channel yet.
+     * For a non-blocking channel this means that {@link #flush()} should be called when the channel
+     * is writable again.
+     *
+     * @return true if there is pending data, otherwise false.
+     */
+    public boolean isWritePending() {
+        return pendingBytes != 0;
+    }
+
+    /**
+     * Encode a group. The group may be written to the channel, according to the flush policy.
+     *
+     * @param group the group to encode, not null.
+     * @throws IOException if the channel throws an exception,
+     * or if all buffers are pending and the channel does not accept more data.
+     * @throws IllegalArgumentException if the group could not be encoded.
+     */
+    public void encode(Object group) throws IOException {
+        if (current == null) {
+            nextBuffer();
+        }
+        int start = current.position();
+        int size;
+        try {
+            codec.encode(group, currentBuf);
+            size = current.position() - start;
+        } catch (IOException e) {
+            // the buffer is full, since ByteBufferBuf reports buffer overflow as IOException
+            current.position(start);
+            if (start != 0) {
+                nextBuffer();
+                encode(group);
+                return;
+            }
+            size = encodeLarge(group);
+        } catch (RuntimeException e) {
+            // the group is not correct, discard any partially encoded data
+            current.position(start);
+            throw e;
+        }
+        if (pendingBytes == 0) {
+            pendingSince = System.nanoTime();
+        }
+        pendingBytes += size;
+
+        if (flushSize >= 0 && pendingBytes >= flushSize) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    /**
+     * Encode a group that does not fit in an empty pooled buffer into a buffer of its own.
+     */
+    private int encodeLarge(Object group) throws IOException {
+        ReallocatingByteBuf buf = new ReallocatingByteBuf(current.capacity() * 2, Integer.MAX_VALUE,
+                ByteBuffer::allocateDirect);
+        codec.encode(group, buf);
+        ByteBuffer buffer = buf.getByteBuffer();
+        buffer.flip();
+        // the current buffer is empty, so the order of the pending data is kept
+        addBuffer(buffer, false);
+        return buffer.remaining();
+    }
+
+    /**
+     * Flush the pending buffers if the oldest pending group has waited for the flush delay.
+     *
+     * @return true if all pending data has been written, otherwise false.
+     * @throws IOException if the channel throws an exception.
+     */
+    public boolean flushIfDue() throws IOException {
+        if (pendingBytes != 0 && flushDelayNanos >= 0 && System.nanoTime() - pendingSince >= flushDelayNanos) {
+            return flush();
+        }
+        return pendingBytes == 0;
+    }
+
+    /**
+     * Write the pending buffers to the channel.
+     *
+     * <p>A non-blocking channel may accept only part of the data. The rest is kept until the next flush.
+     *
+     * @return true if all pending data has been written, otherwise false.
+     * @throws IOException if the channel throws an exception.
+     */
+    public boolean flush() throws IOException {
+        releaseCurrent();
+        while (head < tail) {
+            long written = channel.write(buffers, head, tail - head);
+            pendingBytes -= written;
+            while (head < tail && !buffers[head].hasRemaining()) {
+                if (pooled[head]) {
+                    bufferPool.release(buffers[head]);
+                }
+                buffers[head++] = null;
+            }
+            if (written == 0) {
+                break;
+            }
+        }
+        if (head == tail) {
+            head = tail = 0;
+            return true;
+        } else {
+            pendingSince = System.nanoTime();
+            return false;
+        }
+    }
+
+    /**
+     * Release all buffers to the pool. Pending data is discarded.
+     */
+    @Override
+    public void close() {
+        if (current != null) {
+            bufferPool.release(current);
+            current = null;
+            currentBuf = null;
+        }
+        for (int i = head; i < tail; i++) {
+            if (pooled[i]) {
+                bufferPool.release(buffers[i]);
+            }
+            buffers[i] = null;
+        }
+        head = tail = 0;
+        pendingBytes = 0;
+    }
+
+    /**
+     * Add the current buffer (if any data) to the pending buffers, and get a new buffer from the pool.
+     */
+    private void nextBuffer() throws IOException {
+        releaseCurrent();
+        current = bufferPool.get();
+        currentBuf = new ByteBufferBuf(current);
+    }
+
+    /**
+     * Add the current buffer to the pending buffers, or release it to the pool if it is empty.
+     */
+    private void releaseCurrent() throws IOException {
+        if (current == null) {
+            return;
+        }
+        ByteBuffer buffer = current;
+        current = null;
+        currentBuf = null;
+        if (buffer.position() == 0) {
+            bufferPool.release(buffer);
+        } else {
+            buffer.flip();
+            addBuffer(buffer, true);
+        }
+    }
+
+    private void addBuffer(ByteBuffer buffer, boolean isPooled) throws IOException {
+        if (tail == buffers.length) {
+            flush();
+        }
+        if (tail == buffers.length) {
+            if (head == 0) {
+                throw new IOException("All " + buffers.length +
+                        " buffers are pending. The channel does not accept more data.");
+            }
+            int length = tail - head;
+            System.arraycopy(buffers, head, buffers, 0, length);
+            System.arraycopy(pooled, head, pooled, 0, length);
+            for (int i = length; i < tail; i++) {
+                buffers[i] = null;
+            }
+            head = 0;
+            tail = length;
+        }
+        buffers[tail] = buffer;
+        pooled[tail] = isPooled;
+        tail++;
+    }
+}
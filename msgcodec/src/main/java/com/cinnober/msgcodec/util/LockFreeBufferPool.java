@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.util;
+
+/**
+ * Lock free pool of byte arrays, with power of two size classes and an optional cache per thread.
+ *
+ * @author agent
+ * @see AbstractBufferPool
+ */
+public class LockFreeBufferPool extends AbstractBufferPool<byte[]> {
+
+    /**
+     * Create a new buffer pool, without a thread cache.
+     *
+     * @param bufferSize the default buffer size. Rounded up to a power of two.
+     * @param poolCapacity the number of buffers kept in the shared magazine, per size class.
+     */
+    public LockFreeBufferPool(int bufferSize, int poolCapacity) {
+        this(bufferSize, poolCapacity, 0);
+    }
+
+    /**
+     * Create a new buffer pool.
+     *
+     * @param bufferSize the default buffer size. Rounded up to a power of two.
+     * @param poolCapacity the number of buffers kept in the shared magazine, per size class.
+     * @param threadCacheSize the number of buffers kept per thread, per size class, or 0 for no thread cache.
+     * Buffers in a thread cache are kept until the thread dies.
+     */
+    public LockFreeBufferPool(int bufferSize, int poolCapacity, int threadCacheSize) {
+        super(bufferSize, poolCapacity, threadCacheSize);
+    }
+
+    @Override
+    protected byte[] allocate(int size) {
+        return new byte[size];
+    }
+
+    @Override
+    protected int sizeOf(byte[] buffer) {
+        return buffer.length;
+    }
+}
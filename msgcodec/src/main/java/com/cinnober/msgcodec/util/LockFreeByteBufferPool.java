@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lock free pool of byte buffers, with power of two size classes and an optional cache per thread.
+ * Buffers are cleared when they are released.
+ *
+ * @author agent
+ * @see AbstractBufferPool
+ */
+public class LockFreeByteBufferPool extends AbstractBufferPool<ByteBuffer> {
+
+    private final boolean direct;
+
+    /**
+     * Create a new pool of direct buffers, without a thread cache.
+     *
+     * @param bufferSize the default buffer size. Rounded up to a power of two.
+     * @param poolCapacity the number of buffers kept in the shared magazine, per size class.
+     */
+    public LockFreeByteBufferPool(int bufferSize, int poolCapacity) {
+        this(bufferSize, poolCapacity, 0, true);
+    }
+
+    /**
+     * Create a new buffer pool.
+     *
+     * @param bufferSize the default buffer size. Rounded up to a power of two.
+     * @param poolCapacity the number of buffers kept in the shared magazine, per size class.
+     * @param threadCacheSize the number of buffers kept per thread, per size class, or 0 for no thread cache.
+     * Buffers in a thread cache are kept until the thread dies.
+     * @param direct true if direct buffers should be allocated, false for heap buffers.
+     */
+    public LockFreeByteBufferPool(int bufferSize, int poolCapacity, int threadCacheSize, boolean direct) {
+        super(bufferSize, poolCapacity, threadCacheSize);
+        this.direct = direct;
+    }
+
+    @Override
+    protected ByteBuffer allocate(int size) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    @Override
+    protected int sizeOf(ByteBuffer buffer) {
+        return buffer.capacity();
+    }
+
+    @Override
+    protected void reset(ByteBuffer buffer) {
+        buffer.clear();
+    }
+}
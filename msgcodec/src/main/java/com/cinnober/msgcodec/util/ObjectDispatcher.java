@@ -23,12 +23,16 @@
  */
 package com.cinnober.msgcodec.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Level;
@@ -38,7 +42,8 @@ import java.util.regex.Pattern;
 /**
  * An object dispatcher can dispatch objects based on their types to methods in a list of delegates.
  *
- * <p>The dispatcher has a single entry point, {@link #dispatch(Object...)}. The dispatcher will delegate
+ * <p>The dispatcher has a single entry point, {@link #dispatch(Object...)}, with fixed arity variants
+ * for one to three parameters that do not allocate. The dispatcher will delegate
  * the call to the most specific method in one of the delegates. The delegates should declare methods
  * with one parameter, which will be matched against the object type, and optionally a return value.
  * The name of the methods must match the specified pattern.
@@ -76,6 +81,9 @@ import java.util.regex.Pattern;
  *
  * <p>If several delegates are registered with the same object type the first registered will be called.
  *
+ * <p>The dispatcher is thread safe and lock free. The target of each object type is cached in a {@link ClassValue},
+ * and the target methods are called through method handles.
+ *
  * <p><b>Example 2:</b> You have the following delegates:
  * <pre>
  * class MyService1 {
@@ -104,11 +112,34 @@ import java.util.regex.Pattern;
 public class ObjectDispatcher {
     private static final Logger log = Logger.getLogger(ObjectDispatcher.class.getName());
 
-    private static final Pattern DEFAULT_PATTERN = Pattern.compile("((on)|(process)|(handle)|(do))([A-Z0-9_].*)?");
+    /**
+     * The default pattern of method names, i.e. "on", "process", "handle" or "do", optionally followed by
+     * an upper case letter, digit or underscore and then anything. For example "onPing" or "handle".
+     */
+    public static final Pattern DEFAULT_PATTERN = Pattern.compile("((on)|(process)|(handle)|(do))([A-Z0-9_].*)?");
 
+    /** Marker for object types without a target. */
+    private static final Target NO_TARGET = new Target();
+
+    /** The declared targets, by the type of the first parameter. Not modified after construction. */
     private final Map<Class<?>, Target> targets;
     private final Class<?>[] methodSignature;
     private final SuperTypeTraverser superTypeTraverser;
+    private final ClassValue<Target> targetsByType = new ClassValue<Target>() {
+        @Override
+        protected Target computeValue(Class<?> type) {
+            Target target = targets.get(type);
+            if (target == null) {
+                for (Class<?> superType : superTypeTraverser.getSuperTypes(type)) {
+                    target = targets.get(superType);
+                    if (target != null) {
+                        break;
+                    }
+                }
+            }
+            return target != null ? target : NO_TARGET;
+        }
+    };
 
     /**
      * Create an object dispatcher using the specified delegates.
@@ -176,16 +207,17 @@ public class ObjectDispatcher {
             Class<?>[] methodSignature,
             Pattern methodPattern,
             SuperTypeTraverser superTypeTraverser) {
-        this.targets = new HashMap<>(16, 0.5f);
         this.methodSignature = Objects.requireNonNull(methodSignature);
         this.superTypeTraverser = Objects.requireNonNull(superTypeTraverser);
 
+        Map<Class<?>, Target> declaredTargets = new LinkedHashMap<>();
         for (Object delegate : delegates) {
-            addDelegate(delegate, methodPattern);
+            addDelegate(declaredTargets, delegate, methodPattern);
         }
+        this.targets = Collections.unmodifiableMap(declaredTargets);
     }
 
-    private void addDelegate(Object delegate, Pattern methodPattern) {
+    private void addDelegate(Map<Class<?>, Target> targets, Object delegate, Pattern methodPattern) {
         METHODS: for (Method method : delegate.getClass().getMethods()) {
             if (Modifier.isStatic(method.getModifiers())) {
                 continue;
@@ -206,9 +238,8 @@ public class ObjectDispatcher {
                 }
             }
 
-            Target target = new Target(method, delegate);
             if (!targets.containsKey(targetType)) {
-                targets.put(targetType, target);
+                targets.put(targetType, new Target(method, delegate));
             } else {
                 log.log(Level.FINE, "Duplicate dispatch method for class {0}", targetType);
             }
@@ -227,13 +258,100 @@ public class ObjectDispatcher {
      */
     public Object dispatch(Object... params)
             throws IllegalArgumentException, InvocationTargetException, NoSuchMethodException {
-        if (params.length != 1 + methodSignature.length) {
-            throw new IllegalArgumentException("Expected " + methodSignature.length + " parameters");
+        checkParamCount(params.length);
+        switch (params.length) {
+            case 1:
+                return dispatch(params[0]);
+            case 2:
+                return dispatch(params[0], params[1]);
+            case 3:
+                return dispatch(params[0], params[1], params[2]);
+            default:
+                Target target = findTarget(params[0].getClass());
+                for (int i = 1; i < params.length; i++) {
+                    target.checkParam(i, params[i]);
+                }
+                try {
+                    return target.handle.invokeWithArguments(params);
+                } catch (Throwable e) {
+                    throw new InvocationTargetException(e);
+                }
         }
+    }
 
-        Class<?> type = params[0].getClass();
-        Target target = findTarget(type);
-        return target.process(params);
+    /**
+     * Dispatch the object to any of the delegates.
+     * The dispatcher must have been created without any additional parameters in the method signature.
+     *
+     * @param obj the object to dispatch, not null.
+     * @return the return value, or null if no return value.
+     * @throws NoSuchMethodException if no delegate could handle the object type
+     * @throws InvocationTargetException if the delegate throwed an exception
+     * @throws IllegalArgumentException if the parameters does not match the required method signature.
+     */
+    public Object dispatch(Object obj)
+            throws IllegalArgumentException, InvocationTargetException, NoSuchMethodException {
+        checkParamCount(1);
+        Target target = findTarget(obj.getClass());
+        try {
+            return target.handle.invokeExact(obj);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Dispatch the object to any of the delegates.
+     * The dispatcher must have been created with one additional parameter in the method signature.
+     *
+     * @param obj the object to dispatch, not null.
+     * @param param2 the second parameter.
+     * @return the return value, or null if no return value.
+     * @throws NoSuchMethodException if no delegate could handle the object type
+     * @throws InvocationTargetException if the delegate throwed an exception
+     * @throws IllegalArgumentException if the parameters does not match the required method signature.
+     */
+    public Object dispatch(Object obj, Object param2)
+            throws IllegalArgumentException, InvocationTargetException, NoSuchMethodException {
+        checkParamCount(2);
+        Target target = findTarget(obj.getClass());
+        target.checkParam(1, param2);
+        try {
+            return target.handle.invokeExact(obj, param2);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Dispatch the object to any of the delegates.
+     * The dispatcher must have been created with two additional parameters in the method signature.
+     *
+     * @param obj the object to dispatch, not null.
+     * @param param2 the second parameter.
+     * @param param3 the third parameter.
+     * @return the return value, or null if no return value.
+     * @throws NoSuchMethodException if no delegate could handle the object type
+     * @throws InvocationTargetException if the delegate throwed an exception
+     * @throws IllegalArgumentException if the parameters does not match the required method signature.
+     */
+    public Object dispatch(Object obj, Object param2, Object param3)
+            throws IllegalArgumentException, InvocationTargetException, NoSuchMethodException {
+        checkParamCount(3);
+        Target target = findTarget(obj.getClass());
+        target.checkParam(1, param2);
+        target.checkParam(2, param3);
+        try {
+            return target.handle.invokeExact(obj, param2, param3);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private void checkParamCount(int paramCount) {
+        if (paramCount != 1 + methodSignature.length) {
+            throw new IllegalArgumentException("Expected " + methodSignature.length + " parameters");
+        }
     }
 
     /**
@@ -254,37 +372,38 @@ public class ObjectDispatcher {
      * @throws NoSuchMethodException if no target was found.
      */
     private Target findTarget(Class<?> type) throws NoSuchMethodException {
-        synchronized (targets) {
-            Target target = targets.get(type);
-            if (target == null) {
-                for (Class<?> superType : superTypeTraverser.getSuperTypes(type)) {
-                    target = targets.get(superType);
-                    if (target != null) {
-                        targets.put(type, target);
-                        break;
-                    }
-                }
-                if (target == null) {
-                    StringBuilder str = new StringBuilder();
-                    str.append("Unhandled type " + type);
-                    str.append("\n");
-                    str.append("Available targets:");
-                    str.append("\n");
-                    for (Map.Entry<Class<?>, Target> entry : targets.entrySet()) {
-                        str.append("    ");
-                        str.append(entry.getValue().toString());
-                        str.append("\n");
-                    }
-                    throw new NoSuchMethodException(str.toString());
-                }
+        Target target = targetsByType.get(type);
+        if (target == NO_TARGET) {
+            StringBuilder str = new StringBuilder();
+            str.append("Unhandled type " + type);
+            str.append("\n");
+            str.append("Available targets:");
+            str.append("\n");
+            for (Map.Entry<Class<?>, Target> entry : targets.entrySet()) {
+                str.append("    ");
+                str.append(entry.getValue().toString());
+                str.append("\n");
             }
-            return target;
+            throw new NoSuchMethodException(str.toString());
         }
+        return target;
     }
 
     private static class Target {
         private final Method method;
-        private final Object instance;
+        /** The method bound to the delegate, with all parameters and the return value as Object. */
+        private final MethodHandle handle;
+        /** The parameter types, where primitives are replaced by their wrapper types. */
+        private final Class<?>[] parameterTypes;
+        private final boolean[] primitiveParameters;
+
+        /** Create the NO_TARGET marker. */
+        private Target() {
+            this.method = null;
+            this.handle = null;
+            this.parameterTypes = null;
+            this.primitiveParameters = null;
+        }
 
         /**
          * @param method
@@ -292,19 +411,34 @@ public class ObjectDispatcher {
          */
         Target(Method method, Object instance) {
             this.method = method;
-            this.method.setAccessible(true); // make it faster
-            this.instance = instance;
-        }
-
-
-        public Object process(Object... params) throws InvocationTargetException {
+            this.method.setAccessible(true); // allow public methods in non-public classes
             try {
-                return method.invoke(instance, params);
+                this.handle = MethodHandles.lookup().unreflect(method).bindTo(instance)
+                        .asType(MethodType.genericMethodType(method.getParameterCount()));
             } catch (IllegalAccessException e) {
                 throw new Error("Bug", e); // should not happen
             }
+            Class<?>[] types = method.getParameterTypes();
+            this.parameterTypes = MethodType.methodType(void.class, types).wrap().parameterArray();
+            this.primitiveParameters = new boolean[types.length];
+            for (int i = 0; i < types.length; i++) {
+                primitiveParameters[i] = types[i].isPrimitive();
+            }
         }
-        
+
+        /**
+         * Check that a parameter matches the method signature, as Method.invoke would.
+         *
+         * @param index the parameter index.
+         * @param param the parameter.
+         * @throws IllegalArgumentException if the parameter does not match the method signature.
+         */
+        void checkParam(int index, Object param) {
+            if (param == null ? primitiveParameters[index] : !parameterTypes[index].isInstance(param)) {
+                throw new IllegalArgumentException("argument type mismatch");
+            }
+        }
+
         @Override 
         public String toString() {
         	return method.toString();
@@ -0,0 +1,80 @@
+package com.cinnober.msgcodec.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class BufferedStreamsTest {
+
+    @Test
+    public void testReadWrite() throws IOException {
+        byte[] large = new byte[100];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        BufferedOutputStreamSink sink = new BufferedOutputStreamSink(bout, new byte[16]);
+        for (int n = 0; n < 3; n++) {
+            sink.write(123);
+            sink.writeIntLE(-123123);
+            sink.writeLongLE(Long.MIN_VALUE + 123);
+            sink.write(new byte[] {'a', 'b', 'c'});
+            sink.write(large, 1, 99);
+            sink.write("hällå".getBytes("UTF-8"));
+        }
+        sink.flush();
+        assertEquals(0, sink.buffered());
+
+        BufferedInputStreamSource source = new BufferedInputStreamSource(
+                new ByteArrayInputStream(bout.toByteArray()), new byte[16]);
+        for (int n = 0; n < 3; n++) {
+            assertEquals(123, source.read());
+            assertEquals(-123123, source.readIntLE());
+            assertEquals(Long.MIN_VALUE + 123, source.readLongLE());
+            assertEquals("abc", source.readStringUtf8(3));
+            byte[] data = new byte[99];
+            source.skip(1);
+            source.read(data, 1, 98);
+            assertEquals(2, data[1]);
+            assertEquals(99, data[98]);
+            assertEquals("hällå", source.readStringUtf8(7));
+        }
+        assertEquals(0, source.buffered());
+    }
+
+    @Test
+    public void testLargeString() throws IOException {
+        byte[] data = new byte[40];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        BufferedInputStreamSource source = new BufferedInputStreamSource(
+                new ByteArrayInputStream(data), new byte[16]);
+        source.read();
+        assertEquals(new String(data, 1, 39, "UTF-8"), source.readStringUtf8(39));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testEof() throws IOException {
+        BufferedInputStreamSource source = new BufferedInputStreamSource(
+                new ByteArrayInputStream(new byte[3]), new byte[16]);
+        source.readIntLE();
+    }
+
+    @Test
+    public void testReadArray() throws IOException {
+        byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        BufferedInputStreamSource source = new BufferedInputStreamSource(
+                new ByteArrayInputStream(data), new byte[8]);
+        byte[] b = new byte[10];
+        source.read(b, 0, 3);
+        source.read(b, 3, 7);
+        assertArrayEquals(data, b);
+    }
+}
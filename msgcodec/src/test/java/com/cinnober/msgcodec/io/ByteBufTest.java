@@ -2,10 +2,17 @@ package com.cinnober.msgcodec.io;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import org.junit.Test;
 
@@ -96,6 +103,18 @@ public class ByteBufTest {
         testReadWrite(buf);
     }
     
+    @Test
+    public void testDirectBufferReadStringUtf8() throws IOException {
+        ByteBuf buf = new ByteBufferBuf(ByteBuffer.allocateDirect(64));
+        byte[] data = "ab\u00e5c".getBytes(StandardCharsets.UTF_8);
+        buf.write(data);
+        buf.write(data);
+        buf.flip();
+        assertEquals("ab\u00e5c", buf.readStringUtf8(data.length));
+        assertEquals("ab\u00e5c", buf.readStringUtf8(data.length));
+        assertFalse(buf.hasRemaining());
+    }
+
     @Test
     public void testArray() throws IOException {
         ByteBuf buf = new ByteArrayBuf(4096);
@@ -119,5 +138,80 @@ public class ByteBufTest {
         ByteBuf buf = new ReallocatingArray(8, 4096);
         testReadWrite(buf);
     }
-    
+
+    @Test
+    public void testChunked() throws IOException {
+        ByteBuf buf = new ChunkedByteBuf(4096, 4096);
+        testReadWrite(buf);
+    }
+
+    @Test
+    public void testOffHeap() throws IOException {
+        ByteBuf buf = new OffHeapByteBuf(4096);
+        testReadWrite(buf);
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testOffHeapReadOnly() throws IOException {
+        new OffHeapByteBuf(ByteBuffer.allocateDirect(64).asReadOnlyBuffer());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOffHeapNegativeSkip() throws IOException {
+        ByteBuf buf = new OffHeapByteBuf(16);
+        buf.skip(4);
+        buf.skip(-8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOffHeapNegativePad() throws IOException {
+        ByteBuf buf = new OffHeapByteBuf(16);
+        buf.pad(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOffHeapShiftBeyondLimit() throws IOException {
+        ByteBuf buf = new OffHeapByteBuf(16);
+        buf.shift(8, 8, 1);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = File.createTempFile("ByteBufTest", ".bin");
+        file.deleteOnExit();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuf buf = new MappedFileByteBuf(channel, FileChannel.MapMode.READ_WRITE, 4096);
+            testReadWrite(buf);
+        }
+    }
+
+    @Test
+    public void testMappedFileSlide() throws IOException {
+        File file = File.createTempFile("ByteBufTest", ".bin");
+        file.deleteOnExit();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate(1000 * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 1000; i++) {
+                data.putInt(i);
+            }
+            data.flip();
+            channel.write(data);
+
+            MappedFileByteBuf buf = new MappedFileByteBuf(channel, FileChannel.MapMode.READ_ONLY, 30);
+            int count = 0;
+            while (buf.slide(4)) {
+                assertEquals(count * 4L, buf.filePosition());
+                assertEquals(count, buf.readIntLE());
+                count++;
+            }
+            assertEquals(1000, count);
+            assertFalse(buf.slide(4));
+
+            buf.map(3996);
+            assertTrue(buf.hasRemaining());
+            assertEquals(999, buf.readIntLE());
+        }
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.cinnober.msgcodec.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.cinnober.msgcodec.EncodeBufferOverflowException;
+import com.cinnober.msgcodec.EncodeBufferUnderflowException;
+import com.cinnober.msgcodec.util.LockFreeBufferPool;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class ChunkedByteBufTest {
+
+    private static byte[] sequence(int len) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testGrowing() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(8, 22);
+        assertEquals(0, buf.allocation());
+        buf.writeIntLE(1);
+        assertEquals(8, buf.allocation());
+        buf.writeIntLE(2);
+        buf.writeIntLE(3);
+        assertEquals(16, buf.allocation());
+        buf.write(7);
+        buf.writeLongLE(4); // across chunks
+        assertEquals(24, buf.allocation());
+        assertEquals(22, buf.capacity());
+
+        buf.flip();
+        assertEquals(1, buf.readIntLE());
+        assertEquals(2, buf.readIntLE());
+        assertEquals(3, buf.readIntLE());
+        assertEquals(7, buf.read());
+        assertEquals(4L, buf.readLongLE());
+        assertEquals(0, buf.remaining());
+    }
+
+    @Test
+    public void testReadWriteArray() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(16, 1000);
+        byte[] data = sequence(100);
+        buf.write(3);
+        buf.write(data);
+        byte[] text = "\u00e5\u00e4\u00f6 over the chunk boundary".getBytes(StandardCharsets.UTF_8);
+        buf.write(text);
+        buf.flip();
+
+        assertEquals(3, buf.read());
+        byte[] read = new byte[100];
+        buf.read(read);
+        assertArrayEquals(data, read);
+        assertEquals("\u00e5\u00e4\u00f6 over the chunk boundary", buf.readStringUtf8(text.length));
+    }
+
+    @Test(expected = EncodeBufferOverflowException.class)
+    public void testLimitOverflow() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(8, 16);
+        buf.limit(8);
+        buf.writeLongLE(1);
+        buf.write(1);
+    }
+
+    @Test(expected = EncodeBufferOverflowException.class)
+    public void testOverflow() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(8, 12);
+        buf.writeLongLE(1);
+        buf.writeLongLE(2);
+    }
+
+    @Test(expected = EncodeBufferUnderflowException.class)
+    public void testUnderflow() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(8, 64);
+        buf.writeIntLE(1);
+        buf.flip();
+        buf.readIntLE();
+        buf.read();
+    }
+
+    @Test
+    public void testShiftRightAcrossChunks() throws IOException {
+        for (int distance = 1; distance < 20; distance++) {
+            for (int position = 0; position < 10; position++) {
+                ChunkedByteBuf buf = new ChunkedByteBuf(8, 100);
+                byte[] data = sequence(40);
+                buf.write(data);
+                buf.shift(position, 30, distance);
+
+                byte[] expected = new byte[40 + distance];
+                System.arraycopy(data, 0, expected, 0, 40);
+                System.arraycopy(data, position, expected, position + distance, 30);
+                buf.position(0).limit(Math.max(40, position + 30 + distance));
+                byte[] actual = new byte[buf.limit()];
+                buf.read(actual);
+                assertArrayEquals(Arrays.copyOf(expected, actual.length), actual);
+            }
+        }
+    }
+
+    @Test
+    public void testShiftLeftAcrossChunks() throws IOException {
+        for (int distance = 1; distance < 20; distance++) {
+            ChunkedByteBuf buf = new ChunkedByteBuf(8, 100);
+            byte[] data = sequence(60);
+            buf.write(data);
+            buf.shift(20, 40, -distance);
+
+            byte[] expected = data.clone();
+            System.arraycopy(data, 20, expected, 20 - distance, 40);
+            buf.flip();
+            byte[] actual = new byte[60];
+            buf.read(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testGetByteBuffers() throws IOException {
+        ChunkedByteBuf buf = new ChunkedByteBuf(16, 1000);
+        byte[] data = sequence(50);
+        buf.write(data);
+        buf.flip();
+        buf.position(5);
+
+        ByteBuffer[] buffers = buf.getByteBuffers();
+        assertEquals(4, buffers.length);
+        assertEquals(11, buffers[0].remaining());
+        assertEquals(2, buffers[3].remaining());
+        ByteBuffer all = ByteBuffer.allocate(45);
+        for (ByteBuffer b : buffers) {
+            all.put(b);
+        }
+        byte[] expected = new byte[45];
+        System.arraycopy(data, 5, expected, 0, 45);
+        assertArrayEquals(expected, all.array());
+
+        ByteArrayBuf copy = new ByteArrayBuf(45);
+        buf.copyTo(copy);
+        assertArrayEquals(expected, copy.array());
+    }
+
+    @Test
+    public void testPooledChunks() throws IOException {
+        LockFreeBufferPool pool = new LockFreeBufferPool(32, 10);
+        ChunkedByteBuf buf = new ChunkedByteBuf(32, 1000, pool);
+        buf.write(sequence(100));
+        assertEquals(128, buf.allocation());
+        assertEquals(4, pool.getOutstandingCount());
+        buf.release();
+        assertEquals(0, buf.allocation());
+        assertEquals(0, buf.position());
+        assertEquals(0, pool.getOutstandingCount());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.util;
+
+import com.cinnober.msgcodec.MsgCodec;
+import com.cinnober.msgcodec.io.ByteSink;
+import com.cinnober.msgcodec.io.ByteSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class GatheringChannelEncoderTest {
+
+    private static byte[] group(int value, int size) {
+        byte[] group = new byte[size];
+        for (int i = 0; i < size; i++) {
+            group[i] = (byte) (value + i);
+        }
+        return group;
+    }
+
+    @Test
+    public void testFlushExplicit() throws IOException {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            byte[] group = group(i, 5);
+            encoder.encode(group);
+            expected.write(group);
+        }
+        assertEquals(0, channel.writes);
+        assertEquals(50, encoder.getPendingBytes());
+        assertTrue(encoder.flush());
+        assertEquals(1, channel.writes);
+        assertFalse(encoder.isWritePending());
+        assertArrayEquals(expected.toByteArray(), channel.data.toByteArray());
+    }
+
+    @Test
+    public void testFlushSize() throws IOException {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 8, 20, -1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 8; i++) {
+            encoder.encode(group(i, 5));
+        }
+        assertEquals(2, channel.writes);
+        assertEquals(40, channel.data.size());
+        assertFalse(encoder.isWritePending());
+    }
+
+    @Test
+    public void testFlushDelay() throws IOException {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 8, -1, 0, TimeUnit.MILLISECONDS);
+        encoder.encode(group(0, 5));
+        assertEquals(1, channel.writes);
+        assertFalse(encoder.isWritePending());
+    }
+
+    @Test
+    public void testPartialWrites() throws IOException {
+        RecordingChannel channel = new RecordingChannel(7);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            byte[] group = group(i, 5);
+            encoder.encode(group);
+            expected.write(group);
+        }
+        int flushes = 1;
+        while (!encoder.flush()) {
+            assertTrue(encoder.isWritePending());
+            channel.acceptBytes = 7; // the channel is writable again
+            flushes++;
+        }
+        assertEquals(8, flushes); // 50 bytes, 7 bytes per flush
+        assertArrayEquals(expected.toByteArray(), channel.data.toByteArray());
+    }
+
+    @Test
+    public void testLargeGroup() throws IOException {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int size : new int[] { 5, 40, 5, 16, 100 }) {
+            byte[] group = group(size, size);
+            encoder.encode(group);
+            expected.write(group);
+        }
+        assertTrue(encoder.flush());
+        assertArrayEquals(expected.toByteArray(), channel.data.toByteArray());
+    }
+
+    @Test
+    public void testFailEncode() throws IOException {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        BytesPool pool = new BytesPool(16);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(new BytesCodec(), channel, pool, 8);
+        byte[] group = group(1, 5);
+        encoder.encode(group);
+        try {
+            encoder.encode(null);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {}
+        assertEquals(5, encoder.getPendingBytes());
+        assertEquals(1, pool.allocations); // not retried in another buffer
+        assertTrue(encoder.flush());
+        assertArrayEquals(group, channel.data.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailAllBuffersPending() throws IOException {
+        RecordingChannel channel = new RecordingChannel(0);
+        GatheringChannelEncoder encoder = new GatheringChannelEncoder(
+                new BytesCodec(), channel, new BytesPool(16), 2);
+        for (int i = 0; i < 10; i++) {
+            encoder.encode(group(i, 10));
+        }
+    }
+
+    /**
+     * Codec of byte arrays, which are written as is.
+     */
+    private static class BytesCodec implements MsgCodec {
+        @Override
+        public void encode(Object group, OutputStream out) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void encode(Object group, ByteSink out) throws IOException {
+            if (group == null) {
+                throw new IllegalArgumentException("Group is null");
+            }
+            out.write((byte[]) group);
+        }
+        @Override
+        public Object decode(InputStream in) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public Object decode(ByteSource in) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Pool of heap byte buffers of a fixed size.
+     */
+    private static class BytesPool implements Pool<ByteBuffer> {
+        final int bufferSize;
+        final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+        int allocations;
+
+        BytesPool(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public ByteBuffer get() {
+            ByteBuffer buf = buffers.poll();
+            if (buf == null) {
+                allocations++;
+                buf = ByteBuffer.allocate(bufferSize);
+            }
+            return buf;
+        }
+
+        @Override
+        public void release(ByteBuffer buf) {
+            buf.clear();
+            buffers.push(buf);
+        }
+    }
+
+    /**
+     * Non-blocking channel that records the written data, and accepts a limited number of bytes
+     * (the free space of a socket buffer).
+     */
+    private static class RecordingChannel implements GatheringByteChannel {
+        int acceptBytes;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int writes;
+
+        RecordingChannel(int acceptBytes) {
+            this.acceptBytes = acceptBytes;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writes++;
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                ByteBuffer src = srcs[i];
+                while (src.hasRemaining() && acceptBytes > 0) {
+                    data.write(src.get());
+                    written++;
+                    acceptBytes--;
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] { src });
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
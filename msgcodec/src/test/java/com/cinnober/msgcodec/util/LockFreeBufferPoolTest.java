@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 The MsgCodec Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.cinnober.msgcodec.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class LockFreeBufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        LockFreeBufferPool pool = new LockFreeBufferPool(1000, 4);
+        assertEquals(1024, pool.getBufferSize());
+        assertEquals(1024, pool.get().length);
+        assertEquals(1, pool.get(0).length);
+        assertEquals(1, pool.get(1).length);
+        assertEquals(64, pool.get(33).length);
+        assertEquals(64, pool.get(64).length);
+        assertEquals(1 << 20, pool.get((1 << 19) + 1).length);
+    }
+
+    @Test
+    public void testReuse() {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 4, 1);
+        byte[] a = pool.get();
+        byte[] b = pool.get();
+        assertNotSame(a, b);
+        assertEquals(2, pool.getMissCount());
+        assertEquals(2, pool.getOutstandingCount());
+
+        pool.release(a); // thread cache
+        pool.release(b); // shared magazine
+        assertEquals(0, pool.getOutstandingCount());
+        assertSame(a, pool.get());
+        assertSame(b, pool.get());
+        assertEquals(2, pool.getHitCount());
+        assertEquals(1, pool.getThreadCacheHitCount());
+        assertEquals(2, pool.getMissCount());
+
+        // other size class
+        byte[] c = pool.get(128);
+        assertEquals(3, pool.getMissCount());
+        pool.release(c);
+        assertSame(c, pool.get(100));
+    }
+
+    @Test
+    public void testDiscard() {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 1, 1);
+        pool.release(new byte[64]); // thread cache
+        pool.release(new byte[64]); // shared magazine
+        pool.release(new byte[64]); // full
+        pool.release(new byte[100]); // not a power of two
+        assertEquals(2, pool.getDiscardCount());
+        assertEquals(-4, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void testMagazineWrapAround() {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 3, 0);
+        for (int lap = 0; lap < 5; lap++) {
+            byte[][] buffers = new byte[4][];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = pool.get();
+            }
+            for (byte[] buffer : buffers) {
+                pool.release(buffer); // the last one is discarded
+            }
+            for (int i = 0; i < 3; i++) {
+                assertSame(buffers[i], pool.get()); // first in, first out
+            }
+            for (int i = 0; i < 3; i++) {
+                pool.release(buffers[i]);
+            }
+        }
+        assertEquals(5, pool.getDiscardCount());
+        assertEquals(4 + 4, pool.getMissCount());
+        assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void testNoMagazine() {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 0, 0);
+        byte[] buf = pool.get();
+        pool.release(buf);
+        assertNotSame(buf, pool.get());
+        assertEquals(1, pool.getDiscardCount());
+    }
+
+    @Test
+    public void testReleaseInOtherThread() throws Exception {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 4, 0);
+        byte[] buf = pool.get();
+        Thread thread = new Thread(() -> pool.release(buf));
+        thread.start();
+        thread.join();
+        assertSame(buf, pool.get());
+        assertEquals(1, pool.getHitCount());
+    }
+
+    @Test
+    public void testByteBufferPool() {
+        LockFreeByteBufferPool pool = new LockFreeByteBufferPool(100, 4);
+        ByteBuffer buf = pool.get();
+        assertTrue(buf.isDirect());
+        assertEquals(128, buf.capacity());
+        buf.putInt(4711).flip();
+        pool.release(buf);
+        ByteBuffer buf2 = pool.get();
+        assertSame(buf, buf2);
+        assertEquals(0, buf2.position());
+        assertEquals(128, buf2.limit());
+
+        LockFreeByteBufferPool heapPool = new LockFreeByteBufferPool(100, 4, 2, false);
+        assertFalse(heapPool.get().isDirect());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        LockFreeBufferPool pool = new LockFreeBufferPool(64, 8, 2);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10000; i++) {
+                        byte[] a = pool.get();
+                        byte[] b = pool.get(i % 256);
+                        assertNotSame(a, b);
+                        pool.release(b);
+                        pool.release(a);
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+        assertEquals(0, pool.getOutstandingCount());
+        assertEquals(80000, pool.getHitCount() + pool.getMissCount());
+    }
+}
@@ -66,6 +66,36 @@ public class ObjectDispatcherTest {
         } catch (InvocationTargetException e) {}
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailParamTypeMismatch() throws Exception {
+        ObjectDispatcher dispatcher = new ObjectDispatcher(
+                Arrays.asList(new MyService2(), new MyErrorHandler2()),
+                new Class<?>[] { String.class });
+        dispatcher.dispatch("Hello", 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailParamCount() throws Exception {
+        ObjectDispatcher dispatcher = new ObjectDispatcher(Arrays.asList(new MyService()));
+        dispatcher.dispatch("Hello", "Param2");
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testFailUnhandledType() throws Exception {
+        ObjectDispatcher dispatcher = new ObjectDispatcher(Arrays.asList(new MyService()));
+        dispatcher.dispatch(new Date());
+    }
+
+    @Test
+    public void testVarargsParams() throws Exception {
+        ObjectDispatcher dispatcher = new ObjectDispatcher(
+                Arrays.asList(new MyService2(), new MyErrorHandler2()),
+                new Class<?>[] { String.class });
+
+        assertEquals("*Hello*", dispatcher.dispatch(new Object[] { "Hello", "Param2" }));
+        assertEquals(2, dispatcher.dispatch(new Object[] { 1, "Param2" }));
+    }
+
     /**
      * Verifies that iteration order is important when deciding who to dispatch to.
      */